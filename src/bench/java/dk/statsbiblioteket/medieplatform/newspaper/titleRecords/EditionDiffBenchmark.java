@@ -0,0 +1,118 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of diffing the wanted editions of a title against the editions that have the relation, for
+ * titles of 1k, 10k and 100k editions. Ten percent of the wanted editions lack the relation, and as many editions
+ * have a relation they should not.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.filter=EditionDiffBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EditionDiffBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Editions {
+        @Param({"1000", "10000", "100000"})
+        public int editions;
+
+        public List<String> wanted;
+        public List<String> existing;
+        public List<String> existingSorted;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            generate(this, editions);
+        }
+    }
+
+    /**
+     * The list based diff that was used before, only measured at the smaller sizes as it is quadratic.
+     */
+    @State(Scope.Benchmark)
+    public static class LegacyEditions {
+        @Param({"1000", "10000"})
+        public int editions;
+
+        public List<String> wanted;
+        public List<String> existing;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Editions generated = new Editions();
+            generate(generated, editions);
+            wanted = generated.wanted;
+            existing = generated.existing;
+        }
+    }
+
+    @Benchmark
+    public EditionDiff hashDiff(Editions state) {
+        return EditionDiff.compute(state.wanted.iterator(), state.existing);
+    }
+
+    @Benchmark
+    public EditionDiff sortedMergeDiff(Editions state) {
+        return EditionDiff.computeSorted(state.wanted.iterator(), state.existingSorted.iterator());
+    }
+
+    @Benchmark
+    public int listRemoveAllDiff(LegacyEditions state) {
+        List<String> toAdd = new ArrayList<>(state.wanted);
+        toAdd.removeAll(state.existing);
+        List<String> toRemove = new ArrayList<>(state.existing);
+        toRemove.removeAll(state.wanted);
+        return toAdd.size() + toRemove.size();
+    }
+
+    /**
+     * Generate sorted wanted editions, as they come from SBOI, and unsorted existing editions, as they come from
+     * Fedora.
+     *
+     * @param state The state to fill
+     * @param editions The number of wanted editions
+     */
+    private static void generate(Editions state, int editions) {
+        Random random = new Random(editions);
+        List<String> wanted = new ArrayList<>(editions);
+        List<String> existing = new ArrayList<>(editions);
+        for (int i = 0; i < editions; i++) {
+            String pid = "uuid:" + new UUID(random.nextLong(), random.nextLong());
+            wanted.add(pid);
+            if (i % 10 == 0) {
+                existing.add("uuid:" + new UUID(random.nextLong(), random.nextLong()));
+            } else {
+                existing.add(pid);
+            }
+        }
+        Collections.sort(wanted);
+        Collections.shuffle(existing, random);
+        state.wanted = wanted;
+        state.existing = existing;
+        state.existingSorted = new ArrayList<>(existing);
+        Collections.sort(state.existingSorted);
+    }
+}
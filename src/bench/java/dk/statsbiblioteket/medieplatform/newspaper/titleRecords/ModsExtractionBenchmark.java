@@ -0,0 +1,95 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.util.xml.DOM;
+import dk.statsbiblioteket.util.xml.XPathSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of reading the newspaper ID and date range from the MODS of a newspaper object ("titelpost"),
+ * with the DOM and XPath parsing that was used before and with the StAX based {@link ModsTitleExtractor}.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.filter=ModsExtractionBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModsExtractionBenchmark {
+    private static final String TITLE_ID = "uuid:a6b1f3e4-8c2d-4b0e-9f6a-7d5c3b2a1e0f";
+
+    @State(Scope.Benchmark)
+    public static class Mods {
+        public String mods;
+        public ModsTitleExtractor extractor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            mods = createMods();
+            extractor = new ModsTitleExtractor();
+        }
+    }
+
+    @Benchmark
+    public TitleRange domXPath(Mods state) {
+        Document newspaperDOM = DOM.stringToDOM(state.mods, true);
+        XPathSelector xpath = DOM.createXPathSelector("v3", "http://www.loc.gov/mods/v3");
+        return new TitleRange(TITLE_ID,
+                xpath.selectString(newspaperDOM, "/v3:mods/v3:identifier[@type='title_family']/text()"),
+                xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued[@point='start']/text()"),
+                xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued[@point='end']/text()"));
+    }
+
+    @Benchmark
+    public TitleRange stax(Mods state) throws XMLStreamException {
+        return state.extractor.extract(TITLE_ID, state.mods);
+    }
+
+    /**
+     * Create MODS shaped like that of a newspaper object, with the fields to be extracted after the titles,
+     * identifiers and notes that precede them in the real records
+     *
+     * @return The MODS document
+     */
+    private static String createMods() {
+        StringBuilder mods = new StringBuilder();
+        mods.append("<mods:mods xmlns:mods=\"http://www.loc.gov/mods/v3\" version=\"3.5\">\n");
+        mods.append("  <mods:titleInfo type=\"uniform\" authority=\"Statens Avissamling\">\n")
+            .append("    <mods:title>Ki\u00f8benhavns Kongelig alene privilegerede Adresse-Contoirs Efterretninger</mods:title>\n")
+            .append("  </mods:titleInfo>\n");
+        for (int i = 0; i < 10; i++) {
+            mods.append("  <mods:titleInfo type=\"alternative\"><mods:title>Adresseavisen ").append(i)
+                .append("</mods:title></mods:titleInfo>\n");
+        }
+        mods.append("  <mods:identifier type=\"ninestars\">adresseavisen1759</mods:identifier>\n")
+            .append("  <mods:identifier type=\"issn\">0901-8883</mods:identifier>\n")
+            .append("  <mods:identifier type=\"title_family\">adresseavisen1759</mods:identifier>\n");
+        for (int i = 0; i < 20; i++) {
+            mods.append("  <mods:note type=\"general\">Udgivet med skiftende undertitler og formater, periode ")
+                .append(i).append("</mods:note>\n");
+        }
+        mods.append("  <mods:originInfo>\n")
+            .append("    <mods:place><mods:placeTerm type=\"text\">K\u00f8benhavn</mods:placeTerm></mods:place>\n")
+            .append("    <mods:dateIssued point=\"start\">1759-01-01</mods:dateIssued>\n")
+            .append("    <mods:dateIssued point=\"end\">1800-12-31</mods:dateIssued>\n")
+            .append("  </mods:originInfo>\n");
+        mods.append("  <mods:relatedItem type=\"succeeding\"><mods:identifier type=\"title_family\">")
+            .append("adresseavisen1801</mods:identifier></mods:relatedItem>\n");
+        mods.append("</mods:mods>");
+        return mods.toString();
+    }
+}
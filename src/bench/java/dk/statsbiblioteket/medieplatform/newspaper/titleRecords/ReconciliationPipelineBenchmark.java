@@ -0,0 +1,163 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.MetricRegistry;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures reconciling one newspaper object end to end, through {@link RunnableTitleRecordRelationsMaintainer} and
+ * {@link NewspaperIndex}, against an in-process Fedora and SBOI ({@link StubFedora}, {@link StubSolrServer}), for
+ * titles of 1k to 500k editions. A fraction of the wanted editions lack the relation, and as many editions have a
+ * relation they should not. Each call to Fedora and SBOI can be given a simulated latency.
+ *
+ * The Fedora reads and writes and the SBOI requests made are reported as secondary results. For the
+ * allocation rate, add {@code -prof gc} to the JMH arguments.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.filter=ReconciliationPipelineBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReconciliationPipelineBenchmark {
+    private static final String TITLE_DOMS_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String NEWSPAPER_ID = "adresseavisen1759";
+    private static final String MODS = "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                                       + "<identifier type=\"title_family\">" + NEWSPAPER_ID + "</identifier>"
+                                       + "<originInfo>"
+                                       + "<dateIssued point=\"start\">1759-01-01</dateIssued>"
+                                       + "<dateIssued point=\"end\">1900-12-31</dateIssued>"
+                                       + "</originInfo></mods>";
+
+    @State(Scope.Benchmark)
+    public static class Title {
+        @Param({"1000", "100000", "500000"})
+        public int editions;
+
+        /** Fraction of the wanted editions whose relation is missing, and of stale relations to remove */
+        @Param({"0.01"})
+        public double changedFraction;
+
+        /** Simulated latency of each Fedora call and SBOI request in microseconds */
+        @Param({"0"})
+        public long latencyMicros;
+
+        @Param({"1"})
+        public int mutationParallelism;
+
+        public StubFedora fedora;
+        public StubSolrServer solr;
+        public NewspaperIndex newspaperIndex;
+        public RunnableTitleRecordRelationsMaintainer maintainer;
+        public Item title;
+        public ResultCollector resultCollector;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(editions);
+            List<String> wanted = new ArrayList<>(editions);
+            List<String> existing = new ArrayList<>(editions);
+            int changeEvery = changedFraction > 0 ? (int) Math.round(1 / changedFraction) : Integer.MAX_VALUE;
+            for (int i = 0; i < editions; i++) {
+                String pid = "uuid:" + new UUID(random.nextLong(), random.nextLong());
+                wanted.add(pid);
+                if (i % changeEvery == 0) {
+                    existing.add("uuid:" + new UUID(random.nextLong(), random.nextLong()));
+                } else {
+                    existing.add(pid);
+                }
+            }
+            // SBOI returns editions in UUID order, Fedora in no particular order
+            Collections.sort(wanted);
+            Collections.shuffle(existing, random);
+
+            fedora = new StubFedora(TITLE_DOMS_ID, MODS, existing, latencyMicros);
+            solr = new StubSolrServer(wanted, latencyMicros);
+            DomsItemFactory itemFactory = new DomsItemFactory();
+            newspaperIndex = new NewspaperIndex(solr, itemFactory);
+            Properties properties = new Properties();
+            properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, RelationCheck.NEVER.name());
+            properties.setProperty(TitleRecordsConfigConstants.MUTATION_PARALLELISM,
+                    String.valueOf(mutationParallelism));
+            maintainer = new RunnableTitleRecordRelationsMaintainer(properties, fedora.createClient(), itemFactory,
+                    newspaperIndex, new ReconciliationMetrics(new MetricRegistry()));
+            title = itemFactory.create(TITLE_DOMS_ID);
+            resultCollector = mock(ResultCollector.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            maintainer.close();
+        }
+    }
+
+    /**
+     * Calls made while reconciling titles, reported by JMH as totals over each iteration. Divide by the number of
+     * titles for the calls per title
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+        public long titles;
+        public long fedoraReads;
+        public long fedoraWrites;
+        public long sboiRequests;
+    }
+
+    /**
+     * Reconcile the newspaper object: read its MODS and existing relations, page through its editions, diff them
+     * and write the changes.
+     */
+    @Benchmark
+    public void reconcileTitle(Title state, Calls calls) throws Exception {
+        long reads = state.fedora.getReads();
+        long writes = state.fedora.getWrites();
+        long requests = state.solr.getRequests();
+        state.maintainer.doWorkOnItem(state.title, state.resultCollector);
+        calls.titles++;
+        calls.fedoraReads += state.fedora.getReads() - reads;
+        calls.fedoraWrites += state.fedora.getWrites() - writes;
+        calls.sboiRequests += state.solr.getRequests() - requests;
+    }
+
+    /**
+     * Only page through the wanted editions in SBOI.
+     */
+    @Benchmark
+    public long pageEditions(Title state) {
+        Iterator<String> editions = state.newspaperIndex.getEditionIDs(NEWSPAPER_ID, "1759-01-01", "1900-12-31");
+        long count = 0;
+        while (editions.hasNext()) {
+            editions.next();
+            count++;
+        }
+        return count;
+    }
+}
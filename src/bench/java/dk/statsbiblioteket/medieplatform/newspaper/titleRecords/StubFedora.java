@@ -0,0 +1,101 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process Fedora for benchmarks, serving the MODS and the inverse relations of one newspaper object. Writes are
+ * counted and otherwise ignored, so every run against it does the same work. Each call takes at least the given
+ * latency. Calls that the reconciliation does not make are not supported.
+ */
+class StubFedora implements InvocationHandler {
+    private final String mods;
+    private final List<FedoraRelation> inverseRelations;
+    private final long latencyNanos;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param titleDomsID The PID of the newspaper object
+     * @param mods The MODS of the newspaper object
+     * @param editionsWithRelation The PIDs of the editions that have a relation to the newspaper object
+     * @param latencyMicros The simulated latency of each call in microseconds
+     */
+    StubFedora(String titleDomsID, String mods, List<String> editionsWithRelation, long latencyMicros) {
+        this.mods = mods;
+        List<FedoraRelation> relations = new ArrayList<>(editionsWithRelation.size());
+        for (String edition : editionsWithRelation) {
+            relations.add(new FedoraRelation(RunnableTitleRecordRelationsMaintainer.URI_PREFIX + edition,
+                    RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION,
+                    RunnableTitleRecordRelationsMaintainer.URI_PREFIX + titleDomsID));
+        }
+        this.inverseRelations = Collections.unmodifiableList(relations);
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    /**
+     * Create a Fedora client that calls this stub
+     *
+     * @return The Fedora client
+     */
+    EnhancedFedora createClient() {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                new Class<?>[]{EnhancedFedora.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        switch (method.getName()) {
+            case "getXMLDatastreamContents":
+                reads.incrementAndGet();
+                return mods;
+            case "getInverseRelations":
+                reads.incrementAndGet();
+                return inverseRelations;
+            case "getNamedRelations":
+                reads.incrementAndGet();
+                return Collections.emptyList();
+            case "addRelation":
+            case "deleteRelation":
+            case "modifyDatastreamByValue":
+            case "modifyObjectState":
+                writes.incrementAndGet();
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * Get the number of read calls so far
+     *
+     * @return The number of reads
+     */
+    long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * Get the number of write calls so far
+     *
+     * @return The number of writes
+     */
+    long getWrites() {
+        return writes.get();
+    }
+}
@@ -0,0 +1,76 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process SBOI for benchmarks, answering every query with the same editions, in pages with cursor marks like
+ * Solr. The query itself is not evaluated. Each request takes at least the given latency.
+ */
+class StubSolrServer extends HttpSolrServer {
+    private final List<String> editions;
+    private final long latencyNanos;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param editions The PIDs of the editions every query matches, in UUID order
+     * @param latencyMicros The simulated latency of each request in microseconds
+     */
+    StubSolrServer(List<String> editions, long latencyMicros) {
+        super("http://localhost/solr");
+        this.editions = editions;
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) {
+        requests.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        SolrParams params = request.getParams();
+        int rows = params.getInt(CommonParams.ROWS, 10);
+        String cursorMark = params.get(CursorMarkParams.CURSOR_MARK_PARAM);
+        int start = cursorMark == null || cursorMark.equals(CursorMarkParams.CURSOR_MARK_START)
+                    ? 0 : Integer.parseInt(cursorMark);
+        int end = Math.min(start + rows, editions.size());
+
+        SolrDocumentList page = new SolrDocumentList();
+        page.setNumFound(editions.size());
+        page.setStart(start);
+        for (int i = start; i < end; i++) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SBOIEventIndex.UUID, editions.get(i));
+            page.add(document);
+        }
+        NamedList<Object> response = new NamedList<>();
+        response.add("response", page);
+        if (cursorMark != null) {
+            response.add(CursorMarkParams.CURSOR_MARK_NEXT, String.valueOf(end));
+        }
+        return response;
+    }
+
+    /**
+     * Get the number of requests so far
+     *
+     * @return The number of requests
+     */
+    long getRequests() {
+        return requests.get();
+    }
+}
@@ -0,0 +1,135 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An SBOI core running in process, with the fields of editions and newspaper objects that the title records
+ * maintainer queries. The index is held in memory; the Solr home with its configuration is copied from the classpath
+ * to a temporary directory that is deleted on close.
+ */
+class EmbeddedSboi implements Closeable {
+    private static final String CORE_NAME = "newspapers";
+    private static final String[] SOLR_HOME_FILES = {"solr.xml", CORE_NAME + "/core.properties",
+                                                     CORE_NAME + "/conf/solrconfig.xml",
+                                                     CORE_NAME + "/conf/schema.xml"};
+    private static final int BATCH_SIZE = 10000;
+    private final File solrHome;
+    private final CoreContainer container;
+    private final EmbeddedSolrServer server;
+    private final List<SolrInputDocument> pending = new ArrayList<>();
+
+    /**
+     * Start the core
+     *
+     * @throws IOException if the Solr home could not be written
+     */
+    EmbeddedSboi() throws IOException {
+        solrHome = Files.createTempDirectory("sboi").toFile();
+        for (String file : SOLR_HOME_FILES) {
+            File target = new File(solrHome, file);
+            target.getParentFile().mkdirs();
+            try (InputStream resource = EmbeddedSboi.class.getResourceAsStream("/solr/" + file)) {
+                Files.copy(resource, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        container = new CoreContainer(solrHome.getAbsolutePath());
+        container.load();
+        server = new EmbeddedSolrServer(container, CORE_NAME);
+    }
+
+    /**
+     * Index an edition. Editions are sent to the core in batches, and are searchable after {@link #commit()}
+     *
+     * @param edition The edition
+     */
+    void addEdition(EditionRecord edition) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SBOIEventIndex.UUID, edition.getDomsID());
+        document.addField("item_model", "doms:ContentModel_Edition");
+        document.addField("newspapr_edition_avisID", edition.getAvisID());
+        document.addField("newspapr_edition_dateIssued", edition.getDateIssued());
+        add(document);
+    }
+
+    /**
+     * Index a newspaper object ("titelpost"). It is searchable after {@link #commit()}
+     *
+     * @param titleDomsID The PID of the newspaper object
+     */
+    void addTitle(String titleDomsID) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SBOIEventIndex.UUID, titleDomsID);
+        document.addField("item_model", "doms:ContentModel_Newspaper");
+        add(document);
+    }
+
+    /**
+     * Make everything indexed so far searchable
+     */
+    void commit() {
+        try {
+            flush();
+            server.commit();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get a client of the core
+     *
+     * @return The client
+     */
+    SolrServer getSolrServer() {
+        return server;
+    }
+
+    @Override
+    public void close() throws IOException {
+        container.shutdown();
+        delete(solrHome);
+    }
+
+    private void add(SolrInputDocument document) {
+        pending.add(document);
+        if (pending.size() >= BATCH_SIZE) {
+            try {
+                flush();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void flush() throws Exception {
+        if (!pending.isEmpty()) {
+            Collection<SolrInputDocument> batch = new ArrayList<>(pending);
+            pending.clear();
+            server.add(batch);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
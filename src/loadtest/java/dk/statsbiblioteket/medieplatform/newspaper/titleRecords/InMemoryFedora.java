@@ -0,0 +1,231 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.ObjectProfile;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.URI_PREFIX;
+
+/**
+ * A Fedora held in memory for load tests, modelling what the reconciliation depends on: objects with a state and
+ * datastreams, and relations from editions to newspaper objects that can be looked up from either end. Like DOMS,
+ * changing the relations of a published object (state "A") is rejected with {@link BackendInvalidCredsException}.
+ * Each call takes at least the given latency, and calls are counted per method. Calls that the reconciliation does
+ * not make with the "api" relation writer are not supported.
+ */
+class InMemoryFedora implements InvocationHandler {
+    private final Map<String, FedoraObject> objects = new ConcurrentHashMap<>();
+    // The editions with a relation to each newspaper object, by PID
+    private final ConcurrentHashMap<String, Set<String>> inverseRelations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+
+    /**
+     * Constructor
+     *
+     * @param latencyMicros The simulated latency of each call in microseconds
+     */
+    InMemoryFedora(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    /**
+     * Create a Fedora client that calls this Fedora
+     *
+     * @return The Fedora client
+     */
+    EnhancedFedora createClient() {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                new Class<?>[]{EnhancedFedora.class}, this);
+    }
+
+    /**
+     * Create an object
+     *
+     * @param pid The PID of the object
+     * @param state The state of the object, "A" if published
+     * @param mods The MODS datastream of the object, or null if it has none
+     */
+    void addObject(String pid, String state, String mods) {
+        FedoraObject object = new FedoraObject(state);
+        if (mods != null) {
+            object.datastreams.put("MODS", mods);
+        }
+        objects.put(pid, object);
+    }
+
+    /**
+     * Add a relation from an edition to a newspaper object, regardless of the state of the edition
+     *
+     * @param editionPID The PID of the edition
+     * @param titlePID The PID of the newspaper object
+     */
+    void putRelation(String editionPID, String titlePID) {
+        getObject(editionPID).newspapers.add(titlePID);
+        getEditions(titlePID).add(editionPID);
+    }
+
+    /**
+     * Get the PIDs of the editions that have a relation to a newspaper object
+     *
+     * @param titlePID The PID of the newspaper object
+     * @return The PIDs of the editions
+     */
+    Set<String> getEditionsWithRelation(String titlePID) {
+        return new HashSet<>(getEditions(titlePID));
+    }
+
+    /**
+     * Get the state of an object
+     *
+     * @param pid The PID of the object
+     * @return The state
+     */
+    String getState(String pid) {
+        return getObject(pid).state;
+    }
+
+    /**
+     * Get the number of calls made to each method, by method name
+     *
+     * @return The number of calls
+     */
+    Map<String, Long> getCalls() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : calls.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        countCall(method.getName());
+        String pid = (String) args[0];
+        switch (method.getName()) {
+            case "getXMLDatastreamContents": {
+                String contents = getExistingObject(pid).datastreams.get((String) args[1]);
+                if (contents == null) {
+                    throw new BackendInvalidResourceException("No datastream " + args[1] + " in " + pid);
+                }
+                return contents;
+            }
+            case "getObjectProfile": {
+                ObjectProfile profile = new ObjectProfile();
+                profile.setState(getExistingObject(pid).state);
+                return profile;
+            }
+            case "modifyObjectState":
+                getExistingObject(pid).state = (String) args[1];
+                return null;
+            case "getNamedRelations": {
+                List<FedoraRelation> relations = new ArrayList<>();
+                if (EDITION_TO_NEWSPAPER_RELATION.equals(args[1])) {
+                    for (String titlePID : getExistingObject(pid).newspapers) {
+                        relations.add(new FedoraRelation(URI_PREFIX + pid, EDITION_TO_NEWSPAPER_RELATION,
+                                URI_PREFIX + titlePID));
+                    }
+                }
+                return relations;
+            }
+            case "getInverseRelations": {
+                List<FedoraRelation> relations = new ArrayList<>();
+                if (EDITION_TO_NEWSPAPER_RELATION.equals(args[1])) {
+                    for (String editionPID : getEditions(pid)) {
+                        relations.add(new FedoraRelation(URI_PREFIX + editionPID, EDITION_TO_NEWSPAPER_RELATION,
+                                URI_PREFIX + pid));
+                    }
+                }
+                return relations;
+            }
+            case "addRelation":
+            case "deleteRelation": {
+                FedoraObject object = getExistingObject(pid);
+                if (PUBLISHED_STATE.equals(object.state)) {
+                    throw new BackendInvalidCredsException("Object " + pid + " is published");
+                }
+                if (!EDITION_TO_NEWSPAPER_RELATION.equals(args[2])) {
+                    throw new UnsupportedOperationException("Relation " + args[2]);
+                }
+                String titlePID = ((String) args[3]).substring(URI_PREFIX.length());
+                if (method.getName().equals("addRelation")) {
+                    object.newspapers.add(titlePID);
+                    getEditions(titlePID).add(pid);
+                } else {
+                    object.newspapers.remove(titlePID);
+                    getEditions(titlePID).remove(pid);
+                }
+                return null;
+            }
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private void countCall(String methodName) {
+        AtomicLong count = calls.get(methodName);
+        if (count == null) {
+            calls.putIfAbsent(methodName, new AtomicLong());
+            count = calls.get(methodName);
+        }
+        count.incrementAndGet();
+    }
+
+    private FedoraObject getObject(String pid) {
+        FedoraObject object = objects.get(pid);
+        if (object == null) {
+            throw new IllegalArgumentException("No object " + pid);
+        }
+        return object;
+    }
+
+    private FedoraObject getExistingObject(String pid) throws BackendInvalidResourceException {
+        FedoraObject object = objects.get(pid);
+        if (object == null) {
+            throw new BackendInvalidResourceException("No object " + pid);
+        }
+        return object;
+    }
+
+    private Set<String> getEditions(String titlePID) {
+        Set<String> editions = inverseRelations.get(titlePID);
+        if (editions == null) {
+            inverseRelations.putIfAbsent(titlePID,
+                    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+            editions = inverseRelations.get(titlePID);
+        }
+        return editions;
+    }
+
+    private static class FedoraObject {
+        private volatile String state;
+        private final Map<String, String> datastreams = new ConcurrentHashMap<>();
+        private final Set<String> newspapers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private FedoraObject(String state) {
+            this.state = state;
+        }
+    }
+}
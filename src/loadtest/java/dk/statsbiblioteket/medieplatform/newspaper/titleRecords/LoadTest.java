@@ -0,0 +1,263 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test of reconciling the relations of generated newspaper families end to end, against an embedded SBOI core
+ * ({@link EmbeddedSboi}) and an in-memory Fedora ({@link InMemoryFedora}), without any external services.
+ *
+ * The newspaper objects are reconciled by {@link RunnableTitleRecordRelationsMaintainer#doWorkOnItem} on a number of
+ * threads, like the autonomous component does. Before the run, some editions lack their relations and some have
+ * relations to newspaper objects of other families, and some are published. Afterwards the throughput, the latency
+ * percentiles of each phase and the Fedora calls made are logged, and the relations are checked.
+ *
+ * Run with {@code mvn -Ploadtest test-compile exec:java}, configured with these system properties:
+ * <ul>
+ *     <li>loadtest.families: Number of newspaper families (default 20)</li>
+ *     <li>loadtest.maxYears: Longest a family runs in years (default 40)</li>
+ *     <li>loadtest.maxTitlesPerFamily: Largest number of newspaper objects in a family (default 3)</li>
+ *     <li>loadtest.weeklyFraction: Fraction of weekly families (default 0.3)</li>
+ *     <li>loadtest.missingFraction: Fraction of editions lacking a relation (default 0.05)</li>
+ *     <li>loadtest.staleFraction: Fraction of editions with a relation to another family (default 0.02)</li>
+ *     <li>loadtest.publishedFraction: Fraction of published editions (default 0.5)</li>
+ *     <li>loadtest.threads: Number of newspaper objects reconciled at the same time (default 4)</li>
+ *     <li>loadtest.fedoraLatencyMicros: Simulated latency of each Fedora call (default 0)</li>
+ *     <li>loadtest.seed: Seed of the generated families (default 1)</li>
+ *     <li>loadtest.properties: Properties file of the maintainer, such as config.properties (default none)</li>
+ * </ul>
+ */
+public class LoadTest {
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    public static void main(String[] args) throws Exception {
+        if (!run()) {
+            throw new RuntimeException("Load test failed, see the log");
+        }
+    }
+
+    /**
+     * Generate the families, reconcile them and report
+     *
+     * @return true if all relations are as wanted afterwards
+     * @throws Exception if the load test could not be run
+     */
+    static boolean run() throws Exception {
+        int families = Integer.getInteger("loadtest.families", 20);
+        int threads = Integer.getInteger("loadtest.threads", 4);
+        double missingFraction = getDouble("loadtest.missingFraction", 0.05);
+        double staleFraction = getDouble("loadtest.staleFraction", 0.02);
+        double publishedFraction = getDouble("loadtest.publishedFraction", 0.5);
+        NewspaperFamilyGenerator generator = new NewspaperFamilyGenerator(Long.getLong("loadtest.seed", 1L),
+                Integer.getInteger("loadtest.maxYears", 40), Integer.getInteger("loadtest.maxTitlesPerFamily", 3),
+                getDouble("loadtest.weeklyFraction", 0.3));
+        Random random = generator.getRandom();
+
+        long setupStart = System.currentTimeMillis();
+        List<TitleRange> titles = new ArrayList<>();
+        List<EditionRecord> editions = new ArrayList<>();
+        for (int family = 0; family < families; family++) {
+            generator.generate("avis" + family, titles, editions);
+        }
+        TitleRangeIndex titleIndex = new TitleRangeIndex();
+        for (TitleRange title : titles) {
+            titleIndex.add(title);
+        }
+
+        InMemoryFedora fedora = new InMemoryFedora(Long.getLong("loadtest.fedoraLatencyMicros", 0L));
+        Map<String, Set<String>> wantedEditions = new HashMap<>();
+        for (TitleRange title : titles) {
+            fedora.addObject(title.getTitleDomsID(), RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE,
+                    toMods(title));
+            wantedEditions.put(title.getTitleDomsID(), new HashSet<String>());
+        }
+        Set<String> publishedEditions = new HashSet<>();
+        int initialRelations = 0;
+        try (EmbeddedSboi sboi = new EmbeddedSboi()) {
+            for (TitleRange title : titles) {
+                sboi.addTitle(title.getTitleDomsID());
+            }
+            for (EditionRecord edition : editions) {
+                boolean published = random.nextDouble() < publishedFraction;
+                fedora.addObject(edition.getDomsID(), published ? RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE
+                                                                : RunnableTitleRecordRelationsMaintainer.INACTIVE_STATE,
+                        null);
+                if (published) {
+                    publishedEditions.add(edition.getDomsID());
+                }
+                for (TitleRange title : titleIndex.findTitles(edition.getAvisID(), edition.getDateIssued())) {
+                    wantedEditions.get(title.getTitleDomsID()).add(edition.getDomsID());
+                    if (random.nextDouble() >= missingFraction) {
+                        fedora.putRelation(edition.getDomsID(), title.getTitleDomsID());
+                        initialRelations++;
+                    }
+                }
+                if (random.nextDouble() < staleFraction) {
+                    TitleRange other = titles.get(random.nextInt(titles.size()));
+                    if (!other.getAvisID().equals(edition.getAvisID())) {
+                        fedora.putRelation(edition.getDomsID(), other.getTitleDomsID());
+                        initialRelations++;
+                    }
+                }
+                sboi.addEdition(edition);
+            }
+            sboi.commit();
+            log.info("Generated {} families with {} newspaper objects, {} editions and {} relations in {} ms",
+                    new Object[]{families, titles.size(), editions.size(), initialRelations,
+                            System.currentTimeMillis() - setupStart});
+
+            MetricRegistry registry = new MetricRegistry();
+            long failures = reconcile(fedora, sboi, titles, editions.size(), threads,
+                    new ReconciliationMetrics(registry));
+            report(registry, fedora);
+            boolean relationsAsWanted = verify(fedora, wantedEditions, publishedEditions);
+            if (failures > 0) {
+                log.error("{} newspaper objects had failures", failures);
+            }
+            return failures == 0 && relationsAsWanted;
+        }
+    }
+
+    /**
+     * Reconcile all newspaper objects on the given number of threads
+     *
+     * @return The number of newspaper objects that were not reconciled without failures
+     */
+    private static long reconcile(InMemoryFedora fedora, EmbeddedSboi sboi, List<TitleRange> titles, int editions,
+                                  int threads, ReconciliationMetrics metrics) throws Exception {
+        Properties properties = new Properties();
+        String propertiesFile = System.getProperty("loadtest.properties");
+        if (propertiesFile != null) {
+            try (Reader reader = new FileReader(propertiesFile)) {
+                properties.load(reader);
+            }
+        }
+        final DomsItemFactory itemFactory = new DomsItemFactory();
+        final RunnableTitleRecordRelationsMaintainer maintainer = new RunnableTitleRecordRelationsMaintainer(
+                properties, fedora.createClient(), itemFactory,
+                new NewspaperIndex(sboi.getSolrServer(), itemFactory), metrics);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (final TitleRange title : titles) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Item item = itemFactory.create(title.getTitleDomsID());
+                    ResultCollector resultCollector = new ResultCollector("loadtest", "0");
+                    maintainer.doWorkOnItem(item, resultCollector);
+                    if (!resultCollector.isSuccess()) {
+                        failures.incrementAndGet();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        maintainer.close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Reconciled {} newspaper objects on {} threads in {} ms, {} newspaper objects/s, {} editions/s",
+                new Object[]{titles.size(), threads, elapsedMillis,
+                        String.format("%.1f", titles.size() * 1000.0 / Math.max(elapsedMillis, 1)),
+                        String.format("%.0f", editions * 1000.0 / Math.max(elapsedMillis, 1))});
+        return failures.get();
+    }
+
+    /**
+     * Log the changes made, the latency percentiles of each phase and the Fedora calls made
+     */
+    private static void report(MetricRegistry registry, InMemoryFedora fedora) {
+        for (Map.Entry<String, Meter> meter : registry.getMeters().entrySet()) {
+            if (meter.getValue().getCount() > 0) {
+                log.info("{}: {}", meter.getKey(), meter.getValue().getCount());
+            }
+        }
+        for (Map.Entry<String, Timer> timer : registry.getTimers().entrySet()) {
+            if (timer.getValue().getCount() == 0) {
+                continue;
+            }
+            Snapshot snapshot = timer.getValue().getSnapshot();
+            log.info("{}: count {}, ms mean {}, p50 {}, p95 {}, p99 {}, max {}",
+                    new Object[]{timer.getKey(), timer.getValue().getCount(), toMillis(snapshot.getMean()),
+                            toMillis(snapshot.getMedian()), toMillis(snapshot.get95thPercentile()),
+                            toMillis(snapshot.get99thPercentile()), toMillis(snapshot.getMax())});
+        }
+        log.info("Fedora calls: {}", fedora.getCalls());
+    }
+
+    /**
+     * Check that the relations are exactly those wanted, and that every published edition is published again
+     *
+     * @return true if they are
+     */
+    private static boolean verify(InMemoryFedora fedora, Map<String, Set<String>> wantedEditions,
+                                  Set<String> publishedEditions) {
+        int wrongTitles = 0;
+        for (Map.Entry<String, Set<String>> wanted : wantedEditions.entrySet()) {
+            if (!fedora.getEditionsWithRelation(wanted.getKey()).equals(wanted.getValue())) {
+                wrongTitles++;
+            }
+        }
+        int unpublished = 0;
+        for (String edition : publishedEditions) {
+            if (!RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE.equals(fedora.getState(edition))) {
+                unpublished++;
+            }
+        }
+        if (wrongTitles > 0 || unpublished > 0) {
+            log.error("{} newspaper objects do not have the wanted relations, {} published editions were left "
+                      + "unpublished", wrongTitles, unpublished);
+            return false;
+        }
+        log.info("All relations are as wanted and all published editions are published");
+        return true;
+    }
+
+    private static String toMods(TitleRange title) {
+        return "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+               + "<identifier type=\"title_family\">" + title.getAvisID() + "</identifier>"
+               + "<originInfo>"
+               + "<dateIssued point=\"start\">" + title.getStartDate() + "</dateIssued>"
+               + "<dateIssued point=\"end\">" + title.getEndDate() + "</dateIssued>"
+               + "</originInfo></mods>";
+    }
+
+    private static String toMillis(double nanos) {
+        return String.format("%.2f", nanos / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static double getDouble(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
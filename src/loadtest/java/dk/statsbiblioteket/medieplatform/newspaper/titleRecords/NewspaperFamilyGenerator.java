@@ -0,0 +1,92 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Generates newspaper families for load tests. Each family has a newspaper ID, runs for a random number of years, and
+ * is split into one or more newspaper objects ("titelposter") with consecutive date ranges, the first of which may be
+ * open at the start and the last open at the end. Editions are issued six days a week, or weekly for some families.
+ */
+class NewspaperFamilyGenerator {
+    private final Random random;
+    private final int maxYears;
+    private final int maxTitlesPerFamily;
+    private final double weeklyFraction;
+
+    /**
+     * Constructor
+     *
+     * @param seed The seed of the random numbers, so the same families are generated each time
+     * @param maxYears The longest a family runs, in years
+     * @param maxTitlesPerFamily The largest number of newspaper objects in a family
+     * @param weeklyFraction The fraction of families that are weekly rather than daily
+     */
+    NewspaperFamilyGenerator(long seed, int maxYears, int maxTitlesPerFamily, double weeklyFraction) {
+        this.random = new Random(seed);
+        this.maxYears = maxYears;
+        this.maxTitlesPerFamily = maxTitlesPerFamily;
+        this.weeklyFraction = weeklyFraction;
+    }
+
+    /**
+     * Get the random numbers used, so choices made about the generated families are also reproducible
+     *
+     * @return The random numbers
+     */
+    Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Generate a family
+     *
+     * @param avisID The newspaper ID of the family
+     * @param titles The list to add the newspaper objects of the family to
+     * @param editions The list to add the editions of the family to
+     */
+    void generate(String avisID, List<TitleRange> titles, List<EditionRecord> editions) {
+        int firstYear = 1750 + random.nextInt(200);
+        int years = 1 + random.nextInt(maxYears);
+        int lastYear = firstYear + years - 1;
+
+        // Split the years into consecutive date ranges, one per newspaper object
+        int titleCount = 1 + random.nextInt(Math.min(maxTitlesPerFamily, years));
+        List<Integer> splitYears = new ArrayList<>();
+        for (int i = 1; i < titleCount; i++) {
+            splitYears.add(firstYear + (int) ((long) years * i / titleCount));
+        }
+        String start = random.nextInt(5) == 0 ? "" : firstYear + "-01-01";
+        for (int i = 0; i < titleCount; i++) {
+            String end = i == titleCount - 1 ? (random.nextInt(5) == 0 ? "" : lastYear + "-12-31")
+                                             : (splitYears.get(i) - 1) + "-12-31";
+            titles.add(new TitleRange(newPID(), avisID, start, end));
+            start = i == titleCount - 1 ? null : splitYears.get(i) + "-01-01";
+        }
+
+        boolean weekly = random.nextDouble() < weeklyFraction;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Calendar day = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+        day.clear();
+        day.set(firstYear, Calendar.JANUARY, 1);
+        while (day.get(Calendar.YEAR) <= lastYear) {
+            if (weekly ? day.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY
+                       : day.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
+                editions.add(new EditionRecord(newPID(), avisID, format.format(day.getTime())));
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    private String newPID() {
+        return "uuid:" + new UUID(random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,7 @@
+# Options given to the JVM by the scripts in bin.
+#
+# The Fedora client uses the HTTP stack of the JVM, which is configured with system properties for the whole JVM. They
+# are set here, once at startup, rather than by the component: keep connections to Fedora alive, keep at most this many
+# idle connections per host (at least autonomous.maxThreads), and time out connecting and reading, in milliseconds.
+JAVA_OPTS="$JAVA_OPTS -Dhttp.keepAlive=true -Dhttp.maxConnections=10"
+JAVA_OPTS="$JAVA_OPTS -Dsun.net.client.defaultConnectTimeout=10000 -Dsun.net.client.defaultReadTimeout=300000"
@@ -0,0 +1,81 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of calls in flight, adapting the limit to how the called service copes (AIMD). Each call that
+ * succeeds within the latency threshold raises the limit by 1/limit, so by about one per round of calls. A call that
+ * fails or is too slow halves the limit, at most once per round, so one burst of failures does not collapse it.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private double limit;
+    private int inFlight = 0;
+    /**
+     * Calls to complete before the limit may be decreased again
+     */
+    private int decreaseCooldown = 0;
+
+    /**
+     * Constructor
+     *
+     * @param minLimit The lowest the limit may go
+     * @param maxLimit The highest the limit may go, and the initial limit
+     * @param latencyThresholdMillis Calls slower than this count as a sign of overload
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, long latencyThresholdMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Limits must satisfy 1 <= min <= max, were min " + minLimit + " and max " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Wait until a call may be made
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Report that a call has completed, and adapt the limit
+     *
+     * @param latencyNanos How long the call took
+     * @param overloaded Whether the call failed in a way that suggests the service is overloaded
+     */
+    public synchronized void release(long latencyNanos, boolean overloaded) {
+        inFlight--;
+        if (decreaseCooldown > 0) {
+            decreaseCooldown--;
+        }
+        if (overloaded || latencyNanos > latencyThresholdNanos) {
+            if (decreaseCooldown == 0) {
+                limit = Math.max(minLimit, limit / 2);
+                decreaseCooldown = inFlight + (int) limit;
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Get the current limit
+     *
+     * @return The number of calls that may be in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+}
@@ -0,0 +1,171 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reconciles the relations from editions to newspaper objects ("titelposter") for all newspaper objects at once.
+ * Instead of one SBOI range query per newspaper object, all newspaper objects and all editions are read from SBOI
+ * once and joined in memory, and all changes to an edition are written together. The fingerprints of the newspaper
+ * objects whose relations are changed are removed, so they are not skipped the next time they are reconciled.
+ */
+public class BulkReconciler {
+    private static final Logger log = LoggerFactory.getLogger(BulkReconciler.class);
+    private final EnhancedFedora eFedora;
+    private final NewspaperIndex newspaperIndex;
+    private final RelationWriter relationWriter;
+    private final RelationMutationExecutor mutationExecutor;
+    private final TitleFingerprintStore fingerprintStore;
+    private final ModsTitleExtractor modsTitleExtractor = new ModsTitleExtractor();
+
+    /**
+     * Constructor
+     *
+     * @param eFedora The Fedora to read MODS and relations from
+     * @param newspaperIndex The index to read newspaper objects and editions from
+     * @param relationWriter The writer to change relations with
+     * @param mutationExecutor The executor to run changes to editions with
+     * @param fingerprintStore The fingerprints of reconciled newspaper objects, or null if none are kept
+     */
+    public BulkReconciler(EnhancedFedora eFedora, NewspaperIndex newspaperIndex, RelationWriter relationWriter,
+                          RelationMutationExecutor mutationExecutor, TitleFingerprintStore fingerprintStore) {
+        this.eFedora = eFedora;
+        this.newspaperIndex = newspaperIndex;
+        this.relationWriter = relationWriter;
+        this.mutationExecutor = mutationExecutor;
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    /**
+     * Plan and apply the changes needed for all newspaper objects
+     *
+     * @return The editions that could not be changed, empty if all succeeded
+     * @throws Exception if the changes could not be planned. No changes have been applied then.
+     */
+    public List<RelationMutationExecutor.Failure<EditionChange>> run() throws Exception {
+        List<EditionChange> changes = plan();
+        List<RelationMutationExecutor.Failure<EditionChange>> failures = apply(changes);
+        log.info("Changed relations of {} editions, {} failed", changes.size() - failures.size(), failures.size());
+        return failures;
+    }
+
+    /**
+     * Compute the relations to add to and remove from every edition. Newspaper objects without a newspaper ID are
+     * skipped, and relations to them are left alone.
+     *
+     * @return The changes, one per edition whose relations are not as they should be
+     * @throws BackendMethodFailedException if reading MODS or relations from Fedora failed
+     * @throws BackendInvalidResourceException if a newspaper object could not be found in Fedora
+     * @throws BackendInvalidCredsException if not allowed to read from Fedora
+     * @throws XMLStreamException if the MODS of a newspaper object is not well formed
+     */
+    public List<EditionChange> plan() throws BackendMethodFailedException, BackendInvalidResourceException,
+            BackendInvalidCredsException, XMLStreamException {
+        TitleRangeIndex titleIndex = new TitleRangeIndex();
+        // Edition PID to the PIDs of the newspaper objects it has relations to
+        Map<String, Set<String>> existingRelations = new HashMap<>();
+        Iterator<String> titleIDs = newspaperIndex.getAllTitleIDs();
+        while (titleIDs.hasNext()) {
+            String titleID = titleIDs.next();
+            TitleRange title = modsTitleExtractor.extract(titleID, eFedora.getXMLDatastreamContents(titleID, "MODS"));
+            if (title.getAvisID().trim().isEmpty()) {
+                log.warn("Skipping {}, which has no newspaper ID", titleID);
+                continue;
+            }
+            titleIndex.add(title);
+            List<FedoraRelation> relations = eFedora.getInverseRelations(titleID,
+                    RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION);
+            for (FedoraRelation relation : relations) {
+                String editionID = relation.getSubject().replace(RunnableTitleRecordRelationsMaintainer.URI_PREFIX, "");
+                Set<String> titles = existingRelations.get(editionID);
+                if (titles == null) {
+                    titles = new HashSet<>();
+                    existingRelations.put(editionID, titles);
+                }
+                titles.add(titleID);
+            }
+        }
+        log.info("Read {} newspaper objects, with relations from {} editions", titleIndex.size(),
+                existingRelations.size());
+
+        List<EditionChange> changes = new ArrayList<>();
+        long editionCount = 0;
+        Iterator<EditionRecord> editions = newspaperIndex.getAllEditions();
+        while (editions.hasNext()) {
+            EditionRecord edition = editions.next();
+            editionCount++;
+            Set<String> wanted = new HashSet<>();
+            for (TitleRange title : titleIndex.findTitles(edition.getAvisID(), edition.getDateIssued())) {
+                wanted.add(title.getTitleDomsID());
+            }
+            Set<String> existing = existingRelations.remove(edition.getDomsID());
+            addChange(changes, edition.getDomsID(), wanted,
+                    existing == null ? Collections.<String>emptySet() : existing);
+        }
+        // What is left are relations from objects that are not editions in the index, so none of them are wanted
+        for (Map.Entry<String, Set<String>> entry : existingRelations.entrySet()) {
+            addChange(changes, entry.getKey(), Collections.<String>emptySet(), entry.getValue());
+        }
+        log.info("Read {} editions, of which {} need their relations changed", editionCount, changes.size());
+        return changes;
+    }
+
+    /**
+     * Apply the changes, writing all changes to an edition together
+     *
+     * @param changes The changes to apply
+     * @return The changes that failed, empty if all succeeded
+     * @throws InterruptedException if interrupted while waiting for changes to complete
+     * @throws IOException if the fingerprints of the changed newspaper objects could not be removed
+     */
+    public List<RelationMutationExecutor.Failure<EditionChange>> apply(List<EditionChange> changes)
+            throws InterruptedException, IOException {
+        if (fingerprintStore != null) {
+            fingerprintStore.removeAll(EditionChange.getTitles(changes));
+        }
+        return mutationExecutor.execute(changes, new RelationMutationExecutor.Mutation<EditionChange>() {
+            @Override
+            public void apply(EditionChange change) throws Exception {
+                relationWriter.updateRelations(change.getEditionDomsID(), change.getTitlesToAdd(),
+                        change.getTitlesToRemove());
+            }
+        });
+    }
+
+    /**
+     * Add a change to the list if the wanted and existing relations of an edition differ
+     *
+     * @param changes The list of changes
+     * @param editionID The DOMS PID of the edition
+     * @param wanted The DOMS PIDs of the newspaper objects the edition should have relations to
+     * @param existing The DOMS PIDs of the newspaper objects the edition has relations to
+     */
+    private static void addChange(List<EditionChange> changes, String editionID, Set<String> wanted,
+                                  Set<String> existing) {
+        Set<String> toAdd = new HashSet<>(wanted);
+        toAdd.removeAll(existing);
+        Set<String> toRemove = new HashSet<>(existing);
+        toRemove.removeAll(wanted);
+        if (!toAdd.isEmpty() || !toRemove.isEmpty()) {
+            EditionChange change = new EditionChange(editionID, toAdd, toRemove);
+            log.debug("Planned {}", change);
+            changes.add(change);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a change plan file written by {@link ChangePlanWriter}. The plan is read in batches; the changes of a batch
+ * are grouped per edition and applied through a {@link RelationWriter}. After each batch, the number of lines done is
+ * written to a checkpoint file next to the plan, so an interrupted run resumes after the last completed batch. The
+ * checkpoint is deleted once the whole plan is applied, and a last line cut short while the plan was written is
+ * ignored.
+ * Changes that fail are appended to a ".failed" plan next to the plan, which can itself be applied later. The
+ * fingerprints of the newspaper objects whose relations are changed are removed, so they are not skipped the next time
+ * they are reconciled.
+ */
+public class ChangePlanApplier {
+    private static final Logger log = LoggerFactory.getLogger(ChangePlanApplier.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final RelationWriter relationWriter;
+    private final RelationMutationExecutor mutationExecutor;
+    private final int batchSize;
+    private final TitleFingerprintStore fingerprintStore;
+
+    /**
+     * Constructor
+     *
+     * @param relationWriter The writer to change relations with
+     * @param mutationExecutor The executor to run changes to editions with
+     * @param batchSize The number of lines of the plan to apply between checkpoints
+     * @param fingerprintStore The fingerprints of reconciled newspaper objects, or null if none are kept
+     */
+    public ChangePlanApplier(RelationWriter relationWriter, RelationMutationExecutor mutationExecutor, int batchSize,
+                             TitleFingerprintStore fingerprintStore) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
+        this.relationWriter = relationWriter;
+        this.mutationExecutor = mutationExecutor;
+        this.batchSize = batchSize;
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    /**
+     * Apply the plan, resuming from the checkpoint if there is one
+     *
+     * @param plan The change plan file
+     * @return The number of relation changes that failed
+     * @throws IOException if the plan could not be read, or the checkpoint could not be written
+     * @throws InterruptedException if interrupted while waiting for changes to complete
+     */
+    public long apply(File plan) throws IOException, InterruptedException {
+        File checkpoint = getCheckpointFile(plan);
+        ChangePlanWriter failedChanges = new ChangePlanWriter(new File(plan.getPath() + ".failed"));
+        long done = readCheckpoint(checkpoint);
+        if (done > 0) {
+            log.info("Resuming {} after line {}", plan, done);
+        }
+        long lineNumber = 0;
+        long failed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(plan), UTF8))) {
+            String line;
+            while (lineNumber < done && reader.readLine() != null) {
+                lineNumber++;
+            }
+            List<RelationChange> batch = new ArrayList<>(batchSize);
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isEmpty()) {
+                    RelationChange change;
+                    try {
+                        change = RelationChange.parse(line);
+                    } catch (IllegalArgumentException e) {
+                        if (reader.readLine() != null) {
+                            throw e;
+                        }
+                        // Only the last line may be cut short, by a crash while the plan was written
+                        log.warn("Ignoring malformed last line '{}' of {}", line, plan);
+                        lineNumber--;
+                        break;
+                    }
+                    batch.add(change);
+                }
+                if (lineNumber % batchSize == 0) {
+                    failed += applyBatch(batch, failedChanges);
+                    writeCheckpoint(checkpoint, lineNumber);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                failed += applyBatch(batch, failedChanges);
+            }
+        }
+        // The whole plan is applied, so a plan later written to the same file starts from the beginning
+        if (checkpoint.exists() && !checkpoint.delete()) {
+            throw new IOException("Could not delete " + checkpoint);
+        }
+        log.info("Applied {} lines of {}, {} relation changes failed", new Object[]{lineNumber - done, plan, failed});
+        return failed;
+    }
+
+    /**
+     * Get the checkpoint file of a plan
+     *
+     * @param plan The change plan file
+     * @return The file holding the number of lines of the plan that are done
+     */
+    public static File getCheckpointFile(File plan) {
+        return new File(plan.getPath() + ".checkpoint");
+    }
+
+    /**
+     * Apply a batch of changes, writing all changes to an edition together
+     *
+     * @param batch The changes, in the order they were planned
+     * @param failedChanges The plan to append failed changes to
+     * @return The number of relation changes that failed
+     * @throws IOException if failed changes could not be written
+     * @throws InterruptedException if interrupted while waiting for changes to complete
+     */
+    private long applyBatch(List<RelationChange> batch, ChangePlanWriter failedChanges)
+            throws IOException, InterruptedException {
+        Map<String, Set<String>> adds = new LinkedHashMap<>();
+        Map<String, Set<String>> removes = new LinkedHashMap<>();
+        for (RelationChange change : batch) {
+            Set<String> add = getOrCreate(adds, change.getEditionDomsID());
+            Set<String> remove = getOrCreate(removes, change.getEditionDomsID());
+            // A later change of the same relation overrides an earlier one
+            if (change.getOperation() == RelationChange.Operation.ADD) {
+                add.add(change.getTitleDomsID());
+                remove.remove(change.getTitleDomsID());
+            } else {
+                remove.add(change.getTitleDomsID());
+                add.remove(change.getTitleDomsID());
+            }
+        }
+        List<EditionChange> editionChanges = new ArrayList<>(adds.size());
+        for (String edition : adds.keySet()) {
+            editionChanges.add(new EditionChange(edition, adds.get(edition), removes.get(edition)));
+        }
+        if (fingerprintStore != null) {
+            fingerprintStore.removeAll(EditionChange.getTitles(editionChanges));
+        }
+
+        List<RelationMutationExecutor.Failure<EditionChange>> failures = mutationExecutor.execute(editionChanges,
+                new RelationMutationExecutor.Mutation<EditionChange>() {
+                    @Override
+                    public void apply(EditionChange change) throws Exception {
+                        relationWriter.updateRelations(change.getEditionDomsID(), change.getTitlesToAdd(),
+                                change.getTitlesToRemove());
+                    }
+                });
+        long failed = 0;
+        for (RelationMutationExecutor.Failure<EditionChange> failure : failures) {
+            List<RelationChange> changes = RelationChange.of(failure.getTarget(), System.currentTimeMillis());
+            failedChanges.append(changes);
+            failed += changes.size();
+        }
+        return failed;
+    }
+
+    private static Set<String> getOrCreate(Map<String, Set<String>> map, String key) {
+        Set<String> set = map.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<>();
+            map.put(key, set);
+        }
+        return set;
+    }
+
+    /**
+     * Read the number of lines done from a checkpoint file
+     *
+     * @param checkpoint The checkpoint file
+     * @return The number of lines done, 0 if there is no checkpoint
+     * @throws IOException if the checkpoint exists but could not be read
+     */
+    private static long readCheckpoint(File checkpoint) throws IOException {
+        if (!checkpoint.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(checkpoint), UTF8))) {
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        }
+    }
+
+    /**
+     * Write the number of lines done to a temporary file and move it in place, so a crash never leaves a partial
+     * checkpoint
+     *
+     * @param checkpoint The checkpoint file
+     * @param done The number of lines done
+     * @throws IOException if the checkpoint could not be written
+     */
+    private static void writeCheckpoint(File checkpoint, long done) throws IOException {
+        File temporary = new File(checkpoint.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), UTF8)) {
+            writer.write(done + "\n");
+        }
+        if (!temporary.renameTo(checkpoint)) {
+            // renameTo does not replace existing files on all platforms
+            if (!checkpoint.delete() || !temporary.renameTo(checkpoint)) {
+                throw new IOException("Could not move " + temporary + " to " + checkpoint);
+            }
+        }
+    }
+}
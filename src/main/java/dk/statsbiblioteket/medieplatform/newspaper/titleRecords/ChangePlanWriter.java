@@ -0,0 +1,51 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Appends planned relation changes to a change plan file, one {@link RelationChange} per line. The file is opened for
+ * each append, so changes are on disk once the append returns. Safe to use from several threads; the changes of one
+ * append are never interleaved with those of another.
+ */
+public class ChangePlanWriter {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final File file;
+
+    /**
+     * Constructor
+     *
+     * @param file The change plan file. Created if it does not exist, appended to if it does.
+     */
+    public ChangePlanWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Append changes to the plan
+     *
+     * @param changes The changes
+     * @throws IOException if the changes could not be written
+     */
+    public synchronized void append(Collection<RelationChange> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8))) {
+            for (RelationChange change : changes) {
+                writer.write(change.toLine());
+                writer.write("\n");
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
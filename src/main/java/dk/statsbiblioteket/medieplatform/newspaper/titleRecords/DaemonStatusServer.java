@@ -0,0 +1,93 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+/**
+ * A small HTTP server reporting on a {@link TitleRecordsDaemon}. "/health" answers 200 while the daemon is healthy
+ * and 503 when it is not, for monitoring. "/status" answers with {@link TitleRecordsDaemon#getStatus()}.
+ *
+ * The server has no authentication, and the status includes the last error, so it listens on the loopback address
+ * unless given another.
+ */
+public class DaemonStatusServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DaemonStatusServer.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final HttpServer server;
+
+    /**
+     * Constructor. Starts the server on the loopback address.
+     *
+     * @param daemon The daemon to report on
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the server could not be started
+     */
+    public DaemonStatusServer(TitleRecordsDaemon daemon, int port) throws IOException {
+        this(daemon, null, port);
+    }
+
+    /**
+     * Constructor. Starts the server.
+     *
+     * @param daemon The daemon to report on
+     * @param host The host name or address to listen on, or null or empty for the loopback address
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the server could not be started
+     */
+    public DaemonStatusServer(final TitleRecordsDaemon daemon, String host, int port) throws IOException {
+        InetAddress address = host == null || host.trim().isEmpty()
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host.trim());
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean healthy = daemon.isHealthy();
+                respond(exchange, healthy ? 200 : 503, healthy ? "OK\n" : "UNHEALTHY\n");
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, daemon.getStatus());
+            }
+        });
+        server.start();
+        log.info("Serving daemon status on {} port {}", address.getHostAddress(), getPort());
+    }
+
+    /**
+     * Get the port the server listens on
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
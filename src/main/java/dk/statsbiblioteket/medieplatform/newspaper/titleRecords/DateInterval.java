@@ -0,0 +1,185 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An interval of edition dates, where each end may be open, inclusive or exclusive. Dates compare as strings, like
+ * in {@link TitleRange#contains(String)} and the range queries of {@link NewspaperIndex}.
+ */
+public class DateInterval {
+    private final String start;
+    private final boolean startInclusive;
+    private final String end;
+    private final boolean endInclusive;
+
+    /**
+     * Constructor
+     *
+     * @param start The start, or null if open
+     * @param startInclusive Whether the start itself is in the interval
+     * @param end The end, or null if open
+     * @param endInclusive Whether the end itself is in the interval
+     */
+    public DateInterval(String start, boolean startInclusive, String end, boolean endInclusive) {
+        this.start = start;
+        this.startInclusive = startInclusive;
+        this.end = end;
+        this.endInclusive = endInclusive;
+    }
+
+    /**
+     * Get the inclusive interval of a date range as given in MODS, where an empty date is an open end
+     *
+     * @param startDate The start date, or the empty string
+     * @param endDate The end date, or the empty string
+     * @return The interval
+     */
+    public static DateInterval closed(String startDate, String endDate) {
+        return new DateInterval(startDate.trim().isEmpty() ? null : startDate, true,
+                endDate.trim().isEmpty() ? null : endDate, true);
+    }
+
+    /**
+     * Get the dates in one date range that are not in another
+     *
+     * @param from The date range to subtract from
+     * @param subtract The date range to subtract
+     * @return Zero, one or two disjoint intervals, in date order
+     */
+    public static List<DateInterval> difference(DateInterval from, DateInterval subtract) {
+        List<DateInterval> result = new ArrayList<>(2);
+        if (from.isEmpty()) {
+            return result;
+        }
+        if (!from.overlaps(subtract)) {
+            result.add(from);
+            return result;
+        }
+        // The part of from before subtract starts
+        if (subtract.start != null && (from.start == null || from.start.compareTo(subtract.start) < 0
+                                       || (from.start.equals(subtract.start) && from.startInclusive
+                                           && !subtract.startInclusive))) {
+            result.add(new DateInterval(from.start, from.startInclusive, subtract.start, !subtract.startInclusive));
+        }
+        // The part of from after subtract ends
+        if (subtract.end != null && (from.end == null || from.end.compareTo(subtract.end) > 0
+                                     || (from.end.equals(subtract.end) && from.endInclusive
+                                         && !subtract.endInclusive))) {
+            result.add(new DateInterval(subtract.end, !subtract.endInclusive, from.end, from.endInclusive));
+        }
+        return result;
+    }
+
+    /**
+     * Check whether the interval contains no dates at all
+     *
+     * @return true if the interval is empty
+     */
+    public boolean isEmpty() {
+        if (start == null || end == null) {
+            return false;
+        }
+        int comparison = start.compareTo(end);
+        return comparison > 0 || (comparison == 0 && !(startInclusive && endInclusive));
+    }
+
+    /**
+     * Check whether this interval and another have a date in common
+     *
+     * @param other The other interval
+     * @return true if they overlap
+     */
+    public boolean overlaps(DateInterval other) {
+        return !new DateInterval(maxStart(this, other).start, maxStart(this, other).startInclusive,
+                minEnd(this, other).end, minEnd(this, other).endInclusive).isEmpty();
+    }
+
+    /**
+     * Format the interval as a Solr range query, like "[1759-01-01 TO 1800-01-01}"
+     *
+     * @return The range query
+     */
+    public String toQuery() {
+        return (startInclusive ? "[" : "{") + (start == null ? "*" : start) + " TO " + (end == null ? "*" : end)
+               + (endInclusive ? "]" : "}");
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public boolean isStartInclusive() {
+        return startInclusive;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public boolean isEndInclusive() {
+        return endInclusive;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateInterval)) {
+            return false;
+        }
+        DateInterval that = (DateInterval) o;
+        return startInclusive == that.startInclusive && endInclusive == that.endInclusive
+               && (start == null ? that.start == null : start.equals(that.start))
+               && (end == null ? that.end == null : end.equals(that.end));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = start == null ? 0 : start.hashCode();
+        result = 31 * result + (startInclusive ? 1 : 0);
+        result = 31 * result + (end == null ? 0 : end.hashCode());
+        result = 31 * result + (endInclusive ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toQuery();
+    }
+
+    /**
+     * The interval of two with the later start, where an exclusive start is later than an inclusive one
+     */
+    private static DateInterval maxStart(DateInterval a, DateInterval b) {
+        if (a.start == null) {
+            return b;
+        }
+        if (b.start == null) {
+            return a;
+        }
+        int comparison = a.start.compareTo(b.start);
+        if (comparison != 0) {
+            return comparison > 0 ? a : b;
+        }
+        return a.startInclusive ? b : a;
+    }
+
+    /**
+     * The interval of two with the earlier end, where an exclusive end is earlier than an inclusive one
+     */
+    private static DateInterval minEnd(DateInterval a, DateInterval b) {
+        if (a.end == null) {
+            return b;
+        }
+        if (b.end == null) {
+            return a;
+        }
+        int comparison = a.end.compareTo(b.end);
+        if (comparison != 0) {
+            return comparison < 0 ? a : b;
+        }
+        return a.endInclusive ? b : a;
+    }
+}
@@ -0,0 +1,64 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The relations to newspaper objects ("titelposter") to add to and remove from one edition
+ */
+public class EditionChange {
+    private final String editionDomsID;
+    private final Set<String> titlesToAdd;
+    private final Set<String> titlesToRemove;
+
+    /**
+     * Constructor
+     *
+     * @param editionDomsID The DOMS PID of the edition
+     * @param titlesToAdd The DOMS PIDs of the newspaper objects to add relations to
+     * @param titlesToRemove The DOMS PIDs of the newspaper objects to remove relations to
+     */
+    public EditionChange(String editionDomsID, Set<String> titlesToAdd, Set<String> titlesToRemove) {
+        this.editionDomsID = editionDomsID;
+        this.titlesToAdd = Collections.unmodifiableSet(titlesToAdd);
+        this.titlesToRemove = Collections.unmodifiableSet(titlesToRemove);
+    }
+
+    public String getEditionDomsID() {
+        return editionDomsID;
+    }
+
+    public Set<String> getTitlesToAdd() {
+        return titlesToAdd;
+    }
+
+    public Set<String> getTitlesToRemove() {
+        return titlesToRemove;
+    }
+
+    /**
+     * Get the newspaper objects that the changes add or remove relations to
+     *
+     * @param changes The changes
+     * @return The DOMS PIDs of the newspaper objects
+     */
+    public static Set<String> getTitles(Collection<EditionChange> changes) {
+        Set<String> titles = new HashSet<>();
+        for (EditionChange change : changes) {
+            titles.addAll(change.getTitlesToAdd());
+            titles.addAll(change.getTitlesToRemove());
+        }
+        return titles;
+    }
+
+    @Override
+    public String toString() {
+        return "EditionChange{" +
+               "editionDomsID='" + editionDomsID + '\'' +
+               ", titlesToAdd=" + titlesToAdd +
+               ", titlesToRemove=" + titlesToRemove +
+               '}';
+    }
+}
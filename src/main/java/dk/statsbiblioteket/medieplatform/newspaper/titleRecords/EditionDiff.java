@@ -0,0 +1,190 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The difference between the editions that should have a relation to a newspaper object ("titelpost") and the
+ * editions that already have it. Editions are identified by their DOMS PIDs.
+ */
+public class EditionDiff {
+    private final List<String> editionsToAdd;
+    private final List<String> editionsToRemove;
+    private final long wantedCount;
+    private final long wantedHash;
+
+    private EditionDiff(List<String> editionsToAdd, List<String> editionsToRemove, long wantedCount, long wantedHash) {
+        this.editionsToAdd = Collections.unmodifiableList(editionsToAdd);
+        this.editionsToRemove = Collections.unmodifiableList(editionsToRemove);
+        this.wantedCount = wantedCount;
+        this.wantedHash = wantedHash;
+    }
+
+    /**
+     * Compute the difference in one pass over the wanted editions, using a hash set of the existing editions.
+     * Only the existing editions are held in memory, the wanted editions are consumed as they are iterated.
+     *
+     * @param wantedEditions PIDs of the editions that should have the relation. Must not contain duplicates.
+     * @param editionsWithRelation PIDs of the editions that have the relation
+     * @return The editions to add relations from, and the editions to remove relations from
+     */
+    public static EditionDiff compute(Iterator<String> wantedEditions, Collection<String> editionsWithRelation) {
+        EditionIdSet unmatched = new EditionIdSet(editionsWithRelation.size());
+        for (String edition : editionsWithRelation) {
+            unmatched.add(edition);
+        }
+        return compute(wantedEditions, unmatched);
+    }
+
+    /**
+     * Compute the difference in one pass over the wanted editions, like
+     * {@link #compute(Iterator, Collection)}, with the existing editions held in a compact set
+     *
+     * @param wantedEditions PIDs of the editions that should have the relation. Must not contain duplicates.
+     * @param editionsWithRelation PIDs of the editions that have the relation. Matched editions are removed from it
+     * @return The editions to add relations from, and the editions to remove relations from
+     */
+    public static EditionDiff compute(Iterator<String> wantedEditions, EditionIdSet editionsWithRelation) {
+        List<String> toAdd = new ArrayList<>();
+        long wantedCount = 0;
+        long wantedHash = 0;
+        while (wantedEditions.hasNext()) {
+            String wanted = wantedEditions.next();
+            wantedCount++;
+            wantedHash += TitleFingerprint.hash(wanted);
+            if (!editionsWithRelation.remove(wanted)) {
+                toAdd.add(wanted);
+            }
+        }
+        // Whatever was not matched by a wanted edition has a relation it should not have. Only those are made strings
+        return new EditionDiff(toAdd, editionsWithRelation.toList(), wantedCount, wantedHash);
+    }
+
+    /**
+     * Compute the difference by merging two inputs that are both sorted in ascending {@link String} order.
+     * Neither input is held in memory.
+     *
+     * @param wantedEditions PIDs of the editions that should have the relation, sorted and without duplicates
+     * @param editionsWithRelation PIDs of the editions that have the relation, sorted and without duplicates
+     * @return The editions to add relations from, and the editions to remove relations from
+     * @throws IllegalArgumentException if either input turns out not to be sorted
+     */
+    public static EditionDiff computeSorted(Iterator<String> wantedEditions, Iterator<String> editionsWithRelation) {
+        List<String> toAdd = new ArrayList<>();
+        List<String> toRemove = new ArrayList<>();
+        long wantedCount = 0;
+        long wantedHash = 0;
+        String wanted = nextSorted(wantedEditions, null);
+        String existing = nextSorted(editionsWithRelation, null);
+        while (wanted != null && existing != null) {
+            int comparison = wanted.compareTo(existing);
+            if (comparison <= 0) {
+                wantedCount++;
+                wantedHash += TitleFingerprint.hash(wanted);
+            }
+            if (comparison == 0) {
+                wanted = nextSorted(wantedEditions, wanted);
+                existing = nextSorted(editionsWithRelation, existing);
+            } else if (comparison < 0) {
+                toAdd.add(wanted);
+                wanted = nextSorted(wantedEditions, wanted);
+            } else {
+                toRemove.add(existing);
+                existing = nextSorted(editionsWithRelation, existing);
+            }
+        }
+        while (wanted != null) {
+            wantedCount++;
+            wantedHash += TitleFingerprint.hash(wanted);
+            toAdd.add(wanted);
+            wanted = nextSorted(wantedEditions, wanted);
+        }
+        while (existing != null) {
+            toRemove.add(existing);
+            existing = nextSorted(editionsWithRelation, existing);
+        }
+        return new EditionDiff(toAdd, toRemove, wantedCount, wantedHash);
+    }
+
+    /**
+     * Create the difference for a change of the wanted editions, when the editions that had the relation were the
+     * editions that were wanted before the change
+     *
+     * @param addedEditions PIDs of the editions that are wanted now but were not before
+     * @param removedEditions PIDs of the editions that were wanted before but are not now
+     * @param wantedCount The number of editions wanted now
+     * @param previousWantedHash The {@link #getWantedHash()} of the editions wanted before the change
+     * @return The editions to add relations from, and the editions to remove relations from
+     */
+    public static EditionDiff fromDelta(List<String> addedEditions, List<String> removedEditions, long wantedCount,
+                                        long previousWantedHash) {
+        // The hash is a sum, so it can be updated without knowing the editions that did not change
+        long wantedHash = previousWantedHash;
+        for (String added : addedEditions) {
+            wantedHash += TitleFingerprint.hash(added);
+        }
+        for (String removed : removedEditions) {
+            wantedHash -= TitleFingerprint.hash(removed);
+        }
+        return new EditionDiff(new ArrayList<>(addedEditions), new ArrayList<>(removedEditions), wantedCount,
+                wantedHash);
+    }
+
+    /**
+     * Get the PIDs of editions from which relations are wanted but do not exist
+     *
+     * @return The PIDs of the editions to add relations from
+     */
+    public List<String> getEditionsToAdd() {
+        return editionsToAdd;
+    }
+
+    /**
+     * Get the PIDs of editions that have a relation but should not
+     *
+     * @return The PIDs of the editions to remove relations from
+     */
+    public List<String> getEditionsToRemove() {
+        return editionsToRemove;
+    }
+
+    /**
+     * Get the number of wanted editions
+     *
+     * @return The number of editions that should have the relation
+     */
+    public long getWantedCount() {
+        return wantedCount;
+    }
+
+    /**
+     * Get an order independent hash of the wanted editions, the sum of {@link TitleFingerprint#hash(String)} of their
+     * PIDs
+     *
+     * @return The hash of the PIDs of the editions that should have the relation
+     */
+    public long getWantedHash() {
+        return wantedHash;
+    }
+
+    /**
+     * Get the next element of a sorted iterator, checking that it is strictly larger than the previous one
+     *
+     * @param iterator The iterator
+     * @param previous The previous element, or null if this is the first
+     * @return The next element, or null if there are no more
+     */
+    private static String nextSorted(Iterator<String> iterator, String previous) {
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        String next = iterator.next();
+        if (previous != null && previous.compareTo(next) >= 0) {
+            throw new IllegalArgumentException("Input is not sorted: '" + next + "' came after '" + previous + "'");
+        }
+        return next;
+    }
+}
@@ -0,0 +1,270 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact set of edition PIDs, for diffing large numbers of editions. PIDs of the usual form
+ * "uuid:xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx", in lower case, are held as two longs in an open addressing hash table,
+ * rather than as strings, and are only formatted as strings again when they are listed. Any other PIDs are kept as
+ * strings. PIDs can be removed, but not added again after removal. The set remembers the order PIDs were added in.
+ * Not thread safe.
+ */
+public class EditionIdSet {
+    private static final String UUID_PREFIX = "uuid:";
+    private static final int UUID_LENGTH = 36;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private long[] mostSignificant;
+    private long[] leastSignificant;
+    // PIDs that are not UUIDs, by insertion index. Null until one is added
+    private String[] others;
+    private Map<String, Integer> otherIndexes;
+    // Insertion index plus one of each UUID, or 0 for an empty slot
+    private int[] table;
+    private int size = 0;
+    private final BitSet removed = new BitSet();
+    // Result of the last call to parse
+    private long parsedMost;
+    private long parsedLeast;
+
+    /**
+     * Constructor
+     *
+     * @param expectedSize The number of PIDs expected to be added
+     */
+    public EditionIdSet(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        mostSignificant = new long[capacity];
+        leastSignificant = new long[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * Add a PID
+     *
+     * @param pid The PID, for example "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997"
+     * @return true if the PID was not already in the set
+     */
+    public boolean add(String pid) {
+        return add(pid, 0);
+    }
+
+    /**
+     * Add the PID of a Fedora URI, without making a string of the PID
+     *
+     * @param uri The URI, for example "info:fedora/uuid:38deefa7-381f-4abf-a6c1-a3531b54f997"
+     * @return true if the PID was not already in the set
+     */
+    public boolean addUri(String uri) {
+        String prefix = RunnableTitleRecordRelationsMaintainer.URI_PREFIX;
+        return uri.startsWith(prefix) ? add(uri, prefix.length()) : add(uri, 0);
+    }
+
+    /**
+     * Remove a PID
+     *
+     * @param pid The PID
+     * @return true if the PID was in the set
+     */
+    public boolean remove(String pid) {
+        int index = indexOf(pid);
+        if (index < 0 || removed.get(index)) {
+            return false;
+        }
+        removed.set(index);
+        return true;
+    }
+
+    /**
+     * Check whether a PID is in the set
+     *
+     * @param pid The PID
+     * @return true if the PID is in the set
+     */
+    public boolean contains(String pid) {
+        int index = indexOf(pid);
+        return index >= 0 && !removed.get(index);
+    }
+
+    /**
+     * Get the number of PIDs in the set
+     *
+     * @return The number of PIDs
+     */
+    public int size() {
+        return size - removed.cardinality();
+    }
+
+    /**
+     * List the PIDs in the set, in the order they were added
+     *
+     * @return The PIDs
+     */
+    public List<String> toList() {
+        List<String> pids = new ArrayList<>(size());
+        for (int index = removed.nextClearBit(0); index < size; index = removed.nextClearBit(index + 1)) {
+            if (others != null && others[index] != null) {
+                pids.add(others[index]);
+            } else {
+                pids.add(format(mostSignificant[index], leastSignificant[index]));
+            }
+        }
+        return pids;
+    }
+
+    private boolean add(String pid, int offset) {
+        if (size == mostSignificant.length) {
+            grow();
+        }
+        if (parse(pid, offset)) {
+            int slot = findSlot(parsedMost, parsedLeast);
+            if (table[slot] != 0) {
+                return false;
+            }
+            mostSignificant[size] = parsedMost;
+            leastSignificant[size] = parsedLeast;
+            table[slot] = size + 1;
+        } else {
+            String other = offset == 0 ? pid : pid.substring(offset);
+            if (others == null) {
+                others = new String[mostSignificant.length];
+                otherIndexes = new HashMap<>();
+            }
+            if (otherIndexes.containsKey(other)) {
+                return false;
+            }
+            others[size] = other;
+            otherIndexes.put(other, size);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Find the insertion index of a PID
+     *
+     * @param pid The PID
+     * @return The insertion index, or -1 if the PID was never added
+     */
+    private int indexOf(String pid) {
+        if (parse(pid, 0)) {
+            return table[findSlot(parsedMost, parsedLeast)] - 1;
+        }
+        if (otherIndexes == null) {
+            return -1;
+        }
+        Integer index = otherIndexes.get(pid);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Find the slot in the hash table holding a UUID, or the empty slot where it belongs
+     */
+    private int findSlot(long most, long least) {
+        int mask = table.length - 1;
+        long mixed = (most ^ least) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (mixed >>> 32) & mask;
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (mostSignificant[index] == most && leastSignificant[index] == least) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the capacity, rehashing the UUIDs if the hash table becomes too full
+     */
+    private void grow() {
+        int capacity = mostSignificant.length * 2;
+        mostSignificant = Arrays.copyOf(mostSignificant, capacity);
+        leastSignificant = Arrays.copyOf(leastSignificant, capacity);
+        if (others != null) {
+            others = Arrays.copyOf(others, capacity);
+        }
+        if (tableSizeFor(capacity) > table.length) {
+            table = new int[tableSizeFor(capacity)];
+            for (int index = 0; index < size; index++) {
+                if (others == null || others[index] == null) {
+                    table[findSlot(mostSignificant[index], leastSignificant[index])] = index + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * The size of a hash table that is at most half full with the given number of entries
+     */
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    /**
+     * Parse a PID of the form "uuid:" followed by a lower case UUID into {@link #parsedMost} and {@link #parsedLeast}
+     *
+     * @param pid The string holding the PID
+     * @param offset Where the PID starts in the string
+     * @return false if the PID is not of that form
+     */
+    private boolean parse(String pid, int offset) {
+        if (pid.length() != offset + UUID_PREFIX.length() + UUID_LENGTH || !pid.startsWith(UUID_PREFIX, offset)) {
+            return false;
+        }
+        int start = offset + UUID_PREFIX.length();
+        long most = 0;
+        long least = 0;
+        int digits = 0;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = pid.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                value = c - 'a' + 10;
+            } else {
+                return false;
+            }
+            if (digits < 16) {
+                most = (most << 4) | value;
+            } else {
+                least = (least << 4) | value;
+            }
+            digits++;
+        }
+        parsedMost = most;
+        parsedLeast = least;
+        return true;
+    }
+
+    /**
+     * Format a UUID held as two longs as a PID
+     */
+    private static String format(long most, long least) {
+        char[] chars = new char[UUID_PREFIX.length() + UUID_LENGTH];
+        UUID_PREFIX.getChars(0, UUID_PREFIX.length(), chars, 0);
+        int position = chars.length;
+        for (int i = 0; i < 32; i++) {
+            long half = i < 16 ? least : most;
+            int shift = (i % 16) * 4;
+            position--;
+            if (i == 12 || i == 16 || i == 20 || i == 24) {
+                chars[position--] = '-';
+            }
+            chars[position] = HEX_DIGITS[(int) (half >>> shift) & 0xF];
+        }
+        return new String(chars);
+    }
+}
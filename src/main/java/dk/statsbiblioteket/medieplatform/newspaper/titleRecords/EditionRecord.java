@@ -0,0 +1,44 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+/**
+ * The fields of an edition that decide which newspaper objects ("titelposter") it should have a relation to
+ */
+public class EditionRecord {
+    private final String domsID;
+    private final String avisID;
+    private final String dateIssued;
+
+    /**
+     * Constructor
+     *
+     * @param domsID The DOMS PID of the edition
+     * @param avisID The newspaper ID, for example "adresseavisen1759"
+     * @param dateIssued The date the edition was issued, for example "1759-01-01"
+     */
+    public EditionRecord(String domsID, String avisID, String dateIssued) {
+        this.domsID = domsID;
+        this.avisID = avisID;
+        this.dateIssued = dateIssued;
+    }
+
+    public String getDomsID() {
+        return domsID;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public String getDateIssued() {
+        return dateIssued;
+    }
+
+    @Override
+    public String toString() {
+        return "EditionRecord{" +
+               "domsID='" + domsID + '\'' +
+               ", avisID='" + avisID + '\'' +
+               ", dateIssued='" + dateIssued + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,196 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.INACTIVE_STATE;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.URI_PREFIX;
+
+/**
+ * Writes relation changes with one Fedora API call for each added or removed relation.
+ */
+public class FedoraApiRelationWriter implements RelationWriter {
+    private static final Logger log = LoggerFactory.getLogger(FedoraApiRelationWriter.class);
+    private final EnhancedFedora eFedora;
+    private final RelationCheck relationCheck;
+
+    /**
+     * Constructor
+     *
+     * @param eFedora The Fedora to write to
+     * @param relationCheck When to look up the relations of an edition before changing them
+     */
+    public FedoraApiRelationWriter(EnhancedFedora eFedora, RelationCheck relationCheck) {
+        this.eFedora = eFedora;
+        this.relationCheck = relationCheck;
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, Collection<String> newspapersToAdd,
+                                Collection<String> newspapersToRemove)
+            throws BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        for (String newspaperDomsID : newspapersToRemove) {
+            removeRelationFromEditionToNewspaper(editionDomsID, newspaperDomsID);
+        }
+        for (String newspaperDomsID : newspapersToAdd) {
+            addRelationFromEditionToNewspaper(editionDomsID, newspaperDomsID);
+        }
+    }
+
+    /**
+     * Add relation from given edition to newspaper object ("titelpost") with given PID (newspaperDomsID) in DOMS.
+     * Objects are unpublished/published as needed. Whether the relations of the edition are looked up first depends
+     * on the configured {@link RelationCheck}.
+     *
+     * @param edition The DOMS PID of the edition which should be at the "source" end of the wanted relation
+     * @param newspaperDomsID The DOMS PID of the newspaper object ("titelpost") which should be the "target" of wanted relation
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void addRelationFromEditionToNewspaper(String edition, String newspaperDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+
+        // If edition already has wanted relation, nothing to do here, return
+        if (relationCheck == RelationCheck.ALWAYS && hasRelationToNewspaper(edition, newspaperDomsID)) {
+            return;
+        }
+
+        try {
+            addRelation(edition, newspaperDomsID);
+        } catch (BackendMethodFailedException e) {
+            if (relationCheck == RelationCheck.ON_CONFLICT && hasRelationToNewspaper(edition, newspaperDomsID)) {
+                log.debug("Adding relation from {} to {} failed, but the relation exists",
+                        new Object[]{edition, newspaperDomsID, e});
+                return;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove relation from given edition to newspaper object ("titelpost") with given PID (newspaperDomsID) in DOMS,
+     * if it exists. Objects are unpublished/published as needed. Whether the relations of the edition are looked up
+     * first depends on the configured {@link RelationCheck}.
+     *
+     * @param edition The DOMS PID of the edition from which the possible relation to newspaperDomsID should be removed
+     * @param newspaperDomsID The target of the relations from edition that should be removed
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void removeRelationFromEditionToNewspaper(String edition, String newspaperDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+
+        // If edition does not have relation to newspaperDomsID, nothing to do here, return
+        if (relationCheck == RelationCheck.ALWAYS && !hasRelationToNewspaper(edition, newspaperDomsID)) {
+            return;
+        }
+
+        try {
+            deleteRelation(edition, newspaperDomsID);
+        } catch (BackendMethodFailedException e) {
+            if (relationCheck == RelationCheck.ON_CONFLICT && !hasRelationToNewspaper(edition, newspaperDomsID)) {
+                log.debug("Deleting relation from {} to {} failed, but the relation does not exist",
+                        new Object[]{edition, newspaperDomsID, e});
+                return;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Look up in DOMS whether given edition has a relation to the newspaper object ("titelpost") with given PID
+     *
+     * @param edition The DOMS PID of the edition to look up relations for
+     * @param newspaperDomsID The DOMS PID of the newspaper object ("titelpost")
+     * @return true if the edition has the relation
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private boolean hasRelationToNewspaper(String edition, String newspaperDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        List<FedoraRelation> relations = eFedora.getNamedRelations(edition, EDITION_TO_NEWSPAPER_RELATION, null);
+        for (FedoraRelation relation : relations) {
+            if (relation.getObject().equals(URI_PREFIX + newspaperDomsID)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add relation from given edition to newspaper object ("titelpost"), unpublishing and republishing the edition if
+     * it is published.
+     *
+     * @param edition The DOMS PID of the edition which should be at the "source" end of the relation
+     * @param newspaperDomsID The DOMS PID of the newspaper object ("titelpost") which should be the "target" of the relation
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void addRelation(String edition, String newspaperDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        // Add relation from edition to newspaper object ("titelpost")
+        try {
+            eFedora.addRelation(edition, URI_PREFIX + edition, EDITION_TO_NEWSPAPER_RELATION,
+                    URI_PREFIX + newspaperDomsID, false, "linking to");
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before adding
+            eFedora.modifyObjectState(edition, INACTIVE_STATE, SET_INACTIVE_COMMENT);
+            try {
+                eFedora.addRelation(edition, URI_PREFIX + edition, EDITION_TO_NEWSPAPER_RELATION,
+                        URI_PREFIX + newspaperDomsID, false,
+                                           "Adding relation " + EDITION_TO_NEWSPAPER_RELATION + " to " +
+                                           URI_PREFIX + newspaperDomsID);
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(edition, PUBLISHED_STATE, SETS_ACTIVE_COMMENT);
+            }
+        }
+    }
+
+    /**
+     * Delete relation from given edition to newspaper object ("titelpost"), unpublishing and republishing the edition
+     * if it is published.
+     *
+     * @param edition The DOMS PID of the edition which is at the "source" end of the relation
+     * @param newspaperDomsID The DOMS PID of the newspaper object ("titelpost") which is the "target" of the relation
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void deleteRelation(String edition, String newspaperDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        try {
+            eFedora.deleteRelation(edition, URI_PREFIX + edition,
+                    EDITION_TO_NEWSPAPER_RELATION, URI_PREFIX + newspaperDomsID, false,
+                                          "Deleting relation " + EDITION_TO_NEWSPAPER_RELATION + " to " +
+                                          URI_PREFIX + newspaperDomsID);
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before deleting
+            eFedora.modifyObjectState(edition, INACTIVE_STATE, SET_INACTIVE_COMMENT);
+            try {
+                eFedora.deleteRelation(edition, URI_PREFIX + edition,
+                        EDITION_TO_NEWSPAPER_RELATION, URI_PREFIX + newspaperDomsID, false, "Deleting relation "+EDITION_TO_NEWSPAPER_RELATION+" to " +
+                                              URI_PREFIX + newspaperDomsID);
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(edition, PUBLISHED_STATE, SETS_ACTIVE_COMMENT);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of kept-alive HTTP connections shared by all threads, with bounded waits for a free connection and for
+ * responses. The number of connections in use, the number of threads waiting for one and the time spent waiting are
+ * published as metrics named "titleRecords.http.&lt;name&gt;".
+ */
+public class HttpConnectionPool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HttpConnectionPool.class);
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * Constructor
+     *
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#HTTP_MAX_CONNECTIONS} and the following
+     * @param registry The registry to publish the pool metrics in
+     */
+    public HttpConnectionPool(Properties properties, MetricRegistry registry) {
+        int maxConnections = getInt(properties, TitleRecordsConfigConstants.HTTP_MAX_CONNECTIONS, 20);
+        int maxConnectionsPerRoute = getInt(properties, TitleRecordsConfigConstants.HTTP_MAX_CONNECTIONS_PER_ROUTE, 10);
+        final long keepAliveMillis = getInt(properties, TitleRecordsConfigConstants.HTTP_KEEP_ALIVE_SECONDS, 60) * 1000L;
+        boolean compression = Boolean.parseBoolean(properties.getProperty(
+                TitleRecordsConfigConstants.HTTP_COMPRESSION, "true"));
+
+        connectionManager = new TimedConnectionManager(
+                registry.timer(MetricRegistry.name("titleRecords", "http", "connectionWait")));
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getInt(properties, TitleRecordsConfigConstants.HTTP_CONNECT_TIMEOUT, 10000))
+                .setSocketTimeout(getInt(properties, TitleRecordsConfigConstants.HTTP_READ_TIMEOUT, 300000))
+                .setConnectionRequestTimeout(getInt(properties,
+                        TitleRecordsConfigConstants.HTTP_CONNECTION_WAIT_TIMEOUT, 60000))
+                .build();
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        // Keep connections alive as long as the server allows, but no longer than configured
+                        long serverKeepAlive = serverStrategy.getKeepAliveDuration(response, context);
+                        return serverKeepAlive < 0 ? keepAliveMillis : Math.min(serverKeepAlive, keepAliveMillis);
+                    }
+                });
+        if (!compression) {
+            builder.disableContentCompression();
+        }
+        httpClient = builder.build();
+        registerGauges(registry);
+        log.info("HTTP connection pool of {} connections, {} per host", maxConnections, maxConnectionsPerRoute);
+    }
+
+    /**
+     * Get the HTTP client that uses the pool
+     *
+     * @return The HTTP client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Publish the state of the pool as gauges
+     *
+     * @param registry The registry
+     */
+    private void registerGauges(MetricRegistry registry) {
+        registry.register(MetricRegistry.name("titleRecords", "http", "leased"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return connectionManager.getTotalStats().getLeased();
+            }
+        });
+        registry.register(MetricRegistry.name("titleRecords", "http", "pending"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return connectionManager.getTotalStats().getPending();
+            }
+        });
+        registry.register(MetricRegistry.name("titleRecords", "http", "available"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return connectionManager.getTotalStats().getAvailable();
+            }
+        });
+        registry.register(MetricRegistry.name("titleRecords", "http", "utilization"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return (double) connectionManager.getTotalStats().getLeased() / connectionManager.getMaxTotal();
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        return Integer.parseInt(properties.getProperty(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Connection manager that times how long each request waits for a free connection
+     */
+    private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+        private final Timer connectionWait;
+
+        private TimedConnectionManager(Timer connectionWait) {
+            this.connectionWait = connectionWait;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    Timer.Context waitTimer = connectionWait.time();
+                    try {
+                        return request.get(timeout, tunit);
+                    } finally {
+                        waitTimer.stop();
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Extracts the newspaper ID and date range from the MODS of a newspaper object ("titelpost") in one forward pass with
+ * StAX, stopping as soon as all three fields are found. Matches the same elements as the XPath expressions
+ * <ul>
+ *     <li>/mods/identifier[@type='title_family']</li>
+ *     <li>/mods/originInfo/dateIssued[@point='start']</li>
+ *     <li>/mods/originInfo/dateIssued[@point='end']</li>
+ * </ul>
+ * where the first matching element wins, and a missing element gives the empty string.
+ *
+ * Instances are immutable and thread safe.
+ */
+public class ModsTitleExtractor {
+    private static final String MODS_NAMESPACE = "http://www.loc.gov/mods/v3";
+    private final XMLInputFactory inputFactory;
+
+    public ModsTitleExtractor() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Extract the newspaper ID and date range from MODS
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object ("titelpost") the MODS belongs to
+     * @param mods The MODS document
+     * @return The newspaper ID and date range
+     * @throws XMLStreamException if the MODS is not well formed
+     */
+    public TitleRange extract(String titleDomsID, String mods) throws XMLStreamException {
+        String avisID = null;
+        String startDate = null;
+        String endDate = null;
+
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(mods));
+        try {
+            // Depth of the current element, the root element is at depth 1
+            int depth = 0;
+            boolean inOriginInfo = false;
+            while (reader.hasNext() && (avisID == null || startDate == null || endDate == null)) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 2) {
+                        inOriginInfo = false;
+                    }
+                    depth--;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                depth++;
+                if (!MODS_NAMESPACE.equals(reader.getNamespaceURI())) {
+                    if (depth == 1) {
+                        // Not MODS at all
+                        break;
+                    }
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if (depth == 1 && !name.equals("mods")) {
+                    break;
+                } else if (depth == 2 && name.equals("identifier") && avisID == null
+                        && "title_family".equals(reader.getAttributeValue(null, "type"))) {
+                    avisID = readText(reader);
+                    depth--;
+                } else if (depth == 2 && name.equals("originInfo")) {
+                    inOriginInfo = true;
+                } else if (depth == 3 && inOriginInfo && name.equals("dateIssued")) {
+                    String point = reader.getAttributeValue(null, "point");
+                    if ("start".equals(point) && startDate == null) {
+                        startDate = readText(reader);
+                        depth--;
+                    } else if ("end".equals(point) && endDate == null) {
+                        endDate = readText(reader);
+                        depth--;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new TitleRange(titleDomsID, avisID == null ? "" : avisID, startDate == null ? "" : startDate,
+                endDate == null ? "" : endDate);
+    }
+
+    /**
+     * Read the text directly inside the current element, leaving the reader at its end tag
+     *
+     * @param reader The reader, positioned at a start tag
+     * @return The text, or the empty string if there is none
+     * @throws XMLStreamException if the element is not well formed
+     */
+    private String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        int nesting = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                nesting++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (nesting == 0) {
+                    break;
+                }
+                nesting--;
+            } else if (nesting == 0 && text == null
+                    && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                // Like text() in XPath, only the first text node counts
+                text = new StringBuilder(reader.getText());
+            }
+        }
+        return text == null ? "" : text.toString();
+    }
+}
@@ -2,21 +2,27 @@ package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
 
 import dk.statsbiblioteket.medieplatform.autonomous.*;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public class NewspaperIndex {
     private static final String FIELD_NAME_EDITION_AVIS_ID = "newspapr_edition_avisID";
     private static final String FIELD_NAME_EDITION_DATE_ISSUED = "newspapr_edition_dateIssued";
     private static final String FIELD_NAME_ITEM_MODEL = "item_model";
     private static final String CONTENT_MODEL_NEWSPAPER = "doms:ContentModel_Edition";
-    private final HttpSolrServer summaSearch;
+    private static final String CONTENT_MODEL_TITLE = "doms:ContentModel_Newspaper";
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    private final SolrServer summaSearch;
     private final ItemFactory<Item> itemFactory;
+    private final int pageSize;
 
     /**
      * Constructor
@@ -24,9 +30,24 @@ public class NewspaperIndex {
      * @param summaSearch Solr server to use for searching
      * @param itemFactory Factory to create new items
      */
-    public NewspaperIndex(HttpSolrServer summaSearch, ItemFactory<Item> itemFactory) {
+    public NewspaperIndex(SolrServer summaSearch, ItemFactory<Item> itemFactory) {
+        this(summaSearch, itemFactory, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param summaSearch Solr server to use for searching
+     * @param itemFactory Factory to create new items
+     * @param pageSize Number of editions to fetch from Solr in each request
+     */
+    public NewspaperIndex(SolrServer summaSearch, ItemFactory<Item> itemFactory, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive, was " + pageSize);
+        }
         this.summaSearch = summaSearch;
         this.itemFactory = itemFactory;
+        this.pageSize = pageSize;
     }
 
     /**
@@ -38,53 +59,249 @@ public class NewspaperIndex {
      * @return A list of the editions that match given newspaper object ("titelpost") and date range
      */
     public List<Item> getEditions(String avisID, String startDate, String endDate) {
-        List<Item> editions;
-        final int rows = Integer.MAX_VALUE;
-        int start = 0;
+        List<Item> editions = new ArrayList<>();
+        Iterator<String> editionIDs = getEditionIDs(avisID, startDate, endDate);
+        while (editionIDs.hasNext()) {
+            editions.add(this.itemFactory.create(editionIDs.next()));
+        }
+        return editions;
+    }
 
-        try {
-            SolrQuery query = new SolrQuery();
-            query.setQuery(constructQueryString(avisID, startDate, endDate));
+    /**
+     * Get the DOMS PIDs of all editions that match given newspaper object ("titelpost") and date range.
+     * The editions are fetched lazily from Solr, one page at a time, using a cursor sorted on the UUID field, so
+     * only one page of results is kept in memory regardless of the number of editions.
+     *
+     * @param avisID The newspaper ID, for example "adresseavisen1759", identifying the newspaper object to be matched
+     * @param startDate The start of the date range to be matched
+     * @param endDate The end of the date range to be matched
+     * @return An iterator over the DOMS PIDs of the matching editions, in UUID order
+     */
+    public Iterator<String> getEditionIDs(String avisID, String startDate, String endDate) {
+        return getEditionIDs(avisID, DateInterval.closed(startDate, endDate));
+    }
+
+    /**
+     * Get the DOMS PIDs of all editions that match given newspaper ID and date interval, fetched lazily in pages like
+     * {@link #getEditionIDs(String, String, String)}
+     *
+     * @param avisID The newspaper ID, for example "adresseavisen1759"
+     * @param interval The date interval to be matched, with open, inclusive or exclusive ends
+     * @return An iterator over the DOMS PIDs of the matching editions, in UUID order
+     */
+    public Iterator<String> getEditionIDs(String avisID, DateInterval interval) {
+        SolrQuery query = new SolrQuery();
+        query.setQuery(constructQueryString(avisID, interval));
+
+        // Fetch size. Ok that it's above 1000, because we've specified fields to fetch and content_text is not one of them
+        query.setRows(pageSize);
 
-            // Fetch size. Ok that it's above 1000, because we've specified fields to fetch and content_text is not one of them
-            query.setRows(rows);
+        // Cursors require a sort on the unique key
+        query.setSort(SBOIEventIndex.UUID, SolrQuery.ORDER.asc);
+        // IMPORTANT! Only use facets if needed.
+        query.set("facet", "false");  // Very important. Must overwrite to false. Facets are very slow and expensive.
 
-            query.setStart(start);
-            // IMPORTANT! Only use facets if needed.
-            query.set("facet", "false");  // Very important. Must overwrite to false. Facets are very slow and expensive.
+        query.setFields(SBOIEventIndex.UUID);
+
+        return new CursorIterator<String>(query) {
+            @Override
+            protected String convert(SolrDocument document) {
+                return document.getFirstValue(SBOIEventIndex.UUID).toString();
+            }
+        };
+    }
 
-            query.setFields(SBOIEventIndex.UUID);
+    /**
+     * Get the DOMS PIDs of all newspaper objects ("titelposter"), fetched lazily in pages like
+     * {@link #getEditionIDs(String, String, String)}
+     *
+     * @return An iterator over the DOMS PIDs of all newspaper objects, in UUID order
+     */
+    public Iterator<String> getAllTitleIDs() {
+        SolrQuery query = createCursorQuery(FIELD_NAME_ITEM_MODEL + ":" + "\"" + CONTENT_MODEL_TITLE + "\"");
+        query.setFields(SBOIEventIndex.UUID);
+
+        return new CursorIterator<String>(query) {
+            @Override
+            protected String convert(SolrDocument document) {
+                return document.getFirstValue(SBOIEventIndex.UUID).toString();
+            }
+        };
+    }
 
-            QueryResponse response = summaSearch.query(query);
-            SolrDocumentList results = response.getResults();
-            editions = new ArrayList<>();
-            for (SolrDocument result : results) {
-                String uuid = result.getFirstValue(SBOIEventIndex.UUID).toString();
+    /**
+     * Get the DOMS PID, newspaper ID and issue date of all editions, fetched lazily in pages like
+     * {@link #getEditionIDs(String, String, String)}
+     *
+     * @return An iterator over all editions, in UUID order. Missing newspaper IDs and dates are given as the empty
+     * string
+     */
+    public Iterator<EditionRecord> getAllEditions() {
+        SolrQuery query = createCursorQuery(FIELD_NAME_ITEM_MODEL + ":" + "\"" + CONTENT_MODEL_NEWSPAPER + "\"");
+        query.setFields(SBOIEventIndex.UUID, FIELD_NAME_EDITION_AVIS_ID, FIELD_NAME_EDITION_DATE_ISSUED);
 
-                editions.add(this.itemFactory.create(uuid));
+        return new CursorIterator<EditionRecord>(query) {
+            @Override
+            protected EditionRecord convert(SolrDocument document) {
+                return new EditionRecord(document.getFirstValue(SBOIEventIndex.UUID).toString(),
+                        getString(document, FIELD_NAME_EDITION_AVIS_ID),
+                        getString(document, FIELD_NAME_EDITION_DATE_ISSUED));
             }
+        };
+    }
+
+    /**
+     * Get the newspaper ID and issue date of one edition
+     *
+     * @param editionID The DOMS PID of the edition
+     * @return The edition, or null if it is not an edition in the index. Missing newspaper IDs and dates are given as
+     * the empty string
+     */
+    public EditionRecord getEdition(String editionID) {
+        SolrQuery query = new SolrQuery();
+        query.setQuery(SBOIEventIndex.UUID + ":\"" + editionID + "\""
+                + " AND "
+                + FIELD_NAME_ITEM_MODEL + ":" + "\"" + CONTENT_MODEL_NEWSPAPER + "\"");
+        query.setRows(1);
+        query.set("facet", "false");
+        query.setFields(SBOIEventIndex.UUID, FIELD_NAME_EDITION_AVIS_ID, FIELD_NAME_EDITION_DATE_ISSUED);
+        SolrDocumentList results;
+        try {
+            results = summaSearch.query(query).getResults();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        if (results.isEmpty()) {
+            return null;
+        }
+        SolrDocument document = results.get(0);
+        return new EditionRecord(document.getFirstValue(SBOIEventIndex.UUID).toString(),
+                getString(document, FIELD_NAME_EDITION_AVIS_ID),
+                getString(document, FIELD_NAME_EDITION_DATE_ISSUED));
+    }
 
-        return editions;
+    /**
+     * Count the editions that match given newspaper object ("titelpost") and date range, without fetching them
+     *
+     * @param avisID The newspaper ID, for example "adresseavisen1759", identifying the newspaper object to be matched
+     * @param startDate The start of the date range to be matched
+     * @param endDate The end of the date range to be matched
+     * @return The number of matching editions
+     */
+    public long countEditions(String avisID, String startDate, String endDate) {
+        SolrQuery query = new SolrQuery();
+        query.setQuery(constructQueryString(avisID, DateInterval.closed(startDate, endDate)));
+        query.setRows(0);
+        query.set("facet", "false");
+        try {
+            return summaSearch.query(query).getResults().getNumFound();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Create a query for paging through all results with a cursor
+     *
+     * @param queryString The query string
+     * @return The query, without fields to return
+     */
+    private SolrQuery createCursorQuery(String queryString) {
+        SolrQuery query = new SolrQuery();
+        query.setQuery(queryString);
+        query.setRows(pageSize);
+        query.setSort(SBOIEventIndex.UUID, SolrQuery.ORDER.asc);
+        query.set("facet", "false");
+        return query;
+    }
+
+    /**
+     * Get the first value of a field as a string
+     *
+     * @param document The Solr document
+     * @param field The field name
+     * @return The first value of the field, or the empty string if the field has no value
+     */
+    private static String getString(SolrDocument document, String field) {
+        Object value = document.getFirstValue(field);
+        return value == null ? "" : value.toString();
     }
 
     /**
      * Construct query string for Solr searching
      *
      * @param avisID The newspaper ID, for example "adresseavisen1759", identifying the newspaper object to be matched
-     * @param startDate The start of the date range to be matched. Use the empty string for any date. Must not be null.
-     * @param endDate The end of the date range to be matched. Use the empty string for any date. Must not be null.
+     * @param interval The date interval to be matched
      * @return The query string
      */
-    private String constructQueryString(String avisID, String startDate, String endDate) {
+    private String constructQueryString(String avisID, DateInterval interval) {
         return FIELD_NAME_EDITION_AVIS_ID + ":" + avisID
                 + " AND "
-                + FIELD_NAME_EDITION_DATE_ISSUED + ":" + "["
-                + (startDate.trim().isEmpty() ? "*": startDate) + " TO "
-                + (endDate.trim().isEmpty() ? "*":endDate) + "]"
+                + FIELD_NAME_EDITION_DATE_ISSUED + ":" + interval.toQuery()
                 + " AND "
                 + FIELD_NAME_ITEM_MODEL + ":" + "\"" + CONTENT_MODEL_NEWSPAPER + "\"";
     }
+
+    /**
+     * Iterator over the documents of a query result, fetching the next page from Solr with a cursor mark only when the
+     * current page is exhausted.
+     *
+     * @param <T> The type each document is converted to
+     */
+    private abstract class CursorIterator<T> implements Iterator<T> {
+        private final SolrQuery query;
+        private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        private Iterator<SolrDocument> page;
+        private boolean done = false;
+
+        private CursorIterator(SolrQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((page == null || !page.hasNext()) && !done) {
+                fetchNextPage();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return convert(page.next());
+        }
+
+        /**
+         * Convert a document of the query result
+         *
+         * @param document The document
+         * @return The converted document
+         */
+        protected abstract T convert(SolrDocument document);
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void fetchNextPage() {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response;
+            try {
+                response = summaSearch.query(query);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            page = response.getResults().iterator();
+            String nextCursorMark = response.getNextCursorMark();
+            // Solr signals the end of the results by returning the cursor mark it was given
+            if (nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+                done = true;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Slf4jReporter;
+import com.codahale.metrics.Timer;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for the phases of reconciling the relations of a newspaper object ("titelpost"), and the
+ * reporters that publish them. All metrics are named "titleRecords.&lt;kind&gt;.&lt;name&gt;".
+ */
+public class ReconciliationMetrics implements Closeable {
+    private static final String PREFIX = "titleRecords";
+
+    /**
+     * The timed phases of reconciling a newspaper object
+     */
+    public enum Phase {
+        /** All work on one newspaper object */
+        TITLE,
+        /** Reading the MODS of the newspaper object */
+        MODS_FETCH,
+        /** Extracting the newspaper ID and date range from the MODS */
+        MODS_PARSE,
+        /** Counting the wanted editions in SBOI */
+        EDITION_COUNT,
+        /** Hashing the PIDs of the wanted editions in SBOI */
+        EDITION_HASH,
+        /** Reading the editions that have a relation to the newspaper object */
+        INVERSE_RELATIONS,
+        /** Paging through the wanted editions in SBOI and comparing them to those that have the relation */
+        EDITION_DIFF,
+        /** Looking up the state of one edition */
+        STATE_LOOKUP,
+        /** Changing the state of one edition */
+        STATE_CHANGE,
+        /** Adding the relation from one edition */
+        RELATION_ADD,
+        /** Removing the relation from one edition */
+        RELATION_REMOVE
+    }
+
+    /**
+     * The counted events of reconciling a newspaper object
+     */
+    public enum Event {
+        /** A newspaper object was skipped because it was unchanged */
+        TITLE_SKIPPED,
+        /** Interrupted work on a newspaper object was resumed */
+        TITLE_RESUMED,
+        /** A relation was added */
+        RELATION_ADDED,
+        /** A relation was removed */
+        RELATION_REMOVED,
+        /** Adding or removing a relation failed */
+        RELATION_FAILED,
+        /** The state of an edition was changed */
+        STATE_CHANGED
+    }
+
+    private final MetricRegistry registry;
+    private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+    private final Map<Event, Meter> meters = new EnumMap<>(Event.class);
+    private final Histogram editionsWanted;
+    private final Histogram editionsExisting;
+    private final List<ScheduledReporter> scheduledReporters = new ArrayList<>();
+    private JmxReporter jmxReporter;
+
+    /**
+     * Constructor
+     *
+     * @param registry The registry to register the metrics in
+     */
+    public ReconciliationMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        for (Phase phase : Phase.values()) {
+            timers.put(phase, registry.timer(MetricRegistry.name(PREFIX, "phase", toName(phase))));
+        }
+        for (Event event : Event.values()) {
+            meters.put(event, registry.meter(MetricRegistry.name(PREFIX, "event", toName(event))));
+        }
+        editionsWanted = registry.histogram(MetricRegistry.name(PREFIX, "title", "editionsWanted"));
+        editionsExisting = registry.histogram(MetricRegistry.name(PREFIX, "title", "editionsExisting"));
+    }
+
+    /**
+     * Start timing a phase
+     *
+     * @param phase The phase
+     * @return The timer context, to be stopped when the phase ends
+     */
+    public Timer.Context time(Phase phase) {
+        return timers.get(phase).time();
+    }
+
+    /**
+     * Count occurrences of an event
+     *
+     * @param event The event
+     * @param count The number of occurrences
+     */
+    public void mark(Event event, long count) {
+        meters.get(event).mark(count);
+    }
+
+    /**
+     * Record the number of editions of a newspaper object
+     *
+     * @param wanted The number of editions that should have the relation
+     * @param existing The number of editions that had the relation
+     */
+    public void updateEditions(long wanted, long existing) {
+        editionsWanted.update(wanted);
+        editionsExisting.update(existing);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Start the reporters configured in the properties
+     *
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#METRICS_JMX},
+     *                   {@link TitleRecordsConfigConstants#METRICS_LOG_INTERVAL} and
+     *                   {@link TitleRecordsConfigConstants#METRICS_CSV_DIRECTORY}
+     */
+    public void startReporters(Properties properties) {
+        if (Boolean.parseBoolean(properties.getProperty(TitleRecordsConfigConstants.METRICS_JMX, "false"))) {
+            jmxReporter = JmxReporter.forRegistry(registry).inDomain(PREFIX).build();
+            jmxReporter.start();
+        }
+        long logInterval = Long.parseLong(properties.getProperty(TitleRecordsConfigConstants.METRICS_LOG_INTERVAL,
+                "0"));
+        if (logInterval > 0) {
+            ScheduledReporter logReporter = Slf4jReporter.forRegistry(registry)
+                    .outputTo(LoggerFactory.getLogger(ReconciliationMetrics.class))
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            logReporter.start(logInterval, TimeUnit.SECONDS);
+            scheduledReporters.add(logReporter);
+        }
+        String csvDirectory = properties.getProperty(TitleRecordsConfigConstants.METRICS_CSV_DIRECTORY, "");
+        if (!csvDirectory.trim().isEmpty()) {
+            File directory = new File(csvDirectory);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new RuntimeException("Could not create directory " + directory);
+            }
+            ScheduledReporter csvReporter = CsvReporter.forRegistry(registry)
+                    .formatFor(Locale.US)
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build(directory);
+            csvReporter.start(Long.parseLong(properties.getProperty(
+                    TitleRecordsConfigConstants.METRICS_CSV_INTERVAL, "60")), TimeUnit.SECONDS);
+            scheduledReporters.add(csvReporter);
+        }
+    }
+
+    /**
+     * Report once more and stop the reporters
+     */
+    @Override
+    public void close() {
+        for (ScheduledReporter reporter : scheduledReporters) {
+            reporter.report();
+            reporter.stop();
+        }
+        scheduledReporters.clear();
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+    }
+
+    /**
+     * Turn an enum constant like MODS_FETCH into a metric name like modsFetch
+     */
+    private static String toName(Enum<?> constant) {
+        StringBuilder name = new StringBuilder();
+        for (String word : constant.name().toLowerCase(Locale.ROOT).split("_")) {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return name.toString();
+    }
+}
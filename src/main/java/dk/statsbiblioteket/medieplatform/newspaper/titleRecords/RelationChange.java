@@ -0,0 +1,102 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One planned change of a relation from an edition to a newspaper object ("titelpost"), as stored in a change plan
+ * file. A change is stored as one tab separated line: timestamp, operation, edition PID and newspaper object PID.
+ */
+public class RelationChange {
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Whether the relation is added or removed
+     */
+    public enum Operation {
+        ADD, REMOVE
+    }
+
+    private final long timestamp;
+    private final Operation operation;
+    private final String editionDomsID;
+    private final String titleDomsID;
+
+    /**
+     * Constructor
+     *
+     * @param timestamp When the change was planned, in milliseconds since the epoch
+     * @param operation Whether the relation is added or removed
+     * @param editionDomsID The DOMS PID of the edition
+     * @param titleDomsID The DOMS PID of the newspaper object
+     */
+    public RelationChange(long timestamp, Operation operation, String editionDomsID, String titleDomsID) {
+        this.timestamp = timestamp;
+        this.operation = operation;
+        this.editionDomsID = editionDomsID;
+        this.titleDomsID = titleDomsID;
+    }
+
+    /**
+     * Get the relation changes that make up a change of an edition
+     *
+     * @param change The change of an edition
+     * @param timestamp When the change was planned, in milliseconds since the epoch
+     * @return One relation change for each relation added or removed
+     */
+    public static List<RelationChange> of(EditionChange change, long timestamp) {
+        List<RelationChange> changes = new ArrayList<>();
+        for (String title : change.getTitlesToAdd()) {
+            changes.add(new RelationChange(timestamp, Operation.ADD, change.getEditionDomsID(), title));
+        }
+        for (String title : change.getTitlesToRemove()) {
+            changes.add(new RelationChange(timestamp, Operation.REMOVE, change.getEditionDomsID(), title));
+        }
+        return changes;
+    }
+
+    /**
+     * Parse a line of a change plan file
+     *
+     * @param line The line
+     * @return The change
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static RelationChange parse(String line) {
+        String[] fields = line.split(SEPARATOR, -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Malformed change '" + line + "'");
+        }
+        return new RelationChange(Long.parseLong(fields[0]), Operation.valueOf(fields[1]), fields[2], fields[3]);
+    }
+
+    /**
+     * Format the change as a line of a change plan file
+     *
+     * @return The line, without line terminator
+     */
+    public String toLine() {
+        return timestamp + SEPARATOR + operation + SEPARATOR + editionDomsID + SEPARATOR + titleDomsID;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getEditionDomsID() {
+        return editionDomsID;
+    }
+
+    public String getTitleDomsID() {
+        return titleDomsID;
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+}
@@ -0,0 +1,33 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+/**
+ * When to ask DOMS for the current relations of an edition before adding or removing a relation to a newspaper
+ * object ("titelpost").
+ */
+public enum RelationCheck {
+    /**
+     * Look up the relations of every edition before changing it
+     */
+    ALWAYS,
+    /**
+     * Trust the relations found with the inverse relation lookup, and change the editions without looking them up
+     */
+    NEVER,
+    /**
+     * Trust the relations found with the inverse relation lookup, but if a change fails, look up the relations of the
+     * edition, and accept the failure if the edition already has the wanted relations
+     */
+    ON_CONFLICT;
+
+    /**
+     * Parse the configured value, ignoring case and allowing "onConflict" style values
+     *
+     * @param value The configured value
+     * @return The matching RelationCheck
+     * @throws IllegalArgumentException if the value does not match any RelationCheck
+     */
+    public static RelationCheck parse(String value) {
+        String normalized = value.trim().replaceAll("([a-z])([A-Z])", "$1_$2").replace('-', '_');
+        return valueOf(normalized.toUpperCase());
+    }
+}
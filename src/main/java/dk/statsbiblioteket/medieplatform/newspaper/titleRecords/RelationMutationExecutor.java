@@ -0,0 +1,206 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a mutation on a number of targets, typically editions, with at most a given number of mutations running at the
+ * same time. A failing mutation does not stop the others; failures are collected and returned to the caller.
+ *
+ * The executor owns a thread pool, which is shut down by {@link #close()}. The component that creates an executor
+ * closes it when it is done with it.
+ */
+public class RelationMutationExecutor implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(RelationMutationExecutor.class);
+    private static final AtomicInteger executorCount = new AtomicInteger();
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     *
+     * @param parallelism The maximum number of mutations to run at the same time. With a parallelism of 1, mutations
+     *                    are run one at a time in the calling thread.
+     */
+    public RelationMutationExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, was " + parallelism);
+        }
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            executor = Executors.newFixedThreadPool(parallelism, new MutationThreadFactory());
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Apply the mutation to all targets. At most {@code parallelism} mutations are submitted at a time, so the number
+     * of targets does not affect the number of pending tasks.
+     *
+     * @param targets The targets to apply the mutation to
+     * @param mutation The mutation to apply
+     * @param <T> The type of the targets
+     * @return The failed mutations, empty if all succeeded
+     * @throws InterruptedException if interrupted while waiting for mutations to complete. The mutations still
+     * running are cancelled, and those not yet submitted are not run.
+     */
+    public <T> List<Failure<T>> execute(Collection<T> targets, Mutation<T> mutation) throws InterruptedException {
+        List<Failure<T>> failures = new ArrayList<>();
+        if (executor == null) {
+            for (T target : targets) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted before applying the mutation to " + target);
+                }
+                Failure<T> failure = apply(mutation, target);
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+            return failures;
+        }
+
+        CompletionService<Failure<T>> completionService = new ExecutorCompletionService<>(executor);
+        Iterator<T> remaining = targets.iterator();
+        Set<Future<Failure<T>>> running = new HashSet<>();
+        try {
+            while (remaining.hasNext() || !running.isEmpty()) {
+                while (running.size() < parallelism && remaining.hasNext()) {
+                    running.add(completionService.submit(new MutationTask<>(mutation, remaining.next())));
+                }
+                Future<Failure<T>> done = completionService.take();
+                running.remove(done);
+                Failure<T> failure;
+                try {
+                    failure = done.get();
+                } catch (ExecutionException e) {
+                    // Only errors get here, exceptions are returned as failures
+                    throw new RuntimeException("Mutation failed unexpectedly", e.getCause());
+                }
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+        } finally {
+            // Only left running when interrupted or on an error, where no one waits for them any more
+            for (Future<Failure<T>> future : running) {
+                future.cancel(true);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Shut down the thread pool. Mutations already running are allowed to finish.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Apply a mutation to a target, catching any exception
+     *
+     * @param mutation The mutation
+     * @param target The target
+     * @param <T> The type of the target
+     * @return The failure, or null if the mutation succeeded
+     */
+    private static <T> Failure<T> apply(Mutation<T> mutation, T target) {
+        try {
+            mutation.apply(target);
+            return null;
+        } catch (Exception e) {
+            log.warn("Mutation of {} failed", target, e);
+            return new Failure<>(target, e);
+        }
+    }
+
+    /**
+     * A change to a single target
+     *
+     * @param <T> The type of the target
+     */
+    public interface Mutation<T> {
+        /**
+         * Apply the change to the target
+         *
+         * @param target The target
+         * @throws Exception if the change failed
+         */
+        void apply(T target) throws Exception;
+    }
+
+    /**
+     * A failed mutation
+     *
+     * @param <T> The type of the target
+     */
+    public static class Failure<T> {
+        private final T target;
+        private final Exception cause;
+
+        public Failure(T target, Exception cause) {
+            this.target = target;
+            this.cause = cause;
+        }
+
+        public T getTarget() {
+            return target;
+        }
+
+        public Exception getCause() {
+            return cause;
+        }
+    }
+
+    private static class MutationTask<T> implements Callable<Failure<T>> {
+        private final Mutation<T> mutation;
+        private final T target;
+
+        private MutationTask(Mutation<T> mutation, T target) {
+            this.mutation = mutation;
+            this.target = target;
+        }
+
+        @Override
+        public Failure<T> call() {
+            return apply(mutation, target);
+        }
+    }
+
+    /**
+     * Creates daemon threads, so an idle executor does not keep the JVM alive
+     */
+    private static class MutationThreadFactory implements ThreadFactory {
+        private final int executorNumber = executorCount.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "relation-mutation-" + executorNumber + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+
+import java.util.Collection;
+
+/**
+ * Writes changes to the relations from an edition to newspaper objects ("titelpost") to DOMS. Published editions are
+ * unpublished and republished as needed.
+ */
+public interface RelationWriter {
+
+    /**
+     * Add and remove relations from given edition to newspaper objects ("titelpost")
+     *
+     * @param editionDomsID The DOMS PID of the edition at the "source" end of the relations
+     * @param newspapersToAdd The DOMS PIDs of newspaper objects the edition should get a relation to
+     * @param newspapersToRemove The DOMS PIDs of newspaper objects the edition should no longer have a relation to
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    void updateRelations(String editionDomsID, Collection<String> newspapersToAdd,
+                         Collection<String> newspapersToRemove)
+            throws BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException;
+}
@@ -0,0 +1,160 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.util.xml.DOM;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.INACTIVE_STATE;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.PUBLISHED_STATE;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT;
+import static dk.statsbiblioteket.medieplatform.newspaper.titleRecords.RunnableTitleRecordRelationsMaintainer.URI_PREFIX;
+
+/**
+ * Writes relation changes by reading the RELS-EXT datastream of the edition, computing the final set of relations to
+ * newspaper objects ("titelpost") and writing the datastream back once. This gives one Fedora write, and one new
+ * object version, per edition no matter how many relations change.
+ *
+ * Fedora cannot make the write conditional on the datastream being unchanged since the read, so changes made to the
+ * RELS-EXT of an edition by others between the read and the write are overwritten. Only use this writer when nothing
+ * else changes RELS-EXT, see {@link TitleRecordsConfigConstants#RELATION_WRITER_EXCLUSIVE}. Writers in the same JVM do
+ * not overwrite each other, as the read and write of an edition are done under a lock on the edition.
+ */
+public class RelsExtRelationWriter implements RelationWriter {
+    private static final String RELS_EXT = "RELS-EXT";
+    private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RELATION_NAMESPACE
+            = EDITION_TO_NEWSPAPER_RELATION.substring(0, EDITION_TO_NEWSPAPER_RELATION.indexOf('#') + 1);
+    private static final String RELATION_NAME
+            = EDITION_TO_NEWSPAPER_RELATION.substring(EDITION_TO_NEWSPAPER_RELATION.indexOf('#') + 1);
+    /**
+     * Locks shared by all writers in the JVM, so an edition reached through two newspaper objects, or by both the
+     * newspaper object and the edition mode, is not read and written by two threads at once
+     */
+    private static final Object[] EDITION_LOCKS = new Object[256];
+    static {
+        for (int i = 0; i < EDITION_LOCKS.length; i++) {
+            EDITION_LOCKS[i] = new Object();
+        }
+    }
+    private final EnhancedFedora eFedora;
+
+    /**
+     * Constructor
+     *
+     * @param eFedora The Fedora to read from and write to
+     */
+    public RelsExtRelationWriter(EnhancedFedora eFedora) {
+        this.eFedora = eFedora;
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, Collection<String> newspapersToAdd,
+                                Collection<String> newspapersToRemove)
+            throws BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        synchronized (EDITION_LOCKS[(editionDomsID.hashCode() & Integer.MAX_VALUE) % EDITION_LOCKS.length]) {
+            rewriteRelations(editionDomsID, newspapersToAdd, newspapersToRemove);
+        }
+    }
+
+    /**
+     * Read the RELS-EXT of the edition, change the relations and write it back if changed
+     *
+     * @param editionDomsID The DOMS PID of the edition
+     * @param newspapersToAdd The DOMS PIDs of newspaper objects to add relations to
+     * @param newspapersToRemove The DOMS PIDs of newspaper objects to remove relations to
+     * @throws BackendMethodFailedException if RELS-EXT could not be read, parsed or written
+     * @throws BackendInvalidResourceException if the edition does not exist
+     * @throws BackendInvalidCredsException if the edition could not be changed
+     */
+    private void rewriteRelations(String editionDomsID, Collection<String> newspapersToAdd,
+                                  Collection<String> newspapersToRemove)
+            throws BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        Document relsExt = DOM.stringToDOM(eFedora.getXMLDatastreamContents(editionDomsID, RELS_EXT), true);
+        if (relsExt == null) {
+            throw new BackendMethodFailedException("Could not parse " + RELS_EXT + " of " + editionDomsID);
+        }
+        if (!applyChanges(relsExt, newspapersToAdd, newspapersToRemove)) {
+            // The edition already has exactly the wanted relations
+            return;
+        }
+        String comment = "Updating relations " + EDITION_TO_NEWSPAPER_RELATION + ", adding " + newspapersToAdd
+                + ", removing " + newspapersToRemove;
+        String contents = DOM.domToString(relsExt);
+        try {
+            eFedora.modifyDatastreamByValue(editionDomsID, RELS_EXT, contents, null, comment);
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before writing
+            eFedora.modifyObjectState(editionDomsID, INACTIVE_STATE, SET_INACTIVE_COMMENT);
+            try {
+                eFedora.modifyDatastreamByValue(editionDomsID, RELS_EXT, contents, null, comment);
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(editionDomsID, PUBLISHED_STATE, SETS_ACTIVE_COMMENT);
+            }
+        }
+    }
+
+    /**
+     * Change the relations to newspaper objects ("titelpost") in the RELS-EXT document
+     *
+     * @param relsExt The RELS-EXT document, changed in place
+     * @param newspapersToAdd The DOMS PIDs of newspaper objects to add relations to
+     * @param newspapersToRemove The DOMS PIDs of newspaper objects to remove relations to
+     * @return true if the document was changed
+     * @throws BackendMethodFailedException if the document has no rdf:Description element
+     */
+    boolean applyChanges(Document relsExt, Collection<String> newspapersToAdd, Collection<String> newspapersToRemove)
+            throws BackendMethodFailedException {
+        NodeList descriptions = relsExt.getElementsByTagNameNS(RDF_NAMESPACE, "Description");
+        if (descriptions.getLength() == 0) {
+            throw new BackendMethodFailedException(RELS_EXT + " has no rdf:Description");
+        }
+        Element description = (Element) descriptions.item(0);
+
+        Set<String> missing = new LinkedHashSet<>();
+        for (String newspaperDomsID : newspapersToAdd) {
+            missing.add(URI_PREFIX + newspaperDomsID);
+        }
+        Set<String> unwanted = new LinkedHashSet<>();
+        for (String newspaperDomsID : newspapersToRemove) {
+            unwanted.add(URI_PREFIX + newspaperDomsID);
+        }
+
+        boolean changed = false;
+        // Copy the live node list, as it changes when elements are removed
+        NodeList relationNodes = description.getElementsByTagNameNS(RELATION_NAMESPACE, RELATION_NAME);
+        List<Element> relations = new ArrayList<>();
+        for (int i = 0; i < relationNodes.getLength(); i++) {
+            relations.add((Element) relationNodes.item(i));
+        }
+        for (Element relation : relations) {
+            String target = relation.getAttributeNS(RDF_NAMESPACE, "resource");
+            if (unwanted.contains(target)) {
+                relation.getParentNode().removeChild(relation);
+                changed = true;
+            } else {
+                missing.remove(target);
+            }
+        }
+        for (String target : missing) {
+            Element relation = relsExt.createElementNS(RELATION_NAMESPACE, RELATION_NAME);
+            relation.setAttributeNS(RDF_NAMESPACE, "rdf:resource", target);
+            description.appendChild(relation);
+            changed = true;
+        }
+        return changed;
+    }
+}
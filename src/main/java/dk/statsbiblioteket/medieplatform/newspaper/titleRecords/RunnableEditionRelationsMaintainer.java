@@ -0,0 +1,112 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.medieplatform.autonomous.AbstractRunnableComponent;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Ensures that the relations from a new or changed edition to newspaper objects ("titelposter") are exactly those
+ * there should be. The newspaper objects of the edition are found in a {@link TitleRangeCache}, so only the relations
+ * of the edition itself are read from DOMS, and no newspaper object is diffed in full.
+ *
+ * A relation is only removed if the cache holds the newspaper object it goes to, so the cache knows that the edition
+ * is outside the newspaper object. Relations to newspaper objects the cache does not hold are left for the newspaper
+ * objects themselves to reconcile.
+ *
+ * The fingerprints of the newspaper objects whose relations are changed are removed, so they are not skipped the
+ * next time they are reconciled.
+ */
+public class RunnableEditionRelationsMaintainer extends AbstractRunnableComponent {
+    private static final Logger log = LoggerFactory.getLogger(RunnableEditionRelationsMaintainer.class);
+    static final String EDITION_RELATIONS_GENERATED = "Edition_Title_Relations_Generated";
+    private final EnhancedFedora eFedora;
+    private final NewspaperIndex newspaperIndex;
+    private final TitleRangeCache titleRangeCache;
+    private final RelationWriter relationWriter;
+    private final ReconciliationMetrics metrics;
+    private final TitleFingerprintStore fingerprintStore;
+
+    /**
+     * Constructor
+     *
+     * @param properties The properties
+     * @param eFedora The Fedora to read and change relations in
+     * @param newspaperIndex The index to read the newspaper ID and issue date of editions from
+     * @param titleRangeCache The date ranges of the newspaper objects
+     * @param metrics The metrics to count changed relations in
+     * @param fingerprintStore The fingerprints of reconciled newspaper objects, or null if none are kept
+     */
+    public RunnableEditionRelationsMaintainer(Properties properties, EnhancedFedora eFedora,
+                                              NewspaperIndex newspaperIndex, TitleRangeCache titleRangeCache,
+                                              ReconciliationMetrics metrics, TitleFingerprintStore fingerprintStore) {
+        super(properties);
+        this.eFedora = eFedora;
+        this.newspaperIndex = newspaperIndex;
+        this.titleRangeCache = titleRangeCache;
+        this.relationWriter = RunnableTitleRecordRelationsMaintainer.createRelationWriter(properties, eFedora);
+        this.metrics = metrics;
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    @Override
+    public String getEventID() {
+        return EDITION_RELATIONS_GENERATED;
+    }
+
+    @Override
+    public void doWorkOnItem(Item item, ResultCollector resultCollector) throws Exception {
+        // We assume that the received item is an edition
+        String editionID = item.getDomsID();
+        EditionRecord edition = newspaperIndex.getEdition(editionID);
+        if (edition == null) {
+            resultCollector.addFailure(item, "exception", getClass().getSimpleName(),
+                    "Edition " + editionID + " was not found in the index");
+            return;
+        }
+
+        Set<String> wanted = new HashSet<>();
+        for (TitleRange title : titleRangeCache.findTitles(edition.getAvisID(), edition.getDateIssued())) {
+            wanted.add(title.getTitleDomsID());
+        }
+        Set<String> toRemove = new HashSet<>();
+        int unknown = 0;
+        List<FedoraRelation> relations = eFedora.getNamedRelations(editionID,
+                RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION, null);
+        for (FedoraRelation relation : relations) {
+            String titleID = relation.getObject().replace(RunnableTitleRecordRelationsMaintainer.URI_PREFIX, "");
+            if (wanted.remove(titleID)) {
+                continue;
+            }
+            if (titleRangeCache.contains(titleID)) {
+                toRemove.add(titleID);
+            } else {
+                // The cache does not know this newspaper object, so it cannot tell that the relation is unwanted
+                log.info("Keeping relation from {} to {}, which is not in the cache", editionID, titleID);
+                unknown++;
+            }
+        }
+        // What is left of the wanted newspaper objects has no relation yet
+        if (!wanted.isEmpty() || !toRemove.isEmpty()) {
+            if (fingerprintStore != null) {
+                // Removed before the change, so a failed change cannot leave a fingerprint that no longer holds
+                Set<String> changedTitles = new HashSet<>(wanted);
+                changedTitles.addAll(toRemove);
+                fingerprintStore.removeAll(changedTitles);
+            }
+            relationWriter.updateRelations(editionID, wanted, toRemove);
+            metrics.mark(ReconciliationMetrics.Event.RELATION_ADDED, wanted.size());
+            metrics.mark(ReconciliationMetrics.Event.RELATION_REMOVED, toRemove.size());
+        }
+        log.info("Summary for {}: {} relations added, {} removed, {} to unknown newspaper objects kept",
+                new Object[]{item.getFullID(), wanted.size(), toRemove.size(), unknown});
+    }
+}
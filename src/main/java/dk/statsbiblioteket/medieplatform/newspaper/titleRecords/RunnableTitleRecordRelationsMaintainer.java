@@ -6,41 +6,185 @@ import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
 import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
 import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
 import dk.statsbiblioteket.medieplatform.autonomous.*;
-import dk.statsbiblioteket.util.xml.DOM;
-import dk.statsbiblioteket.util.xml.XPathSelector;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Ensures that the relations from editions to newspaper object "titelpost" are exactly those there should be, adding or removing
- * any that might be needed.
+ * any that might be needed. Close the maintainer when done with it, to stop the threads changing relations.
  */
-public class RunnableTitleRecordRelationsMaintainer extends AbstractRunnableComponent {
+public class RunnableTitleRecordRelationsMaintainer extends AbstractRunnableComponent implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(RunnableTitleRecordRelationsMaintainer.class);
-    private static final String URI_PREFIX = "info:fedora/";
+    static final String URI_PREFIX = "info:fedora/";
     protected static final String SET_INACTIVE_COMMENT
             = "Title Record Maintainer sets this object inactive to update relations";
     protected static final String SETS_ACTIVE_COMMENT
             = "Title Record Maintainer sets this object active after updating relations";
+    static final String PUBLISHED_STATE = "A";
+    static final String INACTIVE_STATE = "I";
     private final EnhancedFedora eFedora;
-    private static final String EDITION_TO_NEWSPAPER_RELATION
+    static final String EDITION_TO_NEWSPAPER_RELATION
             = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
     private static final String TITLE_RELATIONS_GENERATED = "Title_Relations_Generated";
     private ItemFactory<Item> itemFactory;
     private NewspaperIndex newspaperIndex;
+    private final RelationWriter relationWriter;
+    private final RelationMutationExecutor mutationExecutor;
+    private final boolean batchStateChanges;
+    private final int stateChangeChunkSize;
+    private final TitleFingerprintStore fingerprintStore;
+    private final ModsTitleExtractor modsTitleExtractor = new ModsTitleExtractor();
+    private final ChangePlanWriter planWriter;
+    private final File journalDirectory;
+    private final ReconciliationMetrics metrics;
+    private final boolean rangeDeltaQueries;
+    private final TitleRangeCache titleRangeCache;
+    private final boolean verifyEditionHash;
+    private volatile boolean stopping;
 
     public RunnableTitleRecordRelationsMaintainer(Properties properties, EnhancedFedora eFedora, ItemFactory<Item> itemFactory,
                                                   NewspaperIndex newspaperIndex) {
+        this(properties, eFedora, itemFactory, newspaperIndex, new ReconciliationMetrics(new MetricRegistry()));
+    }
+
+    public RunnableTitleRecordRelationsMaintainer(Properties properties, EnhancedFedora eFedora, ItemFactory<Item> itemFactory,
+                                                  NewspaperIndex newspaperIndex, ReconciliationMetrics metrics) {
+        this(properties, eFedora, itemFactory, newspaperIndex, metrics, null);
+    }
+
+    public RunnableTitleRecordRelationsMaintainer(Properties properties, EnhancedFedora eFedora, ItemFactory<Item> itemFactory,
+                                                  NewspaperIndex newspaperIndex, ReconciliationMetrics metrics,
+                                                  TitleRangeCache titleRangeCache) {
+        this(properties, eFedora, itemFactory, newspaperIndex, metrics, titleRangeCache,
+                createFingerprintStore(properties));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param properties The properties
+     * @param eFedora The Fedora to read and change relations in
+     * @param itemFactory Factory to create new items
+     * @param newspaperIndex The index to read editions from
+     * @param metrics The metrics to time and count the work in
+     * @param titleRangeCache The cache to update with the newspaper ID and date range of each newspaper object worked
+     *                        on, or null if there is none
+     * @param fingerprintStore The fingerprints of reconciled newspaper objects, used to skip unchanged ones, or null
+     *                         to never skip
+     */
+    public RunnableTitleRecordRelationsMaintainer(Properties properties, EnhancedFedora eFedora, ItemFactory<Item> itemFactory,
+                                                  NewspaperIndex newspaperIndex, ReconciliationMetrics metrics,
+                                                  TitleRangeCache titleRangeCache,
+                                                  TitleFingerprintStore fingerprintStore) {
         super(properties);
+        this.titleRangeCache = titleRangeCache;
+        this.metrics = metrics;
         this.eFedora = eFedora;
         this.itemFactory = itemFactory;
         this.newspaperIndex = newspaperIndex;
+        this.relationWriter = createRelationWriter(properties, eFedora);
+        this.mutationExecutor = new RelationMutationExecutor(Integer.parseInt(properties.getProperty(
+                TitleRecordsConfigConstants.MUTATION_PARALLELISM, "1")));
+        this.batchStateChanges = Boolean.parseBoolean(properties.getProperty(
+                TitleRecordsConfigConstants.BATCH_STATE_CHANGES, "false"));
+        this.stateChangeChunkSize = Integer.parseInt(properties.getProperty(
+                TitleRecordsConfigConstants.BATCH_STATE_CHANGES_CHUNK_SIZE, "100"));
+        this.fingerprintStore = fingerprintStore;
+        this.planWriter = createPlanWriter(properties);
+        String journalDirectory = properties.getProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, "");
+        this.journalDirectory = journalDirectory.trim().isEmpty() ? null : new File(journalDirectory);
+        if (batchStateChanges && this.journalDirectory == null) {
+            throw new IllegalArgumentException(TitleRecordsConfigConstants.BATCH_STATE_CHANGES + " needs "
+                                               + TitleRecordsConfigConstants.JOURNAL_DIRECTORY
+                                               + " to record which editions are set inactive");
+        }
+        this.rangeDeltaQueries = Boolean.parseBoolean(properties.getProperty(
+                TitleRecordsConfigConstants.RANGE_DELTA_QUERIES, "false"));
+        this.verifyEditionHash = Boolean.parseBoolean(properties.getProperty(
+                TitleRecordsConfigConstants.VERIFY_EDITION_HASH, "false"));
+    }
+
+    /**
+     * Create the change plan writer configured in the properties. A plan file that already holds changes is refused,
+     * as they would be mixed with the new ones, and its checkpoint would no longer match it.
+     *
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#PLAN_FILE}
+     * @return The change plan writer, or null if relations should be changed rather than planned
+     * @throws IllegalArgumentException if the plan file already holds changes
+     */
+    static ChangePlanWriter createPlanWriter(Properties properties) {
+        String file = properties.getProperty(TitleRecordsConfigConstants.PLAN_FILE, "");
+        if (file.trim().isEmpty()) {
+            return null;
+        }
+        File plan = new File(file);
+        if (plan.length() > 0) {
+            throw new IllegalArgumentException("Change plan " + plan + " already exists. Apply it and remove it, or"
+                                               + " set " + TitleRecordsConfigConstants.PLAN_FILE + " to a new file");
+        }
+        return new ChangePlanWriter(plan);
+    }
+
+    /**
+     * Create the fingerprint store configured in the properties
+     *
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#FINGERPRINT_STORE_FILE}
+     * @return The fingerprint store, or null if none is configured
+     */
+    static TitleFingerprintStore createFingerprintStore(Properties properties) {
+        String file = properties.getProperty(TitleRecordsConfigConstants.FINGERPRINT_STORE_FILE, "");
+        if (file.trim().isEmpty()) {
+            return null;
+        }
+        int maxEntries = Integer.parseInt(properties.getProperty(
+                TitleRecordsConfigConstants.FINGERPRINT_STORE_MAX_ENTRIES, "100000"));
+        try {
+            return new TitleFingerprintStore(new File(file), maxEntries);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read title fingerprints from " + file, e);
+        }
+    }
+
+    /**
+     * Create the relation writer configured in the properties
+     *
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#RELATION_WRITER},
+     *                   {@link TitleRecordsConfigConstants#RELATION_WRITER_EXCLUSIVE} and
+     *                   {@link TitleRecordsConfigConstants#RELATION_CHECK}
+     * @param eFedora The Fedora to write to
+     * @return The relation writer
+     * @throws IllegalArgumentException if the writer is unknown, or is "relsExt" without exclusive access to RELS-EXT
+     */
+    static RelationWriter createRelationWriter(Properties properties, EnhancedFedora eFedora) {
+        String writer = properties.getProperty(TitleRecordsConfigConstants.RELATION_WRITER, "api");
+        if (writer.equalsIgnoreCase("relsExt")) {
+            if (!Boolean.parseBoolean(properties.getProperty(TitleRecordsConfigConstants.RELATION_WRITER_EXCLUSIVE,
+                    "false"))) {
+                throw new IllegalArgumentException("The relsExt relation writer overwrites changes made to RELS-EXT by "
+                        + "others, set " + TitleRecordsConfigConstants.RELATION_WRITER_EXCLUSIVE
+                        + " to confirm that nothing else changes it");
+            }
+            return new RelsExtRelationWriter(eFedora);
+        } else if (writer.equalsIgnoreCase("api")) {
+            return new FedoraApiRelationWriter(eFedora, RelationCheck.parse(properties.getProperty(
+                    TitleRecordsConfigConstants.RELATION_CHECK, RelationCheck.ALWAYS.name())));
+        }
+        throw new IllegalArgumentException("Unknown relation writer '" + writer + "'");
     }
 
     @Override
@@ -48,174 +192,578 @@ public class RunnableTitleRecordRelationsMaintainer extends AbstractRunnableComp
         return TITLE_RELATIONS_GENERATED;
     }
 
+    /**
+     * Decline the newspaper objects not yet started, so a running poll finishes soon. Newspaper objects already being
+     * worked on are finished. Declined newspaper objects are reported as failed, so they are worked on again by the next
+     * poll.
+     */
+    public void stop() {
+        stopping = true;
+    }
+
+    /**
+     * @return true if {@link #stop()} has been called
+     */
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Stop the threads changing relations. Changes already running are allowed to finish.
+     */
+    @Override
+    public void close() {
+        mutationExecutor.close();
+    }
+
     @Override
     public void doWorkOnItem(Item item, ResultCollector resultCollector) throws Exception {
         // We assume that the received item is a newspaper object ("titelpost").
         // This method is called whenever a newspaper object has changed
+        Timer.Context titleTimer = metrics.time(ReconciliationMetrics.Phase.TITLE);
+        try {
+            reconcile(item, resultCollector, null, 0);
+        } finally {
+            titleTimer.stop();
+        }
+    }
+
+    /**
+     * Ensure that the relations from editions to a newspaper object whose MODS the caller has already read and parsed
+     * are exactly those there should be, without reading the MODS again
+     *
+     * @param item The newspaper object ("titelpost")
+     * @param resultCollector The result collector to report failures to
+     * @param titleRange The newspaper ID and date range read from the MODS of the newspaper object
+     * @param modsHash The hash of the MODS, see {@link TitleFingerprint#hash(String)}
+     * @throws Exception if the relations could not be read or the changes could not be planned
+     */
+    void doWorkOnItem(Item item, ResultCollector resultCollector, TitleRange titleRange, long modsHash)
+            throws Exception {
+        Timer.Context titleTimer = metrics.time(ReconciliationMetrics.Phase.TITLE);
+        try {
+            reconcile(item, resultCollector, titleRange, modsHash);
+        } finally {
+            titleTimer.stop();
+        }
+    }
 
+    /**
+     * Ensure that the relations from editions to the newspaper object are exactly those there should be
+     *
+     * @param item The newspaper object ("titelpost")
+     * @param resultCollector The result collector to report failures to
+     * @param parsedRange The newspaper ID and date range already read from the MODS, or null to read them here
+     * @param parsedModsHash The hash of the MODS the range was read from, if given
+     * @throws Exception if the relations could not be read or the changes could not be planned
+     */
+    private void reconcile(Item item, ResultCollector resultCollector, TitleRange parsedRange, long parsedModsHash)
+            throws Exception {
+        if (stopping) {
+            resultCollector.addFailure(item, "stopped", getClass().getSimpleName(),
+                    "Not worked on, as the component is stopping");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
         // Get PID for the newspaper object
-        String domsID = item.getDomsID();
+        final String domsID = item.getDomsID();
 
-        String newspaperMods = eFedora.getXMLDatastreamContents(domsID, "MODS");
-        Document newspaperDOM = DOM.stringToDOM(newspaperMods, true);
-        XPathSelector xpath = DOM.createXPathSelector("v3", "http://www.loc.gov/mods/v3");
-        String avisID = xpath.selectString(newspaperDOM, "/v3:mods/v3:identifier[@type='title_family']/text()");
-        String startDate = xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued[@point='start']/text()");
-        String endDate = xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued[@point='end']/text()");
+        String newspaperMods = null;
+        long modsHash = parsedModsHash;
+        if (parsedRange == null) {
+            Timer.Context phaseTimer = metrics.time(ReconciliationMetrics.Phase.MODS_FETCH);
+            try {
+                newspaperMods = eFedora.getXMLDatastreamContents(domsID, "MODS");
+            } finally {
+                phaseTimer.stop();
+            }
+            modsHash = TitleFingerprint.hash(newspaperMods);
+        }
+        TitleFingerprint fingerprint = fingerprintStore == null ? null : fingerprintStore.get(domsID);
+        String avisID;
+        String startDate;
+        String endDate;
+        if (parsedRange != null) {
+            avisID = parsedRange.getAvisID();
+            startDate = parsedRange.getStartDate();
+            endDate = parsedRange.getEndDate();
+        } else if (fingerprint != null && fingerprint.getModsHash() == modsHash) {
+            // The MODS is unchanged since last time, so the fields read from it then still hold
+            avisID = fingerprint.getAvisID();
+            startDate = fingerprint.getStartDate();
+            endDate = fingerprint.getEndDate();
+        } else {
+            Timer.Context phaseTimer = metrics.time(ReconciliationMetrics.Phase.MODS_PARSE);
+            TitleRange titleRange;
+            try {
+                titleRange = modsTitleExtractor.extract(domsID, newspaperMods);
+            } finally {
+                phaseTimer.stop();
+            }
+            avisID = titleRange.getAvisID();
+            startDate = titleRange.getStartDate();
+            endDate = titleRange.getEndDate();
+        }
 
-        // Get all editions that match given newspaper object ("titelpost") and date range, i.e. editions that SHOULD have the
-        // relation
-        List<Item> wantedEditions =  newspaperIndex.getEditions(avisID, startDate, endDate);
+        TitleRange titleFields = new TitleRange(domsID, avisID, startDate, endDate);
+        if (titleRangeCache != null) {
+            // Editions looked up in the cache from now on see the change to this newspaper object
+            titleRangeCache.put(titleFields);
+        }
+        TitleJournal journal = null;
+        // A dry run never changes anything, so it neither resumes interrupted work nor sets editions active again
+        if (journalDirectory != null && planWriter == null) {
+            File journalFile = TitleJournal.getFile(journalDirectory, domsID);
+            // Editions left inactive by interrupted work are set active again, whether or not the work is resumed
+            if (!reactivateInterruptedEditions(item, resultCollector, TitleJournal.getDeactivated(journalFile))) {
+                return;
+            }
+            journal = TitleJournal.load(journalFile, titleFields);
+        }
 
-        // Get all editions that already HAVE the relation
-        List<Item> editionsWithRelation = getEditionsWithRelation(domsID);
+        EditionDiff diff = null;
+        long editionsWithRelationCount = -1;
+        List<String> editionsToAdd;
+        List<String> editionsToRemove;
+        if (journal != null) {
+            // Earlier work on this newspaper object was interrupted, so resume it rather than start over
+            editionsToAdd = journal.getRemainingAdds();
+            editionsToRemove = journal.getRemainingRemoves();
+            log.info("Resuming {} with {} relations to add and {} to remove",
+                    new Object[]{item.getFullID(), editionsToAdd.size(), editionsToRemove.size()});
+            metrics.mark(ReconciliationMetrics.Event.TITLE_RESUMED, 1);
+        } else {
+            // If neither the fields deciding which editions are wanted nor the number of such editions has changed
+            // since the relations were last reconciled, there is nothing to do. The cheap count is checked first, and
+            // the hash of the editions only if the counts match
+            if (fingerprint != null && fingerprint.hasSameFields(avisID, startDate, endDate)
+                    && countEditions(avisID, startDate, endDate) == fingerprint.getEditionCount()
+                    && (!verifyEditionHash
+                        || hashEditions(avisID, startDate, endDate) == fingerprint.getEditionHash())) {
+                log.info("{} is unchanged since its relations were last reconciled", item.getFullID());
+                metrics.mark(ReconciliationMetrics.Event.TITLE_SKIPPED, 1);
+                return;
+            }
 
-        // Add relations from editions that are wanted but aren't in editionsWithRelation
-        List<Item> editionsToAdd = getEditionsWantedButWithoutRelation(wantedEditions, editionsWithRelation);
-        for (Item toAdd : editionsToAdd) {
-            addRelationFromEditionToNewspaper(toAdd, domsID);
+            if (rangeDeltaQueries && fingerprint != null && fingerprint.getAvisID().equals(avisID)) {
+                // Only the date range has changed, so only the editions between the old and new range need changing
+                diff = computeRangeDelta(fingerprint, avisID, startDate, endDate);
+                if (diff == null) {
+                    log.info("Editions of {} have changed outside its change of date range, reconciling all of them",
+                            item.getFullID());
+                }
+            }
+
+            if (diff == null) {
+                // Get all editions that already HAVE the relation
+                Timer.Context phaseTimer = metrics.time(ReconciliationMetrics.Phase.INVERSE_RELATIONS);
+                EditionIdSet editionsWithRelation;
+                try {
+                    editionsWithRelation = getEditionsWithRelation(domsID);
+                } finally {
+                    phaseTimer.stop();
+                }
+                editionsWithRelationCount = editionsWithRelation.size();
+
+                // Get all editions that match given newspaper object ("titelpost") and date range, i.e. editions that
+                // SHOULD have the relation, and compare them to those that have it
+                phaseTimer = metrics.time(ReconciliationMetrics.Phase.EDITION_DIFF);
+                try {
+                    diff = EditionDiff.compute(newspaperIndex.getEditionIDs(avisID, startDate, endDate),
+                            editionsWithRelation);
+                } finally {
+                    phaseTimer.stop();
+                }
+                metrics.updateEditions(diff.getWantedCount(), editionsWithRelationCount);
+            }
+            editionsToAdd = diff.getEditionsToAdd();
+            editionsToRemove = diff.getEditionsToRemove();
+
+            if (planWriter != null) {
+                // Dry run, only record what would be changed
+                long now = System.currentTimeMillis();
+                List<RelationChange> changes = new ArrayList<>();
+                for (String toAdd : editionsToAdd) {
+                    changes.add(new RelationChange(now, RelationChange.Operation.ADD, toAdd, domsID));
+                }
+                for (String toRemove : editionsToRemove) {
+                    changes.add(new RelationChange(now, RelationChange.Operation.REMOVE, toRemove, domsID));
+                }
+                planWriter.append(changes);
+                log.info("Planned {} relation changes for {} in {}",
+                        new Object[]{changes.size(), item.getFullID(), planWriter.getFile()});
+                return;
+            }
+
+            if (journalDirectory != null) {
+                journal = TitleJournal.create(TitleJournal.getFile(journalDirectory, domsID), titleFields,
+                        editionsToAdd, editionsToRemove);
+            }
         }
+        final TitleJournal titleJournal = journal;
 
+        // Add relations from editions that are wanted but aren't in editionsWithRelation
+        RelationMutationExecutor.Mutation<String> addMutation = new RelationMutationExecutor.Mutation<String>() {
+            @Override
+            public void apply(String toAdd) throws Exception {
+                Timer.Context addTimer = metrics.time(ReconciliationMetrics.Phase.RELATION_ADD);
+                try {
+                    relationWriter.updateRelations(toAdd, Collections.singleton(domsID),
+                            Collections.<String>emptySet());
+                } finally {
+                    addTimer.stop();
+                }
+                if (titleJournal != null) {
+                    titleJournal.markDone(RelationChange.Operation.ADD, toAdd);
+                }
+            }
+        };
         // Remove relations that are in editionsWithRelation but aren't in wantedEditions
-        List<Item> editionsToRemove = getEditionsWithRelationButUnwanted(wantedEditions, editionsWithRelation);
-        for (Item toRemove : editionsToRemove) {
-            removeRelationFromEditionToNewspaper(toRemove, domsID);
+        RelationMutationExecutor.Mutation<String> removeMutation = new RelationMutationExecutor.Mutation<String>() {
+            @Override
+            public void apply(String toRemove) throws Exception {
+                Timer.Context removeTimer = metrics.time(ReconciliationMetrics.Phase.RELATION_REMOVE);
+                try {
+                    relationWriter.updateRelations(toRemove, Collections.<String>emptySet(),
+                            Collections.singleton(domsID));
+                } finally {
+                    removeTimer.stop();
+                }
+                if (titleJournal != null) {
+                    titleJournal.markDone(RelationChange.Operation.REMOVE, toRemove);
+                }
+            }
+        };
+
+        // Unpublish the published editions up front, rather than failing on each one and retrying. This is done a
+        // chunk at a time, so an edition is only unpublished while the changes of its chunk are made
+        int chunkSize = batchStateChanges ? stateChangeChunkSize : Integer.MAX_VALUE;
+        int addCount = editionsToAdd.size();
+        int changeCount = addCount + editionsToRemove.size();
+        List<RelationMutationExecutor.Failure<String>> addFailures = new ArrayList<>();
+        List<RelationMutationExecutor.Failure<String>> removeFailures = new ArrayList<>();
+        int stateChanges = 0;
+        try {
+            for (int from = 0; from < changeCount; ) {
+                int to = (int) Math.min((long) from + chunkSize, changeCount);
+                List<String> chunkAdds = editionsToAdd.subList(Math.min(from, addCount), Math.min(to, addCount));
+                List<String> chunkRemoves = editionsToRemove.subList(Math.max(from - addCount, 0),
+                        Math.max(to - addCount, 0));
+                Set<String> deactivatedEditions = Collections.emptySet();
+                if (batchStateChanges) {
+                    List<String> chunk = new ArrayList<>(chunkAdds);
+                    chunk.addAll(chunkRemoves);
+                    deactivatedEditions = deactivatePublishedEditions(item, resultCollector, chunk, titleJournal);
+                }
+                try {
+                    addFailures.addAll(mutationExecutor.execute(chunkAdds, addMutation));
+                    removeFailures.addAll(mutationExecutor.execute(chunkRemoves, removeMutation));
+                } finally {
+                    stateChanges += deactivatedEditions.size()
+                                    + reactivateEditions(item, resultCollector, deactivatedEditions, titleJournal);
+                }
+                from = to;
+            }
+        } finally {
+            if (titleJournal != null) {
+                // Keeps the journal on disk if the work was interrupted, so the next run can resume
+                titleJournal.close();
+            }
         }
+        reportFailures(item, resultCollector, "add", addCount, addFailures);
+        int added = addCount - addFailures.size();
+        reportFailures(item, resultCollector, "remove", editionsToRemove.size(), removeFailures);
+        int removed = editionsToRemove.size() - removeFailures.size();
+        if (titleJournal != null) {
+            // Every change has been attempted. Failed ones are found again by the next full run
+            titleJournal.delete();
+        }
+
+        if (fingerprintStore != null) {
+            if (diff != null && resultCollector.isSuccess()) {
+                fingerprintStore.put(domsID, new TitleFingerprint(avisID, startDate, endDate, modsHash,
+                        diff.getWantedCount(), diff.getWantedHash()));
+            } else {
+                // Some relations may not be as wanted, or the wanted editions were not counted, so do not let a
+                // later run skip this title
+                fingerprintStore.remove(domsID);
+            }
+        }
+        metrics.mark(ReconciliationMetrics.Event.RELATION_ADDED, added);
+        metrics.mark(ReconciliationMetrics.Event.RELATION_REMOVED, removed);
+        metrics.mark(ReconciliationMetrics.Event.RELATION_FAILED,
+                editionsToAdd.size() - added + editionsToRemove.size() - removed);
+        log.info("Summary for {}: {} editions wanted, {} had the relation, {} relations added of {}, {} removed of {},"
+                 + " {} state changes, {} ms", new Object[]{item.getFullID(),
+                diff == null ? "unknown" : diff.getWantedCount(),
+                editionsWithRelationCount < 0 ? "unknown" : editionsWithRelationCount,
+                added, editionsToAdd.size(), removed, editionsToRemove.size(), stateChanges,
+                System.currentTimeMillis() - startTime});
         log.info("All work on {} done",item.getFullID());
     }
 
     /**
-     * Get editions from which relations are wanted but that aren't in editionsWithRelation
+     * Compute the difference for a newspaper object whose date range has changed since its relations were last
+     * reconciled, by only querying the editions in the parts of the date ranges that are not in both. This relies on
+     * the relations being exactly as wanted for the old date range, which holds because fingerprints are only kept
+     * after a successful run.
      *
-     * @param wantedEditions Editions that we want
-     * @param editionsWithRelation Editions with a relation to "titelpost" that we already have
-     * @return editions from which relations are wanted but that aren't in editionsWithRelation
+     * @param fingerprint The fingerprint of the last reconciliation, with the same newspaper ID
+     * @param avisID The newspaper ID
+     * @param startDate The new start of the date range
+     * @param endDate The new end of the date range
+     * @return The difference, or null if the editions in the new date range are not those expected from the old
+     * editions and the change of date range, and a full reconciliation is needed
      */
-    private List<Item> getEditionsWantedButWithoutRelation(List<Item> wantedEditions, List<Item> editionsWithRelation) {
-        List<Item> result = new ArrayList<>(wantedEditions);
-        result.removeAll(editionsWithRelation);
-        return result;
+    private EditionDiff computeRangeDelta(TitleFingerprint fingerprint, String avisID, String startDate,
+                                          String endDate) {
+        DateInterval oldRange = DateInterval.closed(fingerprint.getStartDate(), fingerprint.getEndDate());
+        DateInterval newRange = DateInterval.closed(startDate, endDate);
+        Timer.Context diffTimer = metrics.time(ReconciliationMetrics.Phase.EDITION_DIFF);
+        List<String> toAdd = new ArrayList<>();
+        List<String> toRemove = new ArrayList<>();
+        try {
+            for (DateInterval added : DateInterval.difference(newRange, oldRange)) {
+                Iterator<String> editions = newspaperIndex.getEditionIDs(avisID, added);
+                while (editions.hasNext()) {
+                    toAdd.add(editions.next());
+                }
+            }
+            for (DateInterval removed : DateInterval.difference(oldRange, newRange)) {
+                Iterator<String> editions = newspaperIndex.getEditionIDs(avisID, removed);
+                while (editions.hasNext()) {
+                    toRemove.add(editions.next());
+                }
+            }
+        } finally {
+            diffTimer.stop();
+        }
+
+        // Editions may also have been added or removed inside the range both share, which the delta does not see. The
+        // count catches most such changes, and the hash also those where as many editions were replaced
+        long expectedCount = fingerprint.getEditionCount() + toAdd.size() - toRemove.size();
+        if (countEditions(avisID, startDate, endDate) != expectedCount) {
+            return null;
+        }
+        EditionDiff diff = EditionDiff.fromDelta(toAdd, toRemove, expectedCount, fingerprint.getEditionHash());
+        if (verifyEditionHash && hashEditions(avisID, startDate, endDate) != diff.getWantedHash()) {
+            return null;
+        }
+        return diff;
     }
 
     /**
-     * Get editions that are in editionsWithRelation but aren't in wantedEditions
+     * Count the editions that match given newspaper object ("titelpost") and date range, timing the query
      *
-     * @param wantedEditions Editions that we want
-     * @param editionsWithRelation Editions with a relation to "titelpost" that we already have
-     * @return editions that are in editionsWithRelation but aren't in wantedEditions
+     * @param avisID The newspaper ID
+     * @param startDate The start of the date range
+     * @param endDate The end of the date range
+     * @return The number of matching editions
      */
-    private List<Item> getEditionsWithRelationButUnwanted(List<Item> wantedEditions, List<Item> editionsWithRelation) {
-        List<Item> result = new ArrayList<>(editionsWithRelation);
-        result.removeAll(wantedEditions);
-        return result;
+    private long countEditions(String avisID, String startDate, String endDate) {
+        Timer.Context countTimer = metrics.time(ReconciliationMetrics.Phase.EDITION_COUNT);
+        try {
+            return newspaperIndex.countEditions(avisID, startDate, endDate);
+        } finally {
+            countTimer.stop();
+        }
     }
 
     /**
-     * Get all editions that have the wanted relation to newspaper object ("titelpost") with given DOMS PID
+     * Hash the PIDs of the editions that match given newspaper object ("titelpost") and date range, timing the query
      *
-     * @param newspaperDomsID Newspaper object ("titelpost") to which relation should go
-     * @return All editions that have the wanted relation to newspaper object ("titelpost") with given DOMS PID
+     * @param avisID The newspaper ID
+     * @param startDate The start of the date range
+     * @param endDate The end of the date range
+     * @return The hash of the matching editions, see {@link TitleFingerprint#hashEditions(Iterator)}
      */
-    private List<Item> getEditionsWithRelation(String newspaperDomsID) throws
-            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+    private long hashEditions(String avisID, String startDate, String endDate) {
+        Timer.Context hashTimer = metrics.time(ReconciliationMetrics.Phase.EDITION_HASH);
+        try {
+            return TitleFingerprint.hashEditions(newspaperIndex.getEditionIDs(avisID, startDate, endDate));
+        } finally {
+            hashTimer.stop();
+        }
+    }
 
-        List<Item> editions = new ArrayList<>();
+    /**
+     * Set editions that interrupted work on the newspaper object ("titelpost") set inactive, and that are still
+     * inactive, active again
+     *
+     * @param item The newspaper object ("titelpost") being worked on
+     * @param resultCollector The result collector to report failures to
+     * @param editions The PIDs of the editions that the journal records as set inactive and not active again
+     * @return True if they are all active, false if some could not be looked up or set active, and were reported
+     * @throws InterruptedException if interrupted while waiting for the state changes
+     * @throws IOException if the journal could not be read
+     */
+    private boolean reactivateInterruptedEditions(Item item, ResultCollector resultCollector, List<String> editions)
+            throws InterruptedException, IOException {
+        if (editions.isEmpty()) {
+            return true;
+        }
+        Set<String> inactiveEditions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<RelationMutationExecutor.Failure<String>> lookupFailures = findEditionsInState(editions, INACTIVE_STATE,
+                inactiveEditions);
+        reportFailures(item, resultCollector, "republish", editions.size(), lookupFailures);
+        log.info("Setting {} editions left inactive by interrupted work on {} active again", inactiveEditions.size(),
+                item.getFullID());
+        int reactivated = reactivateEditions(item, resultCollector, inactiveEditions, null);
+        return lookupFailures.isEmpty() && reactivated == inactiveEditions.size();
+    }
 
-        // Get all relations that go from an edition to given newspaper object ("titelpost")
-        List<FedoraRelation> relations = eFedora.getInverseRelations(newspaperDomsID, EDITION_TO_NEWSPAPER_RELATION);
+    /**
+     * Look up the state of the given editions, and collect those in the given state
+     *
+     * @param editions The PIDs of the editions to look up
+     * @param state The state to look for
+     * @param editionsInState The set to add the PIDs of the editions in the given state to
+     * @return The editions whose state could not be looked up
+     * @throws InterruptedException if interrupted while waiting for the lookups
+     */
+    private List<RelationMutationExecutor.Failure<String>> findEditionsInState(
+            Collection<String> editions, final String state, final Set<String> editionsInState)
+            throws InterruptedException {
+        return mutationExecutor.execute(editions, new RelationMutationExecutor.Mutation<String>() {
+            @Override
+            public void apply(String edition) throws Exception {
+                Timer.Context lookupTimer = metrics.time(ReconciliationMetrics.Phase.STATE_LOOKUP);
+                String editionState;
+                try {
+                    editionState = eFedora.getObjectProfile(edition, null).getState();
+                } finally {
+                    lookupTimer.stop();
+                }
+                if (state.equals(editionState)) {
+                    editionsInState.add(edition);
+                }
+            }
+        });
+    }
 
-        // Collect the editions that these relations point from. (Relations point from Edition to Newspaper)
-        for (FedoraRelation relation : relations) {
-            editions.add(itemFactory.create(uriToDomsID(relation.getSubject())));
+    /**
+     * Look up the state of the given editions, and set those that are published (state "A") inactive, so their
+     * relations can be changed without first failing. The editions are recorded in the journal before they are set
+     * inactive.
+     *
+     * @param item The newspaper object ("titelpost") being worked on
+     * @param resultCollector The result collector to report failures to
+     * @param editions The PIDs of the editions that will be changed
+     * @param journal The journal of the work on the newspaper object
+     * @return The PIDs of the editions that were set inactive, and must be set active again
+     * @throws InterruptedException if interrupted while waiting for the state changes
+     * @throws IOException if the editions could not be recorded in the journal
+     */
+    private Set<String> deactivatePublishedEditions(Item item, ResultCollector resultCollector, List<String> editions,
+                                                    TitleJournal journal) throws InterruptedException, IOException {
+        Set<String> publishedEditions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<RelationMutationExecutor.Failure<String>> lookupFailures = findEditionsInState(editions,
+                PUBLISHED_STATE, publishedEditions);
+        if (!lookupFailures.isEmpty()) {
+            // Editions whose state could not be looked up are left to the unpublish-and-retry fallback
+            log.warn("State lookup failed for {} editions of {}", lookupFailures.size(), item.getFullID());
         }
+        // If the process dies while they are inactive, the next run finds them in the journal
+        journal.markDeactivated(publishedEditions);
 
-        return editions;
+        final Set<String> deactivatedEditions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<RelationMutationExecutor.Failure<String>> failures = mutationExecutor.execute(publishedEditions,
+                new RelationMutationExecutor.Mutation<String>() {
+                    @Override
+                    public void apply(String edition) throws Exception {
+                        Timer.Context stateTimer = metrics.time(ReconciliationMetrics.Phase.STATE_CHANGE);
+                        try {
+                            eFedora.modifyObjectState(edition, INACTIVE_STATE, SET_INACTIVE_COMMENT);
+                        } finally {
+                            stateTimer.stop();
+                        }
+                        metrics.mark(ReconciliationMetrics.Event.STATE_CHANGED, 1);
+                        deactivatedEditions.add(edition);
+                    }
+                });
+        reportFailures(item, resultCollector, "unpublish", publishedEditions.size(), failures);
+        return deactivatedEditions;
     }
 
     /**
-     * Add relation from given edition to newspaper object ("titelpost") with given PID (newspaperDomsID) in DOMS.
-     * Objects are unpublished/published as needed.
+     * Set the given editions active (state "A") again after their relations have been changed
      *
-     * @param edition The edition which should be at the "source" end of the wanted relation
-     * @param newspaperDomsID The DOMS PID of the newspaper object ("titelpost") which should be the "target" of wanted relation
-     * @throws BackendMethodFailedException
-     * @throws BackendInvalidResourceException
-     * @throws BackendInvalidCredsException
+     * @param item The newspaper object ("titelpost") being worked on
+     * @param resultCollector The result collector to report failures to
+     * @param editions The PIDs of the editions that were set inactive
+     * @param journal The journal to record the editions set active in, or null to not record them
+     * @return The number of editions that were set active
+     * @throws InterruptedException if interrupted while waiting for the state changes
+     * @throws IOException if the editions could not be recorded in the journal
      */
-    private void addRelationFromEditionToNewspaper(Item edition, String newspaperDomsID) throws
-            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
-
-        // If edition already has wanted relation, nothing to do here, return
-        List<FedoraRelation> relations = eFedora.getNamedRelations(edition.getDomsID(), EDITION_TO_NEWSPAPER_RELATION, null);
-        for (FedoraRelation relation : relations) {
-            if (relation.getSubject().equals(newspaperDomsID)){
-                return;
-            }
+    private int reactivateEditions(Item item, ResultCollector resultCollector, Set<String> editions,
+                                   TitleJournal journal) throws InterruptedException, IOException {
+        final Set<String> reactivatedEditions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<RelationMutationExecutor.Failure<String>> failures = mutationExecutor.execute(editions,
+                new RelationMutationExecutor.Mutation<String>() {
+                    @Override
+                    public void apply(String edition) throws Exception {
+                        Timer.Context stateTimer = metrics.time(ReconciliationMetrics.Phase.STATE_CHANGE);
+                        try {
+                            eFedora.modifyObjectState(edition, PUBLISHED_STATE, SETS_ACTIVE_COMMENT);
+                        } finally {
+                            stateTimer.stop();
+                        }
+                        metrics.mark(ReconciliationMetrics.Event.STATE_CHANGED, 1);
+                        reactivatedEditions.add(edition);
+                    }
+                });
+        reportFailures(item, resultCollector, "republish", editions.size(), failures);
+        if (journal != null) {
+            journal.markReactivated(reactivatedEditions);
         }
+        return reactivatedEditions.size();
+    }
 
-        // Add relation from edition to newspaper object ("titelpost")
-        try {
-            eFedora.addRelation(edition.getDomsID(), URI_PREFIX + edition.getDomsID(), EDITION_TO_NEWSPAPER_RELATION,
-                    URI_PREFIX + newspaperDomsID, false, "linking to");
-        } catch (BackendInvalidCredsException objectIsPublished) {
-            // Edition was already published, so unpublish (set to "I" (inactive)) before adding
-            eFedora.modifyObjectState(edition.getDomsID(), "I", SET_INACTIVE_COMMENT);
-            try {
-                eFedora.addRelation(edition.getDomsID(), URI_PREFIX + edition.getDomsID(), EDITION_TO_NEWSPAPER_RELATION,
-                        URI_PREFIX + newspaperDomsID, false,
-                                           "Adding relation " + EDITION_TO_NEWSPAPER_RELATION + " to " +
-                                           URI_PREFIX + newspaperDomsID);
-            } finally {
-                // Re-publish (set to "A" (active))
-                eFedora.modifyObjectState(edition.getDomsID(), "A", SETS_ACTIVE_COMMENT);
-            }
+    /**
+     * Report failed relation changes as one failure on the newspaper object ("titelpost"), listing each failed edition
+     * in the details
+     *
+     * @param item The newspaper object ("titelpost") being worked on
+     * @param resultCollector The result collector to report to
+     * @param operation The operation that failed, "add" or "remove"
+     * @param attempted The number of editions the operation was attempted on
+     * @param failures The failed editions
+     */
+    private void reportFailures(Item item, ResultCollector resultCollector, String operation, int attempted,
+                                List<RelationMutationExecutor.Failure<String>> failures) {
+        if (failures.isEmpty()) {
+            return;
         }
+        String[] details = new String[failures.size()];
+        for (int i = 0; i < details.length; i++) {
+            RelationMutationExecutor.Failure<String> failure = failures.get(i);
+            details[i] = failure.getTarget() + ": " + failure.getCause();
+        }
+        resultCollector.addFailure(item, "exception", getClass().getSimpleName(),
+                "Failed to " + operation + " relation for " + failures.size() + " of " + attempted + " editions",
+                details);
     }
 
     /**
-     * Add relation from given edition to newspaper object ("titelpost") with given PID (newspaperDomsID) in DOMS, if it exists
+     * Get all editions that have the wanted relation to newspaper object ("titelpost") with given DOMS PID
      *
-     * @param edition The edition from which the possible relation to newspaperDomsID should be removed
-     * @param newspaperDomsID The target of the relations from edition that should be removed
-     * @throws BackendMethodFailedException
-     * @throws BackendInvalidResourceException
-     * @throws BackendInvalidCredsException
+     * @param newspaperDomsID Newspaper object ("titelpost") to which relation should go
+     * @return The DOMS PIDs of all editions that have the wanted relation to newspaper object ("titelpost") with given
+     * DOMS PID, in a compact set
      */
-    private void removeRelationFromEditionToNewspaper(Item edition, String newspaperDomsID) throws
+    private EditionIdSet getEditionsWithRelation(String newspaperDomsID) throws
             BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
 
-        // If edition has relation to newspaperDomsID, remove it
-        List<FedoraRelation> relations = eFedora.getNamedRelations(edition.getDomsID(), EDITION_TO_NEWSPAPER_RELATION, null);
+        // Get all relations that go from an edition to given newspaper object ("titelpost")
+        List<FedoraRelation> relations = eFedora.getInverseRelations(newspaperDomsID, EDITION_TO_NEWSPAPER_RELATION);
+
+        // Collect the editions that these relations point from. (Relations point from Edition to Newspaper)
+        EditionIdSet editions = new EditionIdSet(relations.size());
         for (FedoraRelation relation : relations) {
-            if (relation.getObject().equals(URI_PREFIX + newspaperDomsID)) {
-                try {
-                    eFedora.deleteRelation(edition.getDomsID(), URI_PREFIX + edition.getDomsID(),
-                            EDITION_TO_NEWSPAPER_RELATION, URI_PREFIX + newspaperDomsID, false,
-                                                  "Deleting relation " + EDITION_TO_NEWSPAPER_RELATION + " to " +
-                                                  URI_PREFIX + newspaperDomsID);
-                } catch (BackendInvalidCredsException objectIsPublished) {
-                    // Edition was already published, so unpublish (set to "I" (inactive)) before deleting
-                    eFedora.modifyObjectState(edition.getDomsID(), "I", SET_INACTIVE_COMMENT);
-                    try {
-                        eFedora.deleteRelation(edition.getDomsID(), URI_PREFIX + edition.getDomsID(),
-                                EDITION_TO_NEWSPAPER_RELATION, URI_PREFIX + newspaperDomsID, false, "Deleting relation "+EDITION_TO_NEWSPAPER_RELATION+" to " +
-                                                      URI_PREFIX + newspaperDomsID);
-                    } finally {
-                        // Re-publish (set to "A" (active))
-                        eFedora.modifyObjectState(edition.getDomsID(), "A", SETS_ACTIVE_COMMENT);
-                    }
-                }
-            }
+            editions.addUri(relation.getSubject());
         }
-    }
 
-    /**
-     * Remove the "info:fedora/" prefix from uri, making it a proper DOMS PID (starting with "uuid")
-     *
-     * @param uri The uri from which to remove prefix
-     * @return The DOMS PID
-     */
-    private String uriToDomsID(String uri) {
-        return uri.replace(URI_PREFIX, "");
+        return editions;
     }
 }
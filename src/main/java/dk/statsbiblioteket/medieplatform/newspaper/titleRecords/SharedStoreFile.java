@@ -0,0 +1,174 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A store file that several processes keep a copy of in memory and rewrite. The file is only read and rewritten while
+ * holding an exclusive lock on a lock file next to it, "&lt;file&gt;.lock", so a process always changes the latest
+ * contents. Each rewrite gives the file a new version, kept in the lock file, so a process can tell whether its copy
+ * is still the latest without comparing modification times. The file is rewritten by writing a temporary file of the
+ * process's own and atomically moving it in place, so the file is never partial, and never lost to a failed move.
+ */
+class SharedStoreFile {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // File locks are held by the JVM, not the thread, so threads of the same JVM are kept apart with these
+    private static final ConcurrentMap<String, ReentrantLock> jvmLocks = new ConcurrentHashMap<>();
+    private final File file;
+    private final File lockFile;
+    // The version of the file this process last read or wrote, or null if it has not
+    private String readVersion;
+
+    /**
+     * Constructor
+     *
+     * @param file The store file
+     */
+    SharedStoreFile(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + ".lock");
+    }
+
+    /**
+     * @return The store file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Lock the store file against other processes and threads, waiting until no one else holds it. The directory of
+     * the file is created if it does not exist.
+     *
+     * @return The lock, which must be closed
+     * @throws IOException if the lock file could not be created or locked
+     */
+    Lock lock() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        ReentrantLock jvmLock = getJvmLock();
+        jvmLock.lock();
+        RandomAccessFile lockAccess = null;
+        try {
+            lockAccess = new RandomAccessFile(lockFile, "rw");
+            FileLock fileLock = lockAccess.getChannel().lock();
+            return new Lock(jvmLock, lockAccess, fileLock);
+        } catch (IOException | RuntimeException e) {
+            if (lockAccess != null) {
+                lockAccess.close();
+            }
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    private ReentrantLock getJvmLock() throws IOException {
+        String path = lockFile.getCanonicalPath();
+        ReentrantLock jvmLock = jvmLocks.get(path);
+        if (jvmLock == null) {
+            ReentrantLock created = new ReentrantLock();
+            jvmLock = jvmLocks.putIfAbsent(path, created);
+            if (jvmLock == null) {
+                jvmLock = created;
+            }
+        }
+        return jvmLock;
+    }
+
+    /**
+     * An exclusive lock on the store file
+     */
+    class Lock implements Closeable {
+        private final ReentrantLock jvmLock;
+        private final RandomAccessFile lockAccess;
+        private final FileLock fileLock;
+        private final String version;
+
+        private Lock(ReentrantLock jvmLock, RandomAccessFile lockAccess, FileLock fileLock) throws IOException {
+            this.jvmLock = jvmLock;
+            this.lockAccess = lockAccess;
+            this.fileLock = fileLock;
+            FileChannel channel = lockAccess.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // Read the whole lock file
+            }
+            this.version = new String(buffer.array(), 0, buffer.position(), UTF8);
+        }
+
+        /**
+         * @return true if the file has been rewritten since this process last read or wrote it, or has never been
+         * read by it
+         */
+        boolean isChanged() {
+            return !version.equals(readVersion);
+        }
+
+        /**
+         * Record that this process has read the file as it is now
+         */
+        void markRead() {
+            readVersion = version;
+        }
+
+        /**
+         * Create a temporary file of this process's own, in the directory of the store file, to write the new contents
+         * of the store to
+         *
+         * @return The temporary file
+         * @throws IOException if the file could not be created
+         */
+        File createTemporary() throws IOException {
+            return File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        }
+
+        /**
+         * Replace the store file with a temporary file, atomically, and give it a new version
+         *
+         * @param temporary The temporary file with the new contents
+         * @throws IOException if the file could not be replaced
+         */
+        void replace(File temporary) throws IOException {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            String newVersion = UUID.randomUUID().toString();
+            FileChannel channel = lockAccess.getChannel();
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.wrap(newVersion.getBytes(UTF8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(false);
+            readVersion = newVersion;
+        }
+
+        /**
+         * Release the lock
+         *
+         * @throws IOException if the lock file could not be closed
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                fileLock.release();
+                lockAccess.close();
+            } finally {
+                jvmLock.unlock();
+            }
+        }
+    }
+}
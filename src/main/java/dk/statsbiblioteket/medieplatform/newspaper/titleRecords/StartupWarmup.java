@@ -0,0 +1,72 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.MetricRegistry;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedoraImpl;
+import dk.statsbiblioteket.medieplatform.autonomous.ConfigConstants;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIDomsAutonomousComponentUtils;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Runs the start of reconciling a newspaper object without contacting DOMS or SBOI, so the classes used on every run
+ * are loaded and initialised. Used as the training run when creating a class data sharing archive, and to measure
+ * how long the JVM takes to get ready for work.
+ */
+public class StartupWarmup {
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+    private static final String TITLE_ID = "uuid:00000000-0000-0000-0000-000000000000";
+    private static final String EDITION_ID1 = "uuid:00000000-0000-0000-0000-000000000001";
+    private static final String EDITION_ID2 = "uuid:00000000-0000-0000-0000-000000000002";
+    private static final String MODS = "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+            + "<identifier type=\"title_family\">avis</identifier>"
+            + "<originInfo>"
+            + "<dateIssued point=\"start\">1970-01-01</dateIssued>"
+            + "<dateIssued point=\"end\">1980-01-01</dateIssued>"
+            + "</originInfo>"
+            + "</mods>";
+
+    private StartupWarmup() {
+    }
+
+    /**
+     * Load and initialise the classes used when reconciling a newspaper object
+     *
+     * @param properties The properties, used to create the SBOI client and connection pool as on a normal run
+     * @return Milliseconds since the JVM started
+     * @throws Exception if any of the steps failed
+     */
+    public static long run(Properties properties) throws Exception {
+        ReconciliationMetrics metrics = new ReconciliationMetrics(new MetricRegistry());
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, metrics.getRegistry());
+        try {
+            new NewspaperIndex(new HttpSolrServer(properties.getProperty(ConfigConstants.AUTONOMOUS_SBOI_URL),
+                    connectionPool.getHttpClient()), new DomsItemFactory());
+
+            TitleRange range = new ModsTitleExtractor().extract(TITLE_ID, MODS);
+            DateInterval.difference(DateInterval.closed(range.getStartDate(), range.getEndDate()),
+                    DateInterval.closed(range.getStartDate(), ""));
+            EditionDiff diff = EditionDiff.compute(Arrays.asList(EDITION_ID1).iterator(),
+                    Collections.singletonList(EDITION_ID2));
+            metrics.updateEditions(diff.getWantedCount(), diff.getEditionsToRemove().size());
+            TitleFingerprint.hash(MODS);
+
+            // Initialising is enough, creating these would contact DOMS and the lock server
+            Class.forName(EnhancedFedoraImpl.class.getName());
+            Class.forName(SBOIDomsAutonomousComponentUtils.class.getName());
+            Class.forName(RunnableTitleRecordRelationsMaintainer.class.getName());
+        } finally {
+            metrics.close();
+            connectionPool.close();
+        }
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("Ready for work {} ms after the JVM started", uptime);
+        return uptime;
+    }
+}
@@ -0,0 +1,164 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Decorates an {@link EnhancedFedora} so that writes are rate limited with a {@link TokenBucket} and their concurrency
+ * is limited with an {@link AdaptiveConcurrencyLimiter}. Reads are passed straight through.
+ *
+ * The decorator is a dynamic proxy, so it covers every method of the interface. A method is a write if its name
+ * starts with one of {@link #WRITE_METHOD_PREFIXES}. A write failing with a {@link BackendMethodFailedException} is
+ * only taken as a sign of overload if it was caused by a timeout or a 5xx server error, see {@link #isOverload}; other
+ * failures, such as conflicts, say nothing about the load on Fedora.
+ */
+public class ThrottledFedora implements InvocationHandler {
+    private static final Logger log = LoggerFactory.getLogger(ThrottledFedora.class);
+    static final String[] WRITE_METHOD_PREFIXES = {"add", "delete", "modify", "purge", "create", "ingest", "new"};
+    // How the HTTP client reports a response status, e.g. "returned a response status of 503 Service Unavailable"
+    private static final Pattern SERVER_ERROR_STATUS = Pattern.compile("status(?: of|:) 5\\d\\d\\b",
+            Pattern.CASE_INSENSITIVE);
+    private final EnhancedFedora delegate;
+    private final TokenBucket rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private ThrottledFedora(EnhancedFedora delegate, TokenBucket rateLimiter,
+                            AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Decorate a Fedora client
+     *
+     * @param delegate The client to decorate
+     * @param rateLimiter The rate limiter for writes, or null for no rate limit
+     * @param concurrencyLimiter The concurrency limiter for writes, or null for no concurrency limit
+     * @return The decorated client
+     */
+    public static EnhancedFedora create(EnhancedFedora delegate, TokenBucket rateLimiter,
+                                        AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                new Class<?>[]{EnhancedFedora.class}, new ThrottledFedora(delegate, rateLimiter, concurrencyLimiter));
+    }
+
+    /**
+     * Decorate a Fedora client as configured in the properties
+     *
+     * @param delegate The client to decorate
+     * @param properties The properties, see {@link TitleRecordsConfigConstants#FEDORA_WRITES_PER_SECOND} and
+     *                   {@link TitleRecordsConfigConstants#FEDORA_MAX_CONCURRENT_WRITES}
+     * @return The decorated client, or the client itself if neither limit is configured
+     */
+    public static EnhancedFedora create(EnhancedFedora delegate, Properties properties) {
+        double writesPerSecond = Double.parseDouble(properties.getProperty(
+                TitleRecordsConfigConstants.FEDORA_WRITES_PER_SECOND, "0"));
+        int maxConcurrentWrites = Integer.parseInt(properties.getProperty(
+                TitleRecordsConfigConstants.FEDORA_MAX_CONCURRENT_WRITES, "0"));
+        TokenBucket rateLimiter = null;
+        if (writesPerSecond > 0) {
+            rateLimiter = new TokenBucket(writesPerSecond, Integer.parseInt(properties.getProperty(
+                    TitleRecordsConfigConstants.FEDORA_WRITE_BURST, "1")));
+        }
+        AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+        if (maxConcurrentWrites > 0) {
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                    Integer.parseInt(properties.getProperty(
+                            TitleRecordsConfigConstants.FEDORA_MIN_CONCURRENT_WRITES, "1")),
+                    maxConcurrentWrites,
+                    Long.parseLong(properties.getProperty(
+                            TitleRecordsConfigConstants.FEDORA_WRITE_LATENCY_THRESHOLD, "2000")));
+        }
+        if (rateLimiter == null && concurrencyLimiter == null) {
+            return delegate;
+        }
+        log.info("Limiting Fedora writes to {} per second and {} at a time, where 0 is no limit", writesPerSecond,
+                maxConcurrentWrites);
+        return create(delegate, rateLimiter, concurrencyLimiter);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class || !isWrite(method)) {
+            return invokeDelegate(method, args);
+        }
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.acquire();
+            }
+        } catch (InterruptedException e) {
+            // Thrown as an exception the method declares, rather than let the proxy wrap it
+            Thread.currentThread().interrupt();
+            throw new BackendMethodFailedException("Interrupted while waiting to call " + method.getName(), e);
+        }
+        if (concurrencyLimiter == null) {
+            return invokeDelegate(method, args);
+        }
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return invokeDelegate(method, args);
+        } catch (BackendMethodFailedException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start, overloaded);
+        }
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Check whether a failure shows that Fedora is overloaded, which is when it, or one of its causes, is a socket
+     * timeout or reports a 5xx response status
+     *
+     * @param failure The failure
+     * @return true if the failure was caused by a timeout or a server error
+     */
+    static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            if (cause.getMessage() != null && SERVER_ERROR_STATUS.matcher(cause.getMessage()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a method writes to Fedora
+     *
+     * @param method The method
+     * @return true if the method name starts with one of {@link #WRITE_METHOD_PREFIXES}
+     */
+    static boolean isWrite(Method method) {
+        for (String prefix : WRITE_METHOD_PREFIXES) {
+            if (method.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.Iterator;
+
+/**
+ * What a newspaper object ("titelpost") looked like the last time its relations were reconciled: the fields of the
+ * MODS that decide which editions should have a relation to it, and the editions that were found.
+ */
+public class TitleFingerprint {
+    private final String avisID;
+    private final String startDate;
+    private final String endDate;
+    private final long modsHash;
+    private final long editionCount;
+    private final long editionHash;
+
+    /**
+     * Constructor
+     *
+     * @param avisID The newspaper ID, for example "adresseavisen1759"
+     * @param startDate The start of the date range, or the empty string
+     * @param endDate The end of the date range, or the empty string
+     * @param modsHash Hash of the MODS datastream the fields were read from
+     * @param editionCount The number of editions that had the relation after reconciling
+     * @param editionHash Order independent hash of the PIDs of the editions that had the relation after reconciling
+     */
+    public TitleFingerprint(String avisID, String startDate, String endDate, long modsHash, long editionCount,
+                            long editionHash) {
+        this.avisID = avisID;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.modsHash = modsHash;
+        this.editionCount = editionCount;
+        this.editionHash = editionHash;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public long getModsHash() {
+        return modsHash;
+    }
+
+    public long getEditionCount() {
+        return editionCount;
+    }
+
+    public long getEditionHash() {
+        return editionHash;
+    }
+
+    /**
+     * Check whether this fingerprint has the given newspaper ID and date range
+     *
+     * @param avisID The newspaper ID
+     * @param startDate The start of the date range
+     * @param endDate The end of the date range
+     * @return true if all three are equal to those of this fingerprint
+     */
+    public boolean hasSameFields(String avisID, String startDate, String endDate) {
+        return this.avisID.equals(avisID) && this.startDate.equals(startDate) && this.endDate.equals(endDate);
+    }
+
+    /**
+     * Hash a string, for example a MODS document, to 64 bits with FNV-1a
+     *
+     * @param value The string to hash
+     * @return The hash
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Hash a set of editions independently of their order, as the sum of {@link #hash(String)} of their PIDs. This is
+     * the hash kept as the edition hash of a fingerprint, see {@link EditionDiff#getWantedHash()}
+     *
+     * @param editionIDs The PIDs of the editions, without duplicates
+     * @return The hash
+     */
+    public static long hashEditions(Iterator<String> editionIDs) {
+        long hash = 0;
+        while (editionIDs.hasNext()) {
+            hash += hash(editionIDs.next());
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "TitleFingerprint{" +
+               "avisID='" + avisID + '\'' +
+               ", startDate='" + startDate + '\'' +
+               ", endDate='" + endDate + '\'' +
+               ", editionCount=" + editionCount +
+               '}';
+    }
+}
@@ -0,0 +1,178 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A file backed map from the DOMS PID of a newspaper object ("titelpost") to its {@link TitleFingerprint}. The least
+ * recently used fingerprints are evicted when there are more than the given maximum. The file is rewritten whenever a
+ * fingerprint is added or removed.
+ *
+ * Fingerprints are removed by every kind of run that changes relations, not only by the one that keeps them, so a
+ * newspaper object whose relations were changed elsewhere is not skipped. Such runs may be other processes, so the
+ * file is locked while it is read, changed and rewritten, and read again whenever another store has rewritten it since
+ * this store last read or wrote it, see {@link SharedStoreFile}.
+ */
+public class TitleFingerprintStore {
+    private static final Logger log = LoggerFactory.getLogger(TitleFingerprintStore.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SEPARATOR = "\t";
+    private final File file;
+    private final SharedStoreFile sharedFile;
+    private final Map<String, TitleFingerprint> fingerprints;
+
+    /**
+     * Constructor. Loads the fingerprints from the file if it exists.
+     *
+     * @param file The file to persist the fingerprints in
+     * @param maxEntries The maximum number of fingerprints to keep
+     * @throws IOException if the file exists but could not be read
+     */
+    public TitleFingerprintStore(File file, final int maxEntries) throws IOException {
+        this.file = file;
+        this.sharedFile = new SharedStoreFile(file);
+        this.fingerprints = new LinkedHashMap<String, TitleFingerprint>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TitleFingerprint> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            load(lock);
+        }
+    }
+
+    /**
+     * Get the fingerprint of a newspaper object
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object ("titelpost")
+     * @return The fingerprint, or null if none is known
+     * @throws IOException if the file was changed by another store, and could not be read again
+     */
+    public synchronized TitleFingerprint get(String titleDomsID) throws IOException {
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            return fingerprints.get(titleDomsID);
+        }
+    }
+
+    /**
+     * Store the fingerprint of a newspaper object, and persist the store
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object ("titelpost")
+     * @param fingerprint The fingerprint
+     * @throws IOException if the store could not be persisted
+     */
+    public synchronized void put(String titleDomsID, TitleFingerprint fingerprint) throws IOException {
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            fingerprints.put(titleDomsID, fingerprint);
+            save(lock);
+        }
+    }
+
+    /**
+     * Forget the fingerprint of a newspaper object, and persist the store
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object ("titelpost")
+     * @throws IOException if the store could not be persisted
+     */
+    public synchronized void remove(String titleDomsID) throws IOException {
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            if (fingerprints.remove(titleDomsID) != null) {
+                save(lock);
+            }
+        }
+    }
+
+    /**
+     * Forget the fingerprints of newspaper objects whose relations have been changed, and persist the store once
+     *
+     * @param titleDomsIDs The DOMS PIDs of the newspaper objects ("titelposter")
+     * @throws IOException if the store could not be persisted
+     */
+    public synchronized void removeAll(Collection<String> titleDomsIDs) throws IOException {
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            boolean changed = false;
+            for (String titleDomsID : titleDomsIDs) {
+                changed |= fingerprints.remove(titleDomsID) != null;
+            }
+            if (changed) {
+                save(lock);
+            }
+        }
+    }
+
+    /**
+     * Read the file again if another store has rewritten it since this store last read or wrote it
+     *
+     * @param lock The lock on the file
+     * @throws IOException if the file could not be read
+     */
+    private void reloadIfChanged(SharedStoreFile.Lock lock) throws IOException {
+        if (lock.isChanged()) {
+            fingerprints.clear();
+            load(lock);
+        }
+    }
+
+    private void load(SharedStoreFile.Lock lock) throws IOException {
+        if (!file.exists()) {
+            lock.markRead();
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length != 7) {
+                    log.warn("Ignoring malformed line '{}' in {}", line, file);
+                    continue;
+                }
+                fingerprints.put(fields[0], new TitleFingerprint(fields[1], fields[2], fields[3],
+                        Long.parseLong(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6])));
+            }
+        }
+        lock.markRead();
+        log.info("Loaded {} title fingerprints from {}", fingerprints.size(), file);
+    }
+
+    /**
+     * Write all fingerprints to a temporary file and move it in place, so a crash never leaves a partial store
+     *
+     * @param lock The lock on the file
+     * @throws IOException if the file could not be written
+     */
+    private void save(SharedStoreFile.Lock lock) throws IOException {
+        File temporary = lock.createTemporary();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF8))) {
+            for (Map.Entry<String, TitleFingerprint> entry : fingerprints.entrySet()) {
+                TitleFingerprint fingerprint = entry.getValue();
+                writer.write(entry.getKey() + SEPARATOR + fingerprint.getAvisID() + SEPARATOR
+                        + fingerprint.getStartDate() + SEPARATOR + fingerprint.getEndDate() + SEPARATOR
+                        + fingerprint.getModsHash() + SEPARATOR + fingerprint.getEditionCount() + SEPARATOR
+                        + fingerprint.getEditionHash() + "\n");
+            }
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        lock.replace(temporary);
+    }
+}
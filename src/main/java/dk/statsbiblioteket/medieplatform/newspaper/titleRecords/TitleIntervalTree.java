@@ -0,0 +1,132 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable interval tree over the date ranges of newspaper objects ("titelposter"), answering which ranges contain a
+ * date in O(log n + k) time for n ranges and k matches. Meant for the newspaper objects of one newspaper family, where
+ * ranges are usually adjacent but may overlap.
+ *
+ * The ranges are kept sorted on start date in an array, which is used as an implicit balanced binary search tree: the
+ * root of a subarray is its middle element. Each node also holds the largest end date in its subtree, so subtrees
+ * ending before the date can be skipped. Dates compare as in {@link TitleRange#contains(String)}.
+ */
+public class TitleIntervalTree {
+    private static final Comparator<TitleRange> START_ORDER = new Comparator<TitleRange>() {
+        @Override
+        public int compare(TitleRange a, TitleRange b) {
+            return startOf(a).compareTo(startOf(b));
+        }
+    };
+    private final TitleRange[] ranges;
+    /**
+     * Largest end date in the subtree of each node, or null if some range in the subtree has no end
+     */
+    private final String[] maxEnds;
+
+    /**
+     * Constructor
+     *
+     * @param titles The newspaper objects to index
+     */
+    public TitleIntervalTree(Collection<TitleRange> titles) {
+        ranges = titles.toArray(new TitleRange[titles.size()]);
+        Arrays.sort(ranges, START_ORDER);
+        maxEnds = new String[ranges.length];
+        computeMaxEnds(0, ranges.length);
+    }
+
+    /**
+     * Find the newspaper objects whose date range contains a date
+     *
+     * @param dateIssued The date
+     * @return The newspaper objects containing the date, in start date order. Empty if none do
+     */
+    public List<TitleRange> findTitles(String dateIssued) {
+        if (dateIssued.isEmpty() || ranges.length == 0) {
+            return Collections.emptyList();
+        }
+        List<TitleRange> matches = new ArrayList<>(1);
+        find(0, ranges.length, dateIssued, matches);
+        return matches;
+    }
+
+    /**
+     * Get the number of newspaper objects in the tree
+     *
+     * @return The number of newspaper objects
+     */
+    public int size() {
+        return ranges.length;
+    }
+
+    /**
+     * Collect the ranges of a subtree that contain a date
+     *
+     * @param from First index of the subtree, inclusive
+     * @param to Last index of the subtree, exclusive
+     * @param date The date
+     * @param matches The list to add matching ranges to
+     */
+    private void find(int from, int to, String date, List<TitleRange> matches) {
+        if (from >= to) {
+            return;
+        }
+        int node = (from + to) >>> 1;
+        if (maxEnds[node] != null && maxEnds[node].compareTo(date) < 0) {
+            // Every range in this subtree ends before the date
+            return;
+        }
+        find(from, node, date, matches);
+        if (startOf(ranges[node]).compareTo(date) > 0) {
+            // This range and every range to the right of it starts after the date
+            return;
+        }
+        if (ranges[node].contains(date)) {
+            matches.add(ranges[node]);
+        }
+        find(node + 1, to, date, matches);
+    }
+
+    /**
+     * Compute the largest end date of a subtree and of all subtrees below it
+     *
+     * @param from First index of the subtree, inclusive
+     * @param to Last index of the subtree, exclusive
+     * @return The largest end date of the subtree, null if a range has no end, or the empty string if the subtree
+     * is empty
+     */
+    private String computeMaxEnds(int from, int to) {
+        if (from >= to) {
+            return "";
+        }
+        int node = (from + to) >>> 1;
+        String end = ranges[node].getEndDate().trim().isEmpty() ? null : ranges[node].getEndDate();
+        String max = maxOf(maxOf(computeMaxEnds(from, node), computeMaxEnds(node + 1, to)), end);
+        maxEnds[node] = max;
+        return max;
+    }
+
+    /**
+     * The start date of a range as compared by {@link TitleRange#contains(String)}, where an open start is the empty
+     * string and smaller than any date
+     */
+    private static String startOf(TitleRange range) {
+        return range.getStartDate().trim().isEmpty() ? "" : range.getStartDate();
+    }
+
+    /**
+     * The larger of two end dates, where null is an open end and larger than any date
+     */
+    private static String maxOf(String a, String b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
@@ -0,0 +1,270 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Journal of the relation changes planned for one newspaper object ("titelpost"), and of those completed, so work on
+ * a newspaper object that was interrupted can be resumed without recomputing the changes or redoing those done.
+ *
+ * The journal is a tab separated file: a header with the fields the changes were computed from, one line per planned
+ * change, an end-of-plan marker, and then one line per completed change. Completed changes are flushed to disk
+ * periodically, so after a crash a few changes may be redone; changing a relation to what it already is does no harm.
+ *
+ * Editions that are about to be set inactive are written to disk before their state is changed, and recorded again
+ * once they are set active, so editions left inactive by a crash can be found and set active again.
+ */
+public class TitleJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(TitleJournal.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SEPARATOR = "\t";
+    private static final String HEADER = "TITLE";
+    private static final String PLAN = "PLAN";
+    private static final String PLANNED = "PLANNED";
+    private static final String DONE = "DONE";
+    private static final String DEACTIVATED = "DEACTIVATED";
+    private static final String REACTIVATED = "REACTIVATED";
+    /**
+     * Number of completed changes between flushes of the journal
+     */
+    static final int FLUSH_INTERVAL = 100;
+    private final File file;
+    private final Set<String> remainingAdds;
+    private final Set<String> remainingRemoves;
+    private final FileOutputStream out;
+    private Writer writer;
+    private int unflushed = 0;
+
+    private TitleJournal(File file, Set<String> remainingAdds, Set<String> remainingRemoves, FileOutputStream out) {
+        this.file = file;
+        this.remainingAdds = remainingAdds;
+        this.remainingRemoves = remainingRemoves;
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+    }
+
+    /**
+     * Get the journal file of a newspaper object
+     *
+     * @param directory The directory holding journals
+     * @param titleDomsID The DOMS PID of the newspaper object
+     * @return The journal file
+     */
+    public static File getFile(File directory, String titleDomsID) {
+        return new File(directory, titleDomsID.replace(':', '_') + ".journal");
+    }
+
+    /**
+     * Start a journal, writing the planned changes to it
+     *
+     * @param file The journal file, overwritten if it exists
+     * @param fingerprint The fields the changes were computed from
+     * @param editionsToAdd The DOMS PIDs of the editions to add relations from
+     * @param editionsToRemove The DOMS PIDs of the editions to remove relations from
+     * @return The journal, open for marking changes done
+     * @throws IOException if the journal could not be written
+     */
+    public static TitleJournal create(File file, TitleRange fingerprint, Collection<String> editionsToAdd,
+                                      Collection<String> editionsToRemove) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        TitleJournal journal = new TitleJournal(file, new LinkedHashSet<>(editionsToAdd),
+                new LinkedHashSet<>(editionsToRemove), new FileOutputStream(file));
+        Writer writer = journal.writer;
+        try {
+            writer.write(HEADER + SEPARATOR + fingerprint.getTitleDomsID() + SEPARATOR + fingerprint.getAvisID()
+                         + SEPARATOR + fingerprint.getStartDate() + SEPARATOR + fingerprint.getEndDate() + "\n");
+            for (String edition : editionsToAdd) {
+                writer.write(PLAN + SEPARATOR + RelationChange.Operation.ADD + SEPARATOR + edition + "\n");
+            }
+            for (String edition : editionsToRemove) {
+                writer.write(PLAN + SEPARATOR + RelationChange.Operation.REMOVE + SEPARATOR + edition + "\n");
+            }
+            writer.write(PLANNED + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Load a journal left by interrupted work, if it can be resumed. A journal that was only partly planned, or that
+     * was planned from other fields, is deleted.
+     *
+     * @param file The journal file
+     * @param fingerprint The current fields of the newspaper object
+     * @return The journal, open for marking changes done, or null if there is no journal to resume
+     * @throws IOException if the journal exists but could not be read
+     */
+    public static TitleJournal load(File file, TitleRange fingerprint) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Set<String> adds = new LinkedHashSet<>();
+        Set<String> removes = new LinkedHashSet<>();
+        boolean headerMatches = false;
+        boolean planned = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields[0].equals(HEADER) && fields.length == 5) {
+                    headerMatches = new TitleRange(fields[1], fields[2], fields[3], fields[4]).equals(fingerprint);
+                } else if (fields[0].equals(PLAN) && fields.length == 3 && !planned) {
+                    (fields[1].equals(RelationChange.Operation.ADD.name()) ? adds : removes).add(fields[2]);
+                } else if (fields[0].equals(PLANNED)) {
+                    planned = true;
+                } else if (fields[0].equals(DONE) && fields.length == 3 && planned) {
+                    (fields[1].equals(RelationChange.Operation.ADD.name()) ? adds : removes).remove(fields[2]);
+                }
+                // Anything else records state changes, or is a line cut short by a crash, and is ignored
+            }
+        }
+        if (!headerMatches || !planned) {
+            log.info("Discarding journal {}, which is {}", file, headerMatches ? "incomplete" : "out of date");
+            if (!file.delete()) {
+                throw new IOException("Could not delete " + file);
+            }
+            return null;
+        }
+        // A line cut short by a crash must not run into the next marker
+        TitleJournal journal = new TitleJournal(file, adds, removes, new FileOutputStream(file, true));
+        journal.writer.write("\n");
+        return journal;
+    }
+
+    /**
+     * Get the editions that a journal records as set inactive, but not as set active again. Work that was interrupted
+     * may have left them inactive. Read this before {@link #load(File, TitleRange)}, which may discard the journal.
+     *
+     * @param file The journal file
+     * @return The DOMS PIDs of the editions, in the order they were set inactive, empty if there is no journal
+     * @throws IOException if the journal exists but could not be read
+     */
+    public static List<String> getDeactivated(File file) throws IOException {
+        Set<String> deactivated = new LinkedHashSet<>();
+        if (!file.exists()) {
+            return new ArrayList<>(deactivated);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields[0].equals(DEACTIVATED) && fields.length == 2) {
+                    deactivated.add(fields[1]);
+                } else if (fields[0].equals(REACTIVATED) && fields.length == 2) {
+                    deactivated.remove(fields[1]);
+                }
+            }
+        }
+        return new ArrayList<>(deactivated);
+    }
+
+    /**
+     * Get the editions that relations are still to be added from
+     *
+     * @return The DOMS PIDs of the editions, in planned order
+     */
+    public List<String> getRemainingAdds() {
+        return new ArrayList<>(remainingAdds);
+    }
+
+    /**
+     * Get the editions that relations are still to be removed from
+     *
+     * @return The DOMS PIDs of the editions, in planned order
+     */
+    public List<String> getRemainingRemoves() {
+        return new ArrayList<>(remainingRemoves);
+    }
+
+    /**
+     * Record that a change is done. The record is flushed to disk every {@link #FLUSH_INTERVAL} changes and when the
+     * journal is closed.
+     *
+     * @param operation Whether the relation was added or removed
+     * @param editionDomsID The DOMS PID of the edition
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void markDone(RelationChange.Operation operation, String editionDomsID) throws IOException {
+        writer.write(DONE + SEPARATOR + operation + SEPARATOR + editionDomsID + "\n");
+        if (++unflushed >= FLUSH_INTERVAL) {
+            writer.flush();
+            unflushed = 0;
+        }
+    }
+
+    /**
+     * Record that editions are about to be set inactive. The record is flushed and synced to disk before returning, so
+     * the editions are found again if the process or machine crashes while they are inactive.
+     *
+     * @param editionDomsIDs The DOMS PIDs of the editions
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void markDeactivated(Collection<String> editionDomsIDs) throws IOException {
+        for (String edition : editionDomsIDs) {
+            writer.write(DEACTIVATED + SEPARATOR + edition + "\n");
+        }
+        writer.flush();
+        unflushed = 0;
+        out.getFD().sync();
+    }
+
+    /**
+     * Record that editions are set active again. The record is flushed with the next completed changes.
+     *
+     * @param editionDomsIDs The DOMS PIDs of the editions
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void markReactivated(Collection<String> editionDomsIDs) throws IOException {
+        for (String edition : editionDomsIDs) {
+            writer.write(REACTIVATED + SEPARATOR + edition + "\n");
+        }
+    }
+
+    /**
+     * Flush and close the journal, leaving it on disk to be resumed
+     *
+     * @throws IOException if the journal could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Close and delete the journal, when the work it records is finished
+     *
+     * @throws IOException if the journal could not be deleted
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+}
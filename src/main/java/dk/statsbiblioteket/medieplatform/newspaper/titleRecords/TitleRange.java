@@ -0,0 +1,89 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+/**
+ * The fields of a newspaper object ("titelpost") that decide which editions should have a relation to it: the
+ * newspaper ID and the date range.
+ */
+public class TitleRange {
+    private final String titleDomsID;
+    private final String avisID;
+    private final String startDate;
+    private final String endDate;
+
+    /**
+     * Constructor
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object ("titelpost")
+     * @param avisID The newspaper ID, for example "adresseavisen1759"
+     * @param startDate The start of the date range, or the empty string if open
+     * @param endDate The end of the date range, or the empty string if open
+     */
+    public TitleRange(String titleDomsID, String avisID, String startDate, String endDate) {
+        this.titleDomsID = titleDomsID;
+        this.avisID = avisID;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public String getTitleDomsID() {
+        return titleDomsID;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Check whether an edition issued on the given date should have a relation to this newspaper object. Dates are
+     * compared as strings, inclusive at both ends, like the range query used by {@link NewspaperIndex}. An empty start
+     * or end date leaves that end of the range open, but an edition without a date is never contained.
+     *
+     * @param dateIssued The date the edition was issued
+     * @return true if the date is in the range
+     */
+    public boolean contains(String dateIssued) {
+        return !dateIssued.isEmpty()
+               && (startDate.trim().isEmpty() || startDate.compareTo(dateIssued) <= 0)
+               && (endDate.trim().isEmpty() || dateIssued.compareTo(endDate) <= 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TitleRange that = (TitleRange) o;
+        return titleDomsID.equals(that.titleDomsID) && avisID.equals(that.avisID)
+               && startDate.equals(that.startDate) && endDate.equals(that.endDate);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = titleDomsID.hashCode();
+        result = 31 * result + avisID.hashCode();
+        result = 31 * result + startDate.hashCode();
+        result = 31 * result + endDate.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TitleRange{" +
+               "titleDomsID='" + titleDomsID + '\'' +
+               ", avisID='" + avisID + '\'' +
+               ", startDate='" + startDate + '\'' +
+               ", endDate='" + endDate + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,366 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the newspaper ID, date range and DOMS PID of all newspaper objects ("titelposter"), so the newspaper objects of
+ * an edition can be found without asking SBOI or parsing MODS. The newspaper objects are read from SBOI and the MODS
+ * in DOMS when first needed, and read again when they were read longer ago than a given age. Single newspaper objects
+ * are updated with {@link #put(TitleRange)} as their changes are seen.
+ *
+ * If given a file, the cache is persisted in it whenever it changes and loaded from it on start, so a new process
+ * does not read all newspaper objects again. Processes sharing the file, such as one reconciling newspaper objects and
+ * one polling for editions, lock it while reading and rewriting it, and read it again when another process has
+ * rewritten it, so they keep each other's changes and a newer read of all newspaper objects, see
+ * {@link SharedStoreFile}. The least recently used newspaper objects are evicted when there are more
+ * than the given maximum; looking up editions with the newspaper ID of an evicted newspaper object reads all newspaper
+ * objects again, so the maximum should be above the number of newspaper objects.
+ */
+public class TitleRangeCache {
+    private static final Logger log = LoggerFactory.getLogger(TitleRangeCache.class);
+    private static final String PREFIX = "titleRecords.titleRangeCache";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SEPARATOR = "\t";
+    private static final String LOADED_AT = "#loadedAt";
+    private final EnhancedFedora eFedora;
+    private final NewspaperIndex newspaperIndex;
+    private final File file;
+    private final SharedStoreFile sharedFile;
+    private final long maxAgeMillis;
+    private final ModsTitleExtractor modsTitleExtractor = new ModsTitleExtractor();
+    private final Map<String, TitleRange> titles;
+    // Newspaper IDs of evicted newspaper objects, whose other newspaper objects are not all there should be
+    private final Set<String> incompleteAvisIDs = new HashSet<>();
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter evictions;
+    private final Timer loads;
+    private TitleRangeIndex index;
+    private long loadedAt;
+
+    /**
+     * Constructor. Loads the cache from the file if it exists.
+     *
+     * @param eFedora The Fedora to read the MODS of newspaper objects from
+     * @param newspaperIndex The index to read the newspaper objects from
+     * @param file The file to persist the cache in, or null to keep it in memory only
+     * @param maxEntries The maximum number of newspaper objects to keep
+     * @param maxAgeMillis How long ago all newspaper objects may have been read before they are read again
+     * @param registry The registry to register hit, miss and eviction metrics in
+     * @throws IOException if the file exists but could not be read
+     */
+    public TitleRangeCache(EnhancedFedora eFedora, NewspaperIndex newspaperIndex, File file, final int maxEntries,
+                           long maxAgeMillis, MetricRegistry registry) throws IOException {
+        this.eFedora = eFedora;
+        this.newspaperIndex = newspaperIndex;
+        this.file = file;
+        this.sharedFile = file == null ? null : new SharedStoreFile(file);
+        this.maxAgeMillis = maxAgeMillis;
+        this.hits = registry.meter(MetricRegistry.name(PREFIX, "hits"));
+        this.misses = registry.meter(MetricRegistry.name(PREFIX, "misses"));
+        this.evictions = registry.meter(MetricRegistry.name(PREFIX, "evictions"));
+        this.loads = registry.timer(MetricRegistry.name(PREFIX, "loads"));
+        this.titles = new LinkedHashMap<String, TitleRange>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TitleRange> eldest) {
+                if (size() > maxEntries) {
+                    evictions.mark();
+                    incompleteAvisIDs.add(eldest.getValue().getAvisID());
+                    index = null;
+                    return true;
+                }
+                return false;
+            }
+        };
+        registry.register(MetricRegistry.name(PREFIX, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                synchronized (TitleRangeCache.this) {
+                    return titles.size();
+                }
+            }
+        });
+        if (sharedFile != null) {
+            try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+                readFile(lock);
+            }
+        }
+    }
+
+    /**
+     * Find the newspaper objects an edition should have a relation to
+     *
+     * @param avisID The newspaper ID of the edition
+     * @param dateIssued The date the edition was issued
+     * @return The newspaper objects with the same newspaper ID whose date range contains the date, possibly empty
+     * @throws BackendMethodFailedException if reading MODS from Fedora failed
+     * @throws BackendInvalidResourceException if a newspaper object could not be found in Fedora
+     * @throws BackendInvalidCredsException if not allowed to read from Fedora
+     * @throws XMLStreamException if the MODS of a newspaper object is not well formed
+     * @throws IOException if the cache could not be persisted after reading all newspaper objects
+     */
+    public synchronized List<TitleRange> findTitles(String avisID, String dateIssued)
+            throws BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException,
+            XMLStreamException, IOException {
+        if (sharedFile != null) {
+            // Another process may have read all newspaper objects more recently, or put some
+            try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+                reloadIfChanged(lock);
+            }
+        }
+        if (System.currentTimeMillis() - loadedAt > maxAgeMillis || incompleteAvisIDs.contains(avisID)) {
+            misses.mark();
+            load();
+        } else {
+            hits.mark();
+        }
+        if (index == null) {
+            index = new TitleRangeIndex();
+            for (TitleRange title : titles.values()) {
+                index.add(title);
+            }
+        }
+        List<TitleRange> found = index.findTitles(avisID, dateIssued);
+        for (TitleRange title : found) {
+            // Keeps the newspaper objects that are looked up from being evicted
+            titles.get(title.getTitleDomsID());
+        }
+        return found;
+    }
+
+    /**
+     * Check whether a newspaper object is cached, so the newspaper ID and date range it has are known. A newspaper
+     * object that is not cached may have been evicted, skipped or created since the newspaper objects were read.
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object
+     * @return True if the newspaper object is cached
+     */
+    public synchronized boolean contains(String titleDomsID) {
+        return titles.containsKey(titleDomsID);
+    }
+
+    /**
+     * Update a newspaper object, and persist the cache if it changed. A newspaper object without a newspaper ID is
+     * removed, as no edition can have a relation to it.
+     *
+     * @param title The newspaper ID and date range of the newspaper object
+     * @throws IOException if the cache could not be persisted
+     */
+    public synchronized void put(TitleRange title) throws IOException {
+        if (title.getAvisID().trim().isEmpty()) {
+            remove(title.getTitleDomsID());
+            return;
+        }
+        if (sharedFile == null) {
+            if (!title.equals(titles.put(title.getTitleDomsID(), title))) {
+                index = null;
+            }
+            return;
+        }
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            TitleRange previous = titles.put(title.getTitleDomsID(), title);
+            if (!title.equals(previous)) {
+                index = null;
+                save(lock);
+            }
+        }
+    }
+
+    /**
+     * Remove a newspaper object, and persist the cache if it changed
+     *
+     * @param titleDomsID The DOMS PID of the newspaper object
+     * @throws IOException if the cache could not be persisted
+     */
+    public synchronized void remove(String titleDomsID) throws IOException {
+        if (sharedFile == null) {
+            if (titles.remove(titleDomsID) != null) {
+                index = null;
+            }
+            return;
+        }
+        try (SharedStoreFile.Lock lock = sharedFile.lock()) {
+            reloadIfChanged(lock);
+            if (titles.remove(titleDomsID) != null) {
+                index = null;
+                save(lock);
+            }
+        }
+    }
+
+    /**
+     * Read all newspaper objects again when next needed
+     */
+    public synchronized void invalidate() {
+        loadedAt = 0;
+    }
+
+    /**
+     * Read all newspaper objects from SBOI and their MODS from DOMS, and persist the cache. The newspaper objects are
+     * read into a new map, which only replaces the cached ones when all have been read, so a failed read leaves the
+     * cache as it was, to be read again when next needed. A newspaper object whose MODS could not be found or parsed
+     * is skipped, keeping what was cached for it, if anything.
+     *
+     * The file is not locked while reading, which takes long. If another process has rewritten the file meanwhile, the
+     * newspaper objects it put or removed are kept, and if it read all newspaper objects after this read started, what
+     * it read is kept instead.
+     */
+    private void load() throws BackendMethodFailedException, BackendInvalidCredsException, IOException {
+        Timer.Context loadTimer = loads.time();
+        long startedAt = System.currentTimeMillis();
+        // The cached newspaper objects when reading started, to tell which were put or removed meanwhile
+        Map<String, TitleRange> before = new HashMap<>(titles);
+        Map<String, TitleRange> loaded = new LinkedHashMap<>();
+        int failed = 0;
+        Iterator<String> titleIDs = newspaperIndex.getAllTitleIDs();
+        while (titleIDs.hasNext()) {
+            String titleID = titleIDs.next();
+            TitleRange title;
+            try {
+                title = modsTitleExtractor.extract(titleID, eFedora.getXMLDatastreamContents(titleID, "MODS"));
+            } catch (BackendInvalidResourceException | XMLStreamException e) {
+                log.warn("Skipping {}, whose MODS could not be read", titleID, e);
+                failed++;
+                if (titles.containsKey(titleID)) {
+                    loaded.put(titleID, titles.get(titleID));
+                }
+                continue;
+            }
+            if (title.getAvisID().trim().isEmpty()) {
+                log.warn("Skipping {}, which has no newspaper ID", titleID);
+                continue;
+            }
+            loaded.put(titleID, title);
+        }
+        SharedStoreFile.Lock lock = sharedFile == null ? null : sharedFile.lock();
+        try {
+            if (lock != null && lock.isChanged()) {
+                readFile(lock);
+                if (loadedAt >= startedAt) {
+                    incompleteAvisIDs.clear();
+                    log.info("Kept the date ranges of {} newspaper objects read by another process in the {} ms this"
+                             + " one took to read them", titles.size(), loadTimer.stop() / 1000000);
+                    return;
+                }
+                for (Map.Entry<String, TitleRange> title : titles.entrySet()) {
+                    if (!title.getValue().equals(before.get(title.getKey()))) {
+                        loaded.put(title.getKey(), title.getValue());
+                    }
+                }
+                for (String titleID : before.keySet()) {
+                    if (!titles.containsKey(titleID)) {
+                        loaded.remove(titleID);
+                    }
+                }
+            }
+            incompleteAvisIDs.clear();
+            titles.clear();
+            titles.putAll(loaded);
+            index = null;
+            loadedAt = startedAt;
+            if (lock != null) {
+                save(lock);
+            }
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+        log.info("Read the date ranges of {} newspaper objects in {} ms, skipping {} that failed",
+                new Object[]{titles.size(), loadTimer.stop() / 1000000, failed});
+    }
+
+    /**
+     * Read the file again if another process has rewritten it since this one last read or wrote it
+     *
+     * @param lock The lock on the file
+     * @throws IOException if the file could not be read
+     */
+    private void reloadIfChanged(SharedStoreFile.Lock lock) throws IOException {
+        if (lock.isChanged()) {
+            readFile(lock);
+        }
+    }
+
+    /**
+     * Replace the cache with the contents of the file
+     *
+     * @param lock The lock on the file
+     * @throws IOException if the file could not be read
+     */
+    private void readFile(SharedStoreFile.Lock lock) throws IOException {
+        titles.clear();
+        index = null;
+        loadedAt = 0;
+        if (!file.exists()) {
+            lock.markRead();
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length == 2 && fields[0].equals(LOADED_AT)) {
+                    loadedAt = Long.parseLong(fields[1]);
+                } else if (fields.length == 4) {
+                    titles.put(fields[0], new TitleRange(fields[0], fields[1], fields[2], fields[3]));
+                } else {
+                    log.warn("Ignoring malformed line '{}' in {}", line, file);
+                }
+            }
+        }
+        lock.markRead();
+        log.info("Loaded {} newspaper object date ranges from {}", titles.size(), file);
+    }
+
+    /**
+     * Write the cache to a temporary file and move it in place, so a crash never leaves a partial cache
+     *
+     * @param lock The lock on the file
+     * @throws IOException if the file could not be written
+     */
+    private void save(SharedStoreFile.Lock lock) throws IOException {
+        File temporary = lock.createTemporary();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF8))) {
+            // The time all newspaper objects were last read, so a later process knows when to read them again
+            writer.write(LOADED_AT + SEPARATOR + loadedAt + "\n");
+            for (TitleRange title : titles.values()) {
+                writer.write(title.getTitleDomsID() + SEPARATOR + title.getAvisID() + SEPARATOR
+                        + title.getStartDate() + SEPARATOR + title.getEndDate() + "\n");
+            }
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        lock.replace(temporary);
+    }
+}
@@ -0,0 +1,65 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the date ranges of newspaper objects ("titelposter"), grouped by newspaper ID, answering which
+ * newspaper objects an edition should have a relation to. The newspaper objects of each newspaper ID are held in a
+ * {@link TitleIntervalTree}, which is built when first queried after a newspaper object has been added.
+ */
+public class TitleRangeIndex {
+    private final Map<String, List<TitleRange>> titlesByAvisID = new HashMap<>();
+    private final Map<String, TitleIntervalTree> treesByAvisID = new HashMap<>();
+
+    /**
+     * Add a newspaper object to the index
+     *
+     * @param title The newspaper ID and date range of the newspaper object
+     */
+    public void add(TitleRange title) {
+        List<TitleRange> titles = titlesByAvisID.get(title.getAvisID());
+        if (titles == null) {
+            titles = new ArrayList<>();
+            titlesByAvisID.put(title.getAvisID(), titles);
+        }
+        titles.add(title);
+        treesByAvisID.remove(title.getAvisID());
+    }
+
+    /**
+     * Find the newspaper objects an edition should have a relation to
+     *
+     * @param avisID The newspaper ID of the edition
+     * @param dateIssued The date the edition was issued
+     * @return The newspaper objects with the same newspaper ID whose date range contains the date, possibly empty
+     */
+    public List<TitleRange> findTitles(String avisID, String dateIssued) {
+        TitleIntervalTree tree = treesByAvisID.get(avisID);
+        if (tree == null) {
+            List<TitleRange> titles = titlesByAvisID.get(avisID);
+            if (titles == null) {
+                return Collections.emptyList();
+            }
+            tree = new TitleIntervalTree(titles);
+            treesByAvisID.put(avisID, tree);
+        }
+        return tree.findTitles(dateIssued);
+    }
+
+    /**
+     * Get the number of newspaper objects in the index
+     *
+     * @return The number of newspaper objects
+     */
+    public int size() {
+        int size = 0;
+        for (List<TitleRange> titles : titlesByAvisID.values()) {
+            size += titles.size();
+        }
+        return size;
+    }
+}
@@ -1,5 +1,7 @@
 package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
 
+import com.codahale.metrics.MetricRegistry;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
 import dk.statsbiblioteket.doms.central.connectors.EnhancedFedoraImpl;
 import dk.statsbiblioteket.sbutil.webservices.authentication.Credentials;
 import dk.statsbiblioteket.medieplatform.autonomous.*;
@@ -7,22 +9,82 @@ import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 public class TitleRecordRelationsMaintainerComponent {
 
     private static Logger log = LoggerFactory.getLogger(TitleRecordRelationsMaintainerComponent.class);
 
 
+    /**
+     * Name of the command that reconciles all newspaper objects in one pass, see {@link BulkReconciler}
+     */
+    public static final String BULK_COMMAND = "bulk";
+
+    /**
+     * The content model of editions in SBOI
+     */
+    private static final String EDITION_ITEM_TYPE = "doms:ContentModel_Edition";
+
+    /**
+     * Name of the command that applies a change plan, see {@link ChangePlanApplier}
+     */
+    public static final String APPLY_COMMAND = "apply";
+
+    /**
+     * Name of the command that reconciles a queue of newspaper objects largest first, see {@link TitleWorkScheduler}
+     */
+    public static final String TITLES_COMMAND = "titles";
+
+    /**
+     * Name of the command that polls for work over and over in the same JVM, see {@link TitleRecordsDaemon}
+     */
+    public static final String DAEMON_COMMAND = "daemon";
+
+    /**
+     * Name of the command that loads the classes used on every run without doing any work, see {@link StartupWarmup}
+     */
+    public static final String WARMUP_COMMAND = "warmup";
+
+    /**
+     * Name of the command that polls for new or changed editions instead of newspaper objects, see
+     * {@link RunnableEditionRelationsMaintainer}
+     */
+    public static final String EDITIONS_COMMAND = "editions";
+
     /**
      * This method reads a properties file either as the first parameter on the command line or as the system variable
      * newspaper.component.properties.file .
+     * If the first parameter is "bulk", the relations of all newspaper objects are reconciled in one pass instead, with
+     * the properties file as the second parameter.
+     * If the first parameter is "apply", the change plan given as the third parameter is applied, with the properties
+     * file as the second parameter.
+     * If the first parameter is "titles", the newspaper objects given as the following parameters, or all newspaper
+     * objects if none are given, are reconciled largest first, with the properties file as the second parameter.
+     * If the first parameter is "daemon", the component polls for work until the JVM is stopped, with the properties
+     * file as the second parameter.
+     * If the first parameter is "warmup", the classes used on every run are loaded and the time since the JVM started
+     * is printed, with the properties file as the second parameter.
+     * If the first parameter is "editions", the component polls for new or changed editions and gives each the
+     * relations it should have, with the properties file as the second parameter.
      *
-     * @param args an array of length 1, where the first entry is a path to the properties file
+     * @param args an array of length 1, where the first entry is a path to the properties file, or an array of length
+     *             2, where the first entry is "bulk" and the second is a path to the properties file, or an array of
+     *             length 3, where the first entry is "apply", the second is a path to the properties file and the third
+     *             is a path to the change plan, or an array of length 2 or more, where the first entry is "titles", the
+     *             second is a path to the properties file and the rest are PIDs of newspaper objects, or an array of
+     *             length 2, where the first entry is "daemon", "warmup" or "editions" and the second is a path to
+     *             the properties file
      */
     public static void main(String[] args) throws Exception {
         log.info("Entered " + TitleRecordRelationsMaintainerComponent.class);
@@ -31,7 +93,441 @@ public class TitleRecordRelationsMaintainerComponent {
 
     public static int doMain(String[] args) throws Exception {
         log.info("Starting with args {}", args);
+        if (args.length >= 1 && args[0].equals(BULK_COMMAND)) {
+            return doBulk(Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equals(APPLY_COMMAND)) {
+            return doApply(Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equals(TITLES_COMMAND)) {
+            return doTitles(Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equals(DAEMON_COMMAND)) {
+            return doDaemon(Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equals(EDITIONS_COMMAND)) {
+            return doEditions(Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equals(WARMUP_COMMAND)) {
+            Properties properties = readProperties(Arrays.copyOfRange(args, 1, args.length));
+            // Printed rather than logged, so it shows in the build output when the class data archive is made
+            System.out.println("Ready for work " + StartupWarmup.run(properties) + " ms after the JVM started");
+            return 0;
+        }
+        Properties properties = readProperties(args);
+        refusePlanFile(properties, "Polling for newspaper objects");
+        ReconciliationMetrics metrics = new ReconciliationMetrics(new MetricRegistry());
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, metrics.getRegistry());
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        NewspaperIndex newspaperIndex = createNewspaperIndex(properties, itemFactory, connectionPool);
+
+        metrics.startReporters(properties);
+        RunnableTitleRecordRelationsMaintainer component = null;
+        try {
+            component = new RunnableTitleRecordRelationsMaintainer(properties, eFedora, itemFactory, newspaperIndex,
+                    metrics, createPersistentTitleRangeCache(properties, eFedora, newspaperIndex,
+                    metrics.getRegistry()));
+            CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(properties,
+                    component, new DomsItemFactory());
+            log.info("result was: " + result);
+            return result.containsFailures();
+        } finally {
+            if (component != null) {
+                component.close();
+            }
+            metrics.close();
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Refuse a change plan file for a command that polls with the autonomous component framework. The framework records
+     * an event on every newspaper object worked on, so a dry run would record newspaper objects as done, or as failed,
+     * without changing their relations. Plans are made with the "titles" and "bulk" commands.
+     *
+     * @param properties the properties
+     * @param command the command, as the start of the error message
+     * @throws IllegalArgumentException if a change plan file is configured
+     */
+    private static void refusePlanFile(Properties properties, String command) {
+        if (!properties.getProperty(TitleRecordsConfigConstants.PLAN_FILE, "").trim().isEmpty()) {
+            throw new IllegalArgumentException(command + " records events on the newspaper objects it works on, so "
+                                               + TitleRecordsConfigConstants.PLAN_FILE + " can only be used with the"
+                                               + " titles and bulk commands");
+        }
+    }
+
+    /**
+     * Reconcile the relations of all newspaper objects in one pass, outside the autonomous component framework.
+     * If a change plan file is configured, the changes are written to it instead of applied.
+     *
+     * @param args the command line arguments following "bulk"
+     * @return 0 if all relations were reconciled, 1 if some editions could not be changed
+     * @throws Exception if the changes could not be planned
+     */
+    private static int doBulk(String[] args) throws Exception {
+        Properties properties = readProperties(args);
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, new MetricRegistry());
+        try {
+            return doBulk(properties, eFedora, createNewspaperIndex(properties, new DomsItemFactory(), connectionPool));
+        } finally {
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Reconcile the relations of all newspaper objects in one pass
+     *
+     * @param properties the properties
+     * @param eFedora the Fedora client
+     * @param newspaperIndex the SBOI index
+     * @return 0 if all relations were reconciled, 1 if some editions could not be changed
+     * @throws Exception if the changes could not be planned
+     */
+    private static int doBulk(Properties properties, EnhancedFedora eFedora, NewspaperIndex newspaperIndex)
+            throws Exception {
+        RelationMutationExecutor mutationExecutor = createMutationExecutor(properties);
+        try {
+            BulkReconciler reconciler = new BulkReconciler(eFedora, newspaperIndex,
+                    RunnableTitleRecordRelationsMaintainer.createRelationWriter(properties, eFedora), mutationExecutor,
+                    RunnableTitleRecordRelationsMaintainer.createFingerprintStore(properties));
+            ChangePlanWriter planWriter = RunnableTitleRecordRelationsMaintainer.createPlanWriter(properties);
+            if (planWriter != null) {
+                List<RelationChange> changes = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                for (EditionChange change : reconciler.plan()) {
+                    changes.addAll(RelationChange.of(change, now));
+                }
+                planWriter.append(changes);
+                log.info("Planned {} relation changes in {}", changes.size(), planWriter.getFile());
+                return 0;
+            }
+            List<RelationMutationExecutor.Failure<EditionChange>> failures = reconciler.run();
+            for (RelationMutationExecutor.Failure<EditionChange> failure : failures) {
+                log.error("Failed to change relations of {}", failure.getTarget().getEditionDomsID(),
+                        failure.getCause());
+            }
+            return failures.isEmpty() ? 0 : 1;
+        } finally {
+            mutationExecutor.close();
+        }
+    }
+
+    /**
+     * Apply a change plan, resuming from its checkpoint if there is one
+     *
+     * @param args the command line arguments following "apply"
+     * @return 0 if all changes were applied, 1 if some changes failed
+     * @throws Exception if the plan could not be read
+     */
+    private static int doApply(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new RuntimeException("Usage: apply <properties file> <change plan file>");
+        }
+        Properties properties = readProperties(args);
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        int batchSize = Integer.parseInt(properties.getProperty(TitleRecordsConfigConstants.APPLY_BATCH_SIZE, "1000"));
+
+        RelationMutationExecutor mutationExecutor = createMutationExecutor(properties);
+        try {
+            ChangePlanApplier applier = new ChangePlanApplier(
+                    RunnableTitleRecordRelationsMaintainer.createRelationWriter(properties, eFedora),
+                    mutationExecutor, batchSize,
+                    RunnableTitleRecordRelationsMaintainer.createFingerprintStore(properties));
+            long failed = applier.apply(new File(args[1]));
+            return failed == 0 ? 0 : 1;
+        } finally {
+            mutationExecutor.close();
+        }
+    }
+
+    /**
+     * Reconcile a queue of newspaper objects outside the autonomous component framework, largest first on
+     * {@link TitleRecordsConfigConstants#SCHEDULER_THREADS} threads
+     *
+     * @param args the command line arguments following "titles"
+     * @return 0 if all newspaper objects were reconciled, 1 if some failed
+     * @throws Exception if the newspaper objects could not be read
+     */
+    private static int doTitles(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("Usage: titles <properties file> [newspaper object PID...]");
+        }
         Properties properties = readProperties(args);
+        ReconciliationMetrics metrics = new ReconciliationMetrics(new MetricRegistry());
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, metrics.getRegistry());
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        NewspaperIndex newspaperIndex = createNewspaperIndex(properties, itemFactory, connectionPool);
+
+        metrics.startReporters(properties);
+        RunnableTitleRecordRelationsMaintainer maintainer = null;
+        try {
+            List<String> titleIDs = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+            if (titleIDs.isEmpty()) {
+                Iterator<String> allTitleIDs = newspaperIndex.getAllTitleIDs();
+                while (allTitleIDs.hasNext()) {
+                    titleIDs.add(allTitleIDs.next());
+                }
+            }
+            int threads = Integer.parseInt(properties.getProperty(TitleRecordsConfigConstants.SCHEDULER_THREADS, "1"));
+            maintainer = new RunnableTitleRecordRelationsMaintainer(properties, eFedora, itemFactory, newspaperIndex,
+                    metrics, createPersistentTitleRangeCache(properties, eFedora, newspaperIndex,
+                    metrics.getRegistry()));
+            TitleWorkScheduler scheduler = new TitleWorkScheduler(eFedora, newspaperIndex, maintainer, itemFactory,
+                    threads);
+            return scheduler.run(titleIDs) == 0 ? 0 : 1;
+        } finally {
+            if (maintainer != null) {
+                maintainer.close();
+            }
+            metrics.close();
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Poll for work with the autonomous component framework over and over, keeping the clients and the maintainer
+     * between polls, until the JVM is asked to stop. On shutdown, the newspaper objects being worked on are finished,
+     * those not yet started in the running poll are declined, and the resources are closed before the JVM halts.
+     *
+     * @param args the command line arguments following "daemon"
+     * @return 0 when stopped
+     * @throws Exception if the daemon could not be started
+     */
+    private static int doDaemon(String[] args) throws Exception {
+        final Properties properties = readProperties(args);
+        refusePlanFile(properties, "The daemon");
+        ReconciliationMetrics metrics = new ReconciliationMetrics(new MetricRegistry());
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, metrics.getRegistry());
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        final DomsItemFactory itemFactory = new DomsItemFactory();
+        NewspaperIndex newspaperIndex = createNewspaperIndex(properties, itemFactory, connectionPool);
+        long pollInterval = Long.parseLong(properties.getProperty(
+                TitleRecordsConfigConstants.DAEMON_POLL_INTERVAL, "60")) * 1000;
+        String statusPort = properties.getProperty(TitleRecordsConfigConstants.DAEMON_STATUS_PORT, "").trim();
+        final long shutdownTimeout = Long.parseLong(properties.getProperty(
+                TitleRecordsConfigConstants.DAEMON_SHUTDOWN_TIMEOUT, "600")) * 1000;
+        final boolean pollEditions = Boolean.parseBoolean(properties.getProperty(
+                TitleRecordsConfigConstants.DAEMON_POLL_EDITIONS, "false"));
+
+        metrics.startReporters(properties);
+        // Closed by whichever finishes first, the shutdown hook or this method, and by the other only once closed
+        final DaemonResources resources = new DaemonResources();
+        resources.add(connectionPool);
+        resources.add(metrics);
+        try {
+            // The date ranges of the newspaper objects are kept between polls for editions, and updated as soon as
+            // a newspaper object is worked on
+            TitleRangeCache titleRangeCache = pollEditions
+                    ? createTitleRangeCache(properties, eFedora, newspaperIndex, metrics.getRegistry())
+                    : createPersistentTitleRangeCache(properties, eFedora, newspaperIndex, metrics.getRegistry());
+            // One fingerprint store is shared, so removals by the edition polls are seen by the newspaper object polls
+            TitleFingerprintStore fingerprintStore = RunnableTitleRecordRelationsMaintainer.createFingerprintStore(
+                    properties);
+            final RunnableTitleRecordRelationsMaintainer maintainer = new RunnableTitleRecordRelationsMaintainer(
+                    properties, eFedora, itemFactory, newspaperIndex, metrics, titleRangeCache, fingerprintStore);
+            resources.add(maintainer);
+            final RunnableComponent<Item> editionComponent = pollEditions ? new RunnableEditionRelationsMaintainer(
+                    properties, eFedora, newspaperIndex, titleRangeCache, metrics, fingerprintStore) : null;
+            final Properties editionProperties = pollEditions ? createEditionProperties(properties) : null;
+            final TitleRecordsDaemon daemon = new TitleRecordsDaemon(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(properties,
+                            maintainer, itemFactory);
+                    log.info("result was: " + result);
+                    int failures = result.containsFailures();
+                    if (editionComponent != null && !maintainer.isStopping()) {
+                        result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(editionProperties,
+                                editionComponent, itemFactory);
+                        log.info("result for editions was: " + result);
+                        failures += result.containsFailures();
+                    }
+                    return failures;
+                }
+            }, pollInterval);
+            if (!statusPort.isEmpty()) {
+                resources.add(new DaemonStatusServer(daemon, properties.getProperty(
+                        TitleRecordsConfigConstants.DAEMON_STATUS_HOST), Integer.parseInt(statusPort)));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread("daemon-shutdown") {
+                @Override
+                public void run() {
+                    log.info("Shutting down, waiting up to {} ms for the newspaper objects being worked on",
+                            shutdownTimeout);
+                    // The newspaper objects not yet started in the running poll are declined, and no poll is started
+                    maintainer.stop();
+                    daemon.stop();
+                    try {
+                        if (!daemon.awaitTermination(shutdownTimeout)) {
+                            log.warn("The running poll did not finish in time");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        // The JVM halts when the hook returns, so the resources are closed here rather than left to
+                        // the main thread
+                        resources.close();
+                    }
+                }
+            });
+            daemon.run();
+            return 0;
+        } finally {
+            resources.close();
+        }
+    }
+
+    /**
+     * The resources of the daemon, closed once, in the reverse order they were added. Closing waits for a close
+     * already in progress in another thread, so the shutdown hook does not return while the main thread closes them.
+     */
+    private static class DaemonResources implements Closeable {
+        private final List<Closeable> resources = new ArrayList<>();
+        private boolean closed;
+
+        synchronized void add(Closeable resource) {
+            resources.add(resource);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                try {
+                    resources.get(i).close();
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not close {}", resources.get(i), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Poll for new or changed editions with the autonomous component framework, and give each the relations to
+     * newspaper objects it should have
+     *
+     * @param args the command line arguments following "editions"
+     * @return the result of the autonomous component framework
+     * @throws Exception if the component could not be run
+     */
+    private static int doEditions(String[] args) throws Exception {
+        Properties properties = readProperties(args);
+        ReconciliationMetrics metrics = new ReconciliationMetrics(new MetricRegistry());
+        HttpConnectionPool connectionPool = new HttpConnectionPool(properties, metrics.getRegistry());
+        EnhancedFedora eFedora = createEnhancedFedora(properties);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        NewspaperIndex newspaperIndex = createNewspaperIndex(properties, itemFactory, connectionPool);
+
+        metrics.startReporters(properties);
+        try {
+            RunnableComponent<Item> component = new RunnableEditionRelationsMaintainer(properties, eFedora,
+                    newspaperIndex, createTitleRangeCache(properties, eFedora, newspaperIndex, metrics.getRegistry()),
+                    metrics, RunnableTitleRecordRelationsMaintainer.createFingerprintStore(properties));
+            CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(
+                    createEditionProperties(properties), component, itemFactory);
+            log.info("result was: " + result);
+            return result.containsFailures();
+        } finally {
+            metrics.close();
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Create the properties for polling for editions, which are those for polling for newspaper objects with the item
+     * type and events changed to those of editions
+     *
+     * @param properties the properties
+     * @return the properties for polling for editions
+     * @throws IllegalArgumentException if no events are required of editions, as the first poll would then work on
+     * every edition
+     */
+    private static Properties createEditionProperties(Properties properties) {
+        String pastSuccessfulEvents = properties.getProperty(
+                TitleRecordsConfigConstants.EDITIONS_PAST_SUCCESSFUL_EVENTS, "").trim();
+        if (pastSuccessfulEvents.isEmpty()) {
+            throw new IllegalArgumentException(TitleRecordsConfigConstants.EDITIONS_PAST_SUCCESSFUL_EVENTS
+                                               + " must be set when polling for editions, or every edition would be"
+                                               + " worked on in the first poll");
+        }
+        Properties editionProperties = new Properties();
+        editionProperties.putAll(properties);
+        editionProperties.setProperty(ConfigConstants.ITEM_TYPES, EDITION_ITEM_TYPE);
+        editionProperties.setProperty(ConfigConstants.AUTONOMOUS_OLDEVENTS,
+                RunnableEditionRelationsMaintainer.EDITION_RELATIONS_GENERATED);
+        editionProperties.setProperty(ConfigConstants.AUTONOMOUS_PAST_SUCCESSFUL_EVENTS, pastSuccessfulEvents);
+        return editionProperties;
+    }
+
+    /**
+     * Create the cache of the date ranges of newspaper objects configured in the properties
+     *
+     * @param properties the properties
+     * @param eFedora the Fedora client
+     * @param newspaperIndex the SBOI index
+     * @param registry the registry to register the metrics of the cache in
+     * @return the cache
+     * @throws IOException if the file of the cache exists but could not be read
+     */
+    private static TitleRangeCache createTitleRangeCache(Properties properties, EnhancedFedora eFedora,
+                                                         NewspaperIndex newspaperIndex, MetricRegistry registry)
+            throws IOException {
+        String file = properties.getProperty(TitleRecordsConfigConstants.TITLE_RANGE_CACHE_FILE, "");
+        int maxEntries = Integer.parseInt(properties.getProperty(
+                TitleRecordsConfigConstants.TITLE_RANGE_CACHE_MAX_ENTRIES, "100000"));
+        long maxAge = Long.parseLong(properties.getProperty(
+                TitleRecordsConfigConstants.EDITIONS_TITLE_CACHE_MAX_AGE, "3600")) * 1000;
+        return new TitleRangeCache(eFedora, newspaperIndex, file.trim().isEmpty() ? null : new File(file), maxEntries,
+                maxAge, registry);
+    }
+
+    /**
+     * Create the cache of the date ranges of newspaper objects configured in the properties, if it is persisted.
+     * Polling for newspaper objects then keeps the file up to date for polling for editions in another process.
+     *
+     * @param properties the properties
+     * @param eFedora the Fedora client
+     * @param newspaperIndex the SBOI index
+     * @param registry the registry to register the metrics of the cache in
+     * @return the cache, or null if it is not persisted
+     * @throws IOException if the file of the cache exists but could not be read
+     */
+    private static TitleRangeCache createPersistentTitleRangeCache(Properties properties, EnhancedFedora eFedora,
+                                                                   NewspaperIndex newspaperIndex,
+                                                                   MetricRegistry registry) throws IOException {
+        if (properties.getProperty(TitleRecordsConfigConstants.TITLE_RANGE_CACHE_FILE, "").trim().isEmpty()) {
+            return null;
+        }
+        return createTitleRangeCache(properties, eFedora, newspaperIndex, registry);
+    }
+
+    /**
+     * Create the relation mutation executor configured in the properties
+     *
+     * @param properties the properties
+     * @return the executor
+     */
+    private static RelationMutationExecutor createMutationExecutor(Properties properties) {
+        return new RelationMutationExecutor(Integer.parseInt(
+                properties.getProperty(TitleRecordsConfigConstants.MUTATION_PARALLELISM, "1")));
+    }
+
+    /**
+     * Create the Fedora client configured in the properties, with writes limited as configured
+     *
+     * @param properties the properties
+     * @return the Fedora client
+     */
+    private static EnhancedFedora createEnhancedFedora(Properties properties) throws Exception {
+        // The Fedora client uses the HTTP stack of the JVM, which cannot be given a connection pool. It is configured
+        // for the whole JVM by the scripts, see conf/javaOptions.sh
         Credentials creds = new Credentials(properties.getProperty(ConfigConstants.DOMS_USERNAME),
                 properties.getProperty(ConfigConstants.DOMS_PASSWORD));
         String fedoraLocation = properties.getProperty(ConfigConstants.DOMS_URL);
@@ -42,18 +538,24 @@ public class TitleRecordRelationsMaintainerComponent {
                 properties.getProperty(ConfigConstants.DOMS_PIDGENERATOR_URL),
                 null,
                 fedoraRetries, fedoraDelayBetweenRetries);
-        DomsItemFactory itemFactory = new DomsItemFactory();
+        return ThrottledFedora.create(eFedora, properties);
+    }
 
+    /**
+     * Create the SBOI index configured in the properties
+     *
+     * @param properties the properties
+     * @param itemFactory factory to create new items
+     * @param connectionPool the pool of HTTP connections to use
+     * @return the SBOI index
+     */
+    private static NewspaperIndex createNewspaperIndex(Properties properties, ItemFactory<Item> itemFactory,
+                                                       HttpConnectionPool connectionPool) {
         String summaLocation = properties.getProperty(ConfigConstants.AUTONOMOUS_SBOI_URL);
-        HttpSolrServer summaSearchServer = new SolrJConnector(summaLocation).getSolrServer();
-        NewspaperIndex newspaperIndex = new NewspaperIndex(summaSearchServer, itemFactory);
-
-        RunnableComponent<Item> component = new RunnableTitleRecordRelationsMaintainer(properties, eFedora, itemFactory,
-                newspaperIndex);
-        CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(properties, component,new
-                DomsItemFactory());
-        log.info("result was: " + result);
-        return result.containsFailures();
+        HttpSolrServer summaSearchServer = new HttpSolrServer(summaLocation, connectionPool.getHttpClient());
+        int sboiPageSize = Integer.parseInt(properties.getProperty(TitleRecordsConfigConstants.SBOI_PAGE_SIZE,
+                String.valueOf(NewspaperIndex.DEFAULT_PAGE_SIZE)));
+        return new NewspaperIndex(summaSearchServer, itemFactory, sboiPageSize);
     }
 
     /**
@@ -0,0 +1,235 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+/**
+ * Property names specific to the title records maintainer. The general properties are found in
+ * {@link dk.statsbiblioteket.medieplatform.autonomous.ConfigConstants}
+ */
+public class TitleRecordsConfigConstants {
+
+    /**
+     * Number of editions fetched from SBOI per page, when paging through the editions of a newspaper object
+     */
+    public static final String SBOI_PAGE_SIZE = "titleRecords.sboi.pageSize";
+
+    /**
+     * When to look up the relations of an edition before changing them, one of "always", "never" or "onConflict".
+     * See {@link RelationCheck}. Only used by the "api" relation writer
+     */
+    public static final String RELATION_CHECK = "titleRecords.relationCheck";
+
+    /**
+     * How relation changes are written to DOMS. "api" writes each added or removed relation with its own Fedora API
+     * call. "relsExt" rewrites the RELS-EXT datastream of each edition once with all its changes
+     */
+    public static final String RELATION_WRITER = "titleRecords.relationWriter";
+
+    /**
+     * Set to true to confirm that nothing but this component changes the RELS-EXT datastream of editions while it runs.
+     * The "relsExt" relation writer cannot detect changes made by others between its read and its write, so it is
+     * refused unless this is set
+     */
+    public static final String RELATION_WRITER_EXCLUSIVE = "titleRecords.relationWriter.exclusive";
+
+    /**
+     * The maximum number of editions whose relations are changed at the same time
+     */
+    public static final String MUTATION_PARALLELISM = "titleRecords.mutationParallelism";
+
+    /**
+     * If true, published editions are found by looking up their state, and are set inactive before their relations are
+     * changed and active again afterwards, a chunk at a time. Needs {@link #JOURNAL_DIRECTORY}. If false, each edition
+     * is only set inactive after changing it has failed
+     */
+    public static final String BATCH_STATE_CHANGES = "titleRecords.batchStateChanges";
+
+    /**
+     * The number of editions set inactive, changed and set active again at a time when state changes are batched, which
+     * bounds how long an edition is unpublished
+     */
+    public static final String BATCH_STATE_CHANGES_CHUNK_SIZE = "titleRecords.batchStateChanges.chunkSize";
+
+    /**
+     * File in which to keep a fingerprint of each newspaper object after its relations are reconciled. Newspaper
+     * objects whose fingerprint has not changed are skipped. If not set, no newspaper objects are skipped
+     */
+    public static final String FINGERPRINT_STORE_FILE = "titleRecords.fingerprintStore.file";
+
+    /**
+     * The maximum number of fingerprints to keep, the least recently used are evicted first
+     */
+    public static final String FINGERPRINT_STORE_MAX_ENTRIES = "titleRecords.fingerprintStore.maxEntries";
+
+    /**
+     * If true, a newspaper object whose fields and number of editions are unchanged is only skipped if the PIDs of its
+     * editions in SBOI also hash to the same as when it was last reconciled, catching editions that were replaced by
+     * others. Hashing pages through the PIDs in SBOI, but reads nothing from DOMS
+     */
+    public static final String VERIFY_EDITION_HASH = "titleRecords.fingerprintStore.verifyEditionHash";
+
+    /**
+     * File to write planned relation changes to, instead of changing relations in DOMS (dry run). If not set,
+     * relations are changed. The file must not already hold changes. A plan is applied with the "apply" command. Only
+     * used by the "titles" and "bulk" commands, and refused by those that record events on what they work on
+     */
+    public static final String PLAN_FILE = "titleRecords.planFile";
+
+    /**
+     * Number of lines of a change plan to apply between checkpoints
+     */
+    public static final String APPLY_BATCH_SIZE = "titleRecords.apply.batchSize";
+
+    /**
+     * Directory in which to journal the relation changes of each newspaper object while they are applied, so work that
+     * is interrupted resumes where it stopped. If not set, interrupted work starts over
+     */
+    public static final String JOURNAL_DIRECTORY = "titleRecords.journalDirectory";
+
+    /**
+     * The maximum average number of writes to Fedora per second. If 0 or not set, writes are not rate limited
+     */
+    public static final String FEDORA_WRITES_PER_SECOND = "titleRecords.fedora.writesPerSecond";
+
+    /**
+     * The number of writes to Fedora that may be made at once after a pause, when writes are rate limited
+     */
+    public static final String FEDORA_WRITE_BURST = "titleRecords.fedora.writeBurst";
+
+    /**
+     * The maximum number of writes to Fedora at the same time. The limit is lowered while Fedora is slow or failing,
+     * and raised again while it copes. If 0 or not set, the number of writes is not limited
+     */
+    public static final String FEDORA_MAX_CONCURRENT_WRITES = "titleRecords.fedora.maxConcurrentWrites";
+
+    /**
+     * The lowest the limit on writes to Fedora at the same time may go
+     */
+    public static final String FEDORA_MIN_CONCURRENT_WRITES = "titleRecords.fedora.minConcurrentWrites";
+
+    /**
+     * Writes to Fedora slower than this many milliseconds lower the limit on writes at the same time
+     */
+    public static final String FEDORA_WRITE_LATENCY_THRESHOLD = "titleRecords.fedora.writeLatencyThresholdMillis";
+
+    /**
+     * If true, metrics are published through JMX
+     */
+    public static final String METRICS_JMX = "titleRecords.metrics.jmx";
+
+    /**
+     * Seconds between logging all metrics. If 0 or not set, metrics are not logged
+     */
+    public static final String METRICS_LOG_INTERVAL = "titleRecords.metrics.logIntervalSeconds";
+
+    /**
+     * Directory to write metrics to as CSV files, one per metric. If not set, metrics are not written to CSV files
+     */
+    public static final String METRICS_CSV_DIRECTORY = "titleRecords.metrics.csvDirectory";
+
+    /**
+     * Seconds between writing metrics to CSV files
+     */
+    public static final String METRICS_CSV_INTERVAL = "titleRecords.metrics.csvIntervalSeconds";
+
+    /**
+     * If true, and only the date range of a newspaper object has changed since its relations were last reconciled,
+     * only the editions between the old and the new date range are fetched from SBOI and changed. Requires
+     * {@link #FINGERPRINT_STORE_FILE}, which holds the last reconciled date range
+     */
+    public static final String RANGE_DELTA_QUERIES = "titleRecords.rangeDeltaQueries";
+
+    /**
+     * The maximum number of pooled HTTP connections to SBOI
+     */
+    public static final String HTTP_MAX_CONNECTIONS = "titleRecords.http.maxConnections";
+
+    /**
+     * The maximum number of pooled HTTP connections to each host. Should be at least the number of threads making
+     * requests
+     */
+    public static final String HTTP_MAX_CONNECTIONS_PER_ROUTE = "titleRecords.http.maxConnectionsPerRoute";
+
+    /**
+     * The longest time in seconds an idle pooled HTTP connection is kept alive, unless the server says less
+     */
+    public static final String HTTP_KEEP_ALIVE_SECONDS = "titleRecords.http.keepAliveSeconds";
+
+    /**
+     * Milliseconds to wait for an HTTP connection to be established
+     */
+    public static final String HTTP_CONNECT_TIMEOUT = "titleRecords.http.connectTimeoutMillis";
+
+    /**
+     * Milliseconds to wait for data from an HTTP connection
+     */
+    public static final String HTTP_READ_TIMEOUT = "titleRecords.http.readTimeoutMillis";
+
+    /**
+     * Milliseconds to wait for a free pooled HTTP connection when all are in use
+     */
+    public static final String HTTP_CONNECTION_WAIT_TIMEOUT = "titleRecords.http.connectionWaitTimeoutMillis";
+
+    /**
+     * If true, pooled HTTP connections ask for compressed responses
+     */
+    public static final String HTTP_COMPRESSION = "titleRecords.http.compression";
+
+    /**
+     * The number of newspaper objects reconciled at the same time by the "titles" command. The relation changes of a
+     * large newspaper object are spread over idle threads when {@link #MUTATION_PARALLELISM} is at least this
+     */
+    public static final String SCHEDULER_THREADS = "titleRecords.scheduler.threads";
+
+    /**
+     * Seconds the "daemon" command waits after a poll for work before starting the next
+     */
+    public static final String DAEMON_POLL_INTERVAL = "titleRecords.daemon.pollIntervalSeconds";
+
+    /**
+     * Port on which the "daemon" command serves its health and status over HTTP, 0 for any free port. If not set, the
+     * status is not served
+     */
+    public static final String DAEMON_STATUS_PORT = "titleRecords.daemon.statusPort";
+
+    /**
+     * Host name or address on which the "daemon" command serves its health and status. If not set, only the loopback
+     * address is listened on, as the status has no authentication
+     */
+    public static final String DAEMON_STATUS_HOST = "titleRecords.daemon.statusHost";
+
+    /**
+     * Seconds the "daemon" command waits for a running poll to finish when the JVM is asked to stop
+     */
+    public static final String DAEMON_SHUTDOWN_TIMEOUT = "titleRecords.daemon.shutdownTimeoutSeconds";
+
+    /**
+     * If true, the "daemon" command also polls for new or changed editions after each poll for newspaper objects
+     */
+    public static final String DAEMON_POLL_EDITIONS = "titleRecords.daemon.pollEditions";
+
+    /**
+     * Seconds the date ranges of newspaper objects are kept when polling for editions, before they are all read again
+     */
+    public static final String EDITIONS_TITLE_CACHE_MAX_AGE = "titleRecords.editions.titleCacheMaxAgeSeconds";
+
+    /**
+     * Comma separated events an edition must have before it is given relations when polling for editions. Must be set
+     * when polling for editions, as every edition without the edition event would be worked on otherwise
+     */
+    public static final String EDITIONS_PAST_SUCCESSFUL_EVENTS = "titleRecords.editions.pastSuccessfulEvents";
+
+    /**
+     * File in which to keep the date ranges of newspaper objects used when polling for editions, so they are not all
+     * read again on start. When set, polling for newspaper objects updates the file too. If not set, the date ranges
+     * are kept in memory only
+     */
+    public static final String TITLE_RANGE_CACHE_FILE = "titleRecords.titleRangeCache.file";
+
+    /**
+     * The maximum number of newspaper object date ranges to keep, the least recently used are evicted first. Should be
+     * above the number of newspaper objects
+     */
+    public static final String TITLE_RANGE_CACHE_MAX_ENTRIES = "titleRecords.titleRangeCache.maxEntries";
+
+    private TitleRecordsConfigConstants() {
+    }
+}
@@ -0,0 +1,170 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a poll for work over and over in the same JVM, waiting a fixed interval between the end of one poll and the
+ * start of the next. Clients, caches and compiled code are kept between polls, instead of starting a JVM for each.
+ *
+ * Stopping the daemon does not interrupt a poll that is running, it only keeps the next one from starting, so the
+ * newspaper objects being worked on are finished.
+ */
+public class TitleRecordsDaemon {
+    private static final Logger log = LoggerFactory.getLogger(TitleRecordsDaemon.class);
+    private final Callable<Integer> poll;
+    private final long pollIntervalMillis;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile State state = State.STARTING;
+    private volatile long polls;
+    private volatile long failedPolls;
+    private volatile long lastPollStart;
+    private volatile long lastPollMillis;
+    private volatile int lastPollFailures;
+    private volatile String lastError;
+
+    /**
+     * The states of the daemon, in the order they are passed through
+     */
+    public enum State {
+        STARTING, POLLING, WAITING, STOPPING, STOPPED
+    }
+
+    /**
+     * Constructor
+     *
+     * @param poll The poll to run. Returns the number of items that failed
+     * @param pollIntervalMillis Milliseconds to wait after a poll before starting the next
+     */
+    public TitleRecordsDaemon(Callable<Integer> poll, long pollIntervalMillis) {
+        if (pollIntervalMillis < 0) {
+            throw new IllegalArgumentException("Poll interval must not be negative, was " + pollIntervalMillis);
+        }
+        this.poll = poll;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Poll until stopped. A poll that throws an exception is logged and counted, and polling continues.
+     *
+     * @throws IllegalStateException if the daemon has already been run
+     */
+    public void run() {
+        synchronized (this) {
+            if (state != State.STARTING) {
+                throw new IllegalStateException("The daemon has already been run");
+            }
+            state = State.WAITING;
+        }
+        log.info("Polling for work every {} ms", pollIntervalMillis);
+        try {
+            while (!isStopRequested()) {
+                runPoll();
+                if (isStopRequested()) {
+                    break;
+                }
+                state = State.WAITING;
+                if (stopped.await(pollIntervalMillis, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting to poll, stopping");
+            Thread.currentThread().interrupt();
+        } finally {
+            state = State.STOPPED;
+            log.info("Stopped after {} polls", polls);
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * Ask the daemon to stop. A running poll is allowed to finish, but no new poll is started.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (state != State.STOPPED) {
+                state = State.STOPPING;
+            }
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Wait for the daemon to stop after {@link #stop()}
+     *
+     * @param timeoutMillis The longest time to wait
+     * @return true if the daemon stopped, false if it was still running after the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return terminated.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether the daemon is working as it should: it has not stopped, and the last poll did not throw an exception
+     *
+     * @return true if healthy
+     */
+    public boolean isHealthy() {
+        return state != State.STOPPED && lastError == null;
+    }
+
+    /**
+     * Get the state of the daemon and the outcome of its polls, as lines of "name=value"
+     *
+     * @return The status
+     */
+    public String getStatus() {
+        return "state=" + state + "\n"
+                + "polls=" + polls + "\n"
+                + "failedPolls=" + failedPolls + "\n"
+                + "lastPollStart=" + lastPollStart + "\n"
+                + "lastPollMillis=" + lastPollMillis + "\n"
+                + "lastPollFailures=" + lastPollFailures + "\n"
+                + "lastError=" + (lastError == null ? "" : lastError) + "\n";
+    }
+
+    /**
+     * Get the state of the daemon
+     *
+     * @return The state
+     */
+    public State getState() {
+        return state;
+    }
+
+    private boolean isStopRequested() {
+        return stopped.getCount() == 0;
+    }
+
+    /**
+     * Run one poll and record its outcome
+     */
+    private void runPoll() {
+        state = State.POLLING;
+        lastPollStart = System.currentTimeMillis();
+        try {
+            lastPollFailures = poll.call();
+            lastError = null;
+            log.debug("Poll finished with {} failures", lastPollFailures);
+        } catch (Exception e) {
+            failedPolls++;
+            lastError = e.toString();
+            log.error("Poll failed", e);
+        } finally {
+            lastPollMillis = System.currentTimeMillis() - lastPollStart;
+            polls++;
+        }
+        synchronized (this) {
+            if (isStopRequested()) {
+                state = State.STOPPING;
+            }
+        }
+    }
+}
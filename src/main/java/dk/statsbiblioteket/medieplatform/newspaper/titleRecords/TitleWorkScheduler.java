@@ -0,0 +1,272 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reconciles a queue of newspaper objects ("titelposter") on a number of threads, ordered by size so the threads
+ * finish at about the same time. The size of each newspaper object is estimated up front by counting its editions in
+ * SBOI, without fetching them. The largest are started first and the smallest are left to fill in at the end
+ * (longest processing time first), so one large newspaper object does not start last and run alone.
+ *
+ * The relation changes of each newspaper object are run by the mutation executor of the maintainer, which is shared
+ * by all threads. With {@link TitleRecordsConfigConstants#MUTATION_PARALLELISM} at least the number of threads, the
+ * changes of a large newspaper object are spread over all threads that are not busy with other newspaper objects.
+ *
+ * Newspaper objects with the same newspaper ID can share editions, so they are reconciled one after another on the same
+ * thread, never at the same time. This keeps one from unpublishing editions another is changing, see
+ * {@link TitleRecordsConfigConstants#BATCH_STATE_CHANGES}. The MODS read while estimating is not read again when
+ * reconciling.
+ */
+public class TitleWorkScheduler {
+    private static final Logger log = LoggerFactory.getLogger(TitleWorkScheduler.class);
+    private final EnhancedFedora eFedora;
+    private final NewspaperIndex newspaperIndex;
+    private final RunnableTitleRecordRelationsMaintainer maintainer;
+    private final ItemFactory<Item> itemFactory;
+    private final int threads;
+    private final ModsTitleExtractor modsTitleExtractor = new ModsTitleExtractor();
+
+    /**
+     * Constructor
+     *
+     * @param eFedora The Fedora to read the MODS of newspaper objects from
+     * @param newspaperIndex The index to count editions in
+     * @param maintainer The maintainer that reconciles each newspaper object
+     * @param itemFactory Factory to create items for the newspaper objects
+     * @param threads The number of newspaper objects to reconcile at the same time
+     */
+    public TitleWorkScheduler(EnhancedFedora eFedora, NewspaperIndex newspaperIndex,
+                              RunnableTitleRecordRelationsMaintainer maintainer, ItemFactory<Item> itemFactory,
+                              int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive, was " + threads);
+        }
+        this.eFedora = eFedora;
+        this.newspaperIndex = newspaperIndex;
+        this.maintainer = maintainer;
+        this.itemFactory = itemFactory;
+        this.threads = threads;
+    }
+
+    /**
+     * Reconcile the given newspaper objects, largest first
+     *
+     * @param titleIDs The PIDs of the newspaper objects
+     * @return The number of newspaper objects that could not be reconciled without failures
+     * @throws InterruptedException if interrupted while waiting for the work to complete
+     */
+    public int run(List<String> titleIDs) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<TitleWork> estimates = estimate(executor, titleIDs);
+            List<List<TitleWork>> queue = groupByAvisID(estimates);
+            log.info("Scheduling {} newspaper objects in {} groups with about {} editions on {} threads",
+                    new Object[]{estimates.size(), queue.size(), getEditions(estimates), threads});
+
+            long start = System.currentTimeMillis();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (final List<TitleWork> group : queue) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return reconcile(group);
+                    }
+                }));
+            }
+            int failed = 0;
+            for (int i = 0; i < results.size(); i++) {
+                failed += getResult(results.get(i), queue.get(i));
+            }
+            log.info("Reconciled {} newspaper objects in {} ms, {} failed",
+                    new Object[]{estimates.size(), System.currentTimeMillis() - start, failed});
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Estimate the size of each newspaper object from the number of its editions in SBOI, on all threads
+     *
+     * @param executor The executor to run the estimates on
+     * @param titleIDs The PIDs of the newspaper objects
+     * @return The newspaper objects with their sizes, in the given order. A newspaper object whose size could not be
+     * estimated is given size 0 and no range, so it is reconciled last, reading its MODS again, and its failure
+     * reported then
+     * @throws InterruptedException if interrupted while waiting for the estimates
+     */
+    List<TitleWork> estimate(ExecutorService executor, List<String> titleIDs) throws InterruptedException {
+        List<Future<TitleWork>> estimates = new ArrayList<>();
+        for (final String titleID : titleIDs) {
+            estimates.add(executor.submit(new Callable<TitleWork>() {
+                @Override
+                public TitleWork call() throws Exception {
+                    String mods = eFedora.getXMLDatastreamContents(titleID, "MODS");
+                    TitleRange range = modsTitleExtractor.extract(titleID, mods);
+                    return new TitleWork(titleID, range, TitleFingerprint.hash(mods), newspaperIndex.countEditions(
+                            range.getAvisID(), range.getStartDate(), range.getEndDate()));
+                }
+            }));
+        }
+        List<TitleWork> queue = new ArrayList<>();
+        for (int i = 0; i < estimates.size(); i++) {
+            try {
+                queue.add(estimates.get(i).get());
+            } catch (ExecutionException e) {
+                log.warn("Could not estimate the size of {}", titleIDs.get(i), e.getCause());
+                queue.add(new TitleWork(titleIDs.get(i), null, 0, 0));
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Group the newspaper objects by newspaper ID, so those that can share editions are reconciled one after another.
+     * The groups are ordered largest first, as are the newspaper objects in each group. A newspaper object whose size
+     * could not be estimated is a group of its own.
+     *
+     * @param estimates The newspaper objects with their sizes
+     * @return The groups of newspaper objects
+     */
+    static List<List<TitleWork>> groupByAvisID(List<TitleWork> estimates) {
+        Comparator<TitleWork> largestFirst = new Comparator<TitleWork>() {
+            @Override
+            public int compare(TitleWork a, TitleWork b) {
+                return Long.compare(b.getEditions(), a.getEditions());
+            }
+        };
+        Map<String, List<TitleWork>> groups = new LinkedHashMap<>();
+        for (TitleWork work : estimates) {
+            String key = work.getRange() == null ? work.getTitleID() : work.getRange().getAvisID();
+            List<TitleWork> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(work);
+        }
+        List<List<TitleWork>> queue = new ArrayList<>(groups.values());
+        for (List<TitleWork> group : queue) {
+            Collections.sort(group, largestFirst);
+        }
+        Collections.sort(queue, new Comparator<List<TitleWork>>() {
+            @Override
+            public int compare(List<TitleWork> a, List<TitleWork> b) {
+                return Long.compare(getEditions(b), getEditions(a));
+            }
+        });
+        return queue;
+    }
+
+    private static long getEditions(List<TitleWork> works) {
+        long editions = 0;
+        for (TitleWork work : works) {
+            editions += work.getEditions();
+        }
+        return editions;
+    }
+
+    /**
+     * Reconcile a group of newspaper objects one after another. A failing newspaper object does not stop the others
+     *
+     * @param group The newspaper objects
+     * @return The number of newspaper objects that could not be reconciled without failures
+     */
+    private int reconcile(List<TitleWork> group) {
+        int failed = 0;
+        for (TitleWork work : group) {
+            try {
+                if (!reconcile(work)) {
+                    failed++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to reconcile {}", work.getTitleID(), e);
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Reconcile one newspaper object
+     *
+     * @param work The newspaper object
+     * @return true if it was reconciled without failures
+     * @throws Exception if reconciling failed
+     */
+    private boolean reconcile(TitleWork work) throws Exception {
+        Item item = itemFactory.create(work.getTitleID());
+        ResultCollector resultCollector = new ResultCollector(TitleWorkScheduler.class.getSimpleName(),
+                maintainer.getEventID());
+        log.debug("Reconciling {} with about {} editions", work.getTitleID(), work.getEditions());
+        if (work.getRange() == null) {
+            maintainer.doWorkOnItem(item, resultCollector);
+        } else {
+            maintainer.doWorkOnItem(item, resultCollector, work.getRange(), work.getModsHash());
+        }
+        return resultCollector.isSuccess();
+    }
+
+    private static int getResult(Future<Integer> result, List<TitleWork> group) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            log.error("Failed to reconcile {} newspaper objects starting with {}",
+                    new Object[]{group.size(), group.get(0).getTitleID(), e.getCause()});
+            return group.size();
+        }
+    }
+
+    /**
+     * A newspaper object to reconcile, with its estimated size
+     */
+    static class TitleWork {
+        private final String titleID;
+        private final TitleRange range;
+        private final long modsHash;
+        private final long editions;
+
+        TitleWork(String titleID, TitleRange range, long modsHash, long editions) {
+            this.titleID = titleID;
+            this.range = range;
+            this.modsHash = modsHash;
+            this.editions = editions;
+        }
+
+        String getTitleID() {
+            return titleID;
+        }
+
+        /**
+         * @return The newspaper ID and date range read from the MODS, or null if the MODS could not be read
+         */
+        TitleRange getRange() {
+            return range;
+        }
+
+        long getModsHash() {
+            return modsHash;
+        }
+
+        long getEditions() {
+            return editions;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+#!/bin/sh
+
+# Makes a class data sharing archive of the classes loaded on every run, used by pollAndWork.sh to start faster.
+# Needs Java 10 or later. Run again after upgrading Java or the jars in lib.
+
+SCRIPT_DIR=$(dirname $(readlink -f $0))
+ARCHIVE_DIR=$SCRIPT_DIR/../cds
+
+mkdir -p $ARCHIVE_DIR
+java -Xshare:off -XX:DumpLoadedClassList=$ARCHIVE_DIR/classes.lst \
+   -Dlogback.configurationFile=$SCRIPT_DIR/../conf/logback.xml -classpath "$SCRIPT_DIR/../lib/*" \
+   dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleRecordRelationsMaintainerComponent warmup $SCRIPT_DIR/../conf/config.properties \
+&& java -Xshare:dump -XX:SharedClassListFile=$ARCHIVE_DIR/classes.lst -XX:SharedArchiveFile=$ARCHIVE_DIR/titleRecords.jsa \
+   -classpath "$SCRIPT_DIR/../lib/*"
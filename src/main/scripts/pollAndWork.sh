@@ -1,6 +1,15 @@
 #!/bin/sh
 
 SCRIPT_DIR=$(dirname $(readlink -f $0))
+. $SCRIPT_DIR/../conf/javaOptions.sh
+ARCHIVE=$SCRIPT_DIR/../cds/titleRecords.jsa
 
-java -classpath "$SCRIPT_DIR/../conf:$SCRIPT_DIR/../lib/*" \
-   dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleRecordRelationsMaintainerComponent $SCRIPT_DIR/../conf/config.properties
\ No newline at end of file
+if [ -f $ARCHIVE ]; then
+   # The archive was made with only the jars on the classpath, so the configuration directory must come after them
+   java $JAVA_OPTS -Xshare:auto -XX:SharedArchiveFile=$ARCHIVE -Dlogback.configurationFile=$SCRIPT_DIR/../conf/logback.xml \
+      -classpath "$SCRIPT_DIR/../lib/*:$SCRIPT_DIR/../conf" \
+      dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleRecordRelationsMaintainerComponent $SCRIPT_DIR/../conf/config.properties
+else
+   java $JAVA_OPTS -classpath "$SCRIPT_DIR/../conf:$SCRIPT_DIR/../lib/*" \
+      dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleRecordRelationsMaintainerComponent $SCRIPT_DIR/../conf/config.properties
+fi
@@ -0,0 +1,7 @@
+#!/bin/sh
+
+SCRIPT_DIR=$(dirname $(readlink -f $0))
+. $SCRIPT_DIR/../conf/javaOptions.sh
+
+java $JAVA_OPTS -classpath "$SCRIPT_DIR/../conf:$SCRIPT_DIR/../lib/*" \
+   dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleRecordRelationsMaintainerComponent editions $SCRIPT_DIR/../conf/config.properties
@@ -0,0 +1,86 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BulkReconcilerTest {
+
+    private static final String NEWSPAPERID = "adresseavisen1759";
+    private static final String TITLE_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:5b9d0a3e-6f8c-4d1e-b2a7-9c4e3f1d2a8b";
+    private static final String EDITION_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+    private static final String EDITION_ID4 = "uuid:d2f4c3b9-5e1a-4f0b-9a6e-1c2b3d4e5f60";
+
+    /**
+     * Test that editions are matched to the newspaper objects whose date range contains them, that wrong relations
+     * are removed, and that relations from objects that are not editions in the index are removed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPlan() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID1, "MODS")).thenReturn(
+                mods(NEWSPAPERID, "1759-01-01", "1800-12-31"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID2, "MODS")).thenReturn(
+                mods(NEWSPAPERID, "1801-01-01", ""));
+        when(enhancedFedoraMock.getInverseRelations(TITLE_ID1,
+                RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION)).thenReturn(
+                Arrays.asList(relation(EDITION_ID4, TITLE_ID1)));
+        when(enhancedFedoraMock.getInverseRelations(TITLE_ID2,
+                RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION)).thenReturn(
+                Arrays.asList(relation(EDITION_ID1, TITLE_ID2), relation(EDITION_ID2, TITLE_ID2)));
+
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getAllTitleIDs()).thenReturn(Arrays.asList(TITLE_ID1, TITLE_ID2).iterator());
+        when(newspaperIndexMock.getAllEditions()).thenReturn(Arrays.asList(
+                new EditionRecord(EDITION_ID1, NEWSPAPERID, "1760-01-01"),
+                new EditionRecord(EDITION_ID2, NEWSPAPERID, "1801-05-05"),
+                new EditionRecord(EDITION_ID3, NEWSPAPERID, "1850-01-01")).iterator());
+
+        List<EditionChange> changes = new BulkReconciler(enhancedFedoraMock, newspaperIndexMock,
+                mock(RelationWriter.class), new RelationMutationExecutor(1), null).plan();
+
+        Map<String, EditionChange> changesByEdition = new HashMap<>();
+        for (EditionChange change : changes) {
+            changesByEdition.put(change.getEditionDomsID(), change);
+        }
+        assertEquals(changesByEdition.size(), 3);
+        assertEquals(changesByEdition.get(EDITION_ID1).getTitlesToAdd(), Collections.singleton(TITLE_ID1));
+        assertEquals(changesByEdition.get(EDITION_ID1).getTitlesToRemove(), Collections.singleton(TITLE_ID2));
+        assertEquals(changesByEdition.get(EDITION_ID3).getTitlesToAdd(), Collections.singleton(TITLE_ID2));
+        assertTrue(changesByEdition.get(EDITION_ID3).getTitlesToRemove().isEmpty());
+        assertTrue(changesByEdition.get(EDITION_ID4).getTitlesToAdd().isEmpty());
+        assertEquals(changesByEdition.get(EDITION_ID4).getTitlesToRemove(), Collections.singleton(TITLE_ID1));
+    }
+
+    private static String mods(String avisID, String startDate, String endDate) {
+        return String.format("<mods xmlns=\"http://www.loc.gov/mods/v3\">\n"
+                             + "    <identifier type=\"title_family\">%s</identifier>\n"
+                             + "    <originInfo>\n"
+                             + "        <dateIssued point=\"start\">%s</dateIssued>\n"
+                             + "        <dateIssued point=\"end\">%s</dateIssued>\n"
+                             + "    </originInfo>\n"
+                             + "</mods>", avisID, startDate, endDate);
+    }
+
+    private static FedoraRelation relation(String editionID, String titleID) {
+        return new FedoraRelation(RunnableTitleRecordRelationsMaintainer.URI_PREFIX + editionID,
+                RunnableTitleRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION,
+                RunnableTitleRecordRelationsMaintainer.URI_PREFIX + titleID);
+    }
+}
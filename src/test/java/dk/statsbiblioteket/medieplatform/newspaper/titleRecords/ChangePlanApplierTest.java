@@ -0,0 +1,117 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class ChangePlanApplierTest {
+
+    private static final String TITLE_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+
+    /**
+     * Test that the changes of an edition are written together, and that failed changes are written to the failed
+     * plan.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testApply() throws Exception {
+        File plan = writePlan(
+                new RelationChange(1L, RelationChange.Operation.ADD, EDITION_ID1, TITLE_ID1),
+                new RelationChange(1L, RelationChange.Operation.REMOVE, EDITION_ID1, TITLE_ID2),
+                new RelationChange(1L, RelationChange.Operation.ADD, EDITION_ID2, TITLE_ID1));
+        RelationWriter relationWriterMock = mock(RelationWriter.class);
+        doThrow(new BackendMethodFailedException("failed")).when(relationWriterMock).updateRelations(eq(EDITION_ID2),
+                anyCollectionOf(String.class), anyCollectionOf(String.class));
+
+        TitleFingerprintStore fingerprintStoreMock = mock(TitleFingerprintStore.class);
+
+        long failed = new ChangePlanApplier(relationWriterMock, new RelationMutationExecutor(1), 10,
+                fingerprintStoreMock).apply(plan);
+
+        assertEquals(failed, 1);
+        verify(relationWriterMock).updateRelations(EDITION_ID1, Collections.singleton(TITLE_ID1),
+                Collections.singleton(TITLE_ID2));
+        verify(relationWriterMock).updateRelations(EDITION_ID2, Collections.singleton(TITLE_ID1),
+                Collections.<String>emptySet());
+        verifyNoMoreInteractions(relationWriterMock);
+        List<String> failedLines = Files.readAllLines(new File(plan.getPath() + ".failed").toPath(),
+                Charset.forName("UTF-8"));
+        assertEquals(failedLines.size(), 1);
+        assertEquals(RelationChange.parse(failedLines.get(0)).getEditionDomsID(), EDITION_ID2);
+        verify(fingerprintStoreMock).removeAll(new HashSet<>(Arrays.asList(TITLE_ID1, TITLE_ID2)));
+    }
+
+    /**
+     * Test that a plan is resumed after the last checkpoint, and that the checkpoint is deleted once the plan is
+     * applied.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testApplyResumes() throws Exception {
+        File plan = writePlan(
+                new RelationChange(1L, RelationChange.Operation.ADD, EDITION_ID1, TITLE_ID1),
+                new RelationChange(1L, RelationChange.Operation.ADD, EDITION_ID2, TITLE_ID1));
+        Files.write(ChangePlanApplier.getCheckpointFile(plan).toPath(), "1\n".getBytes("UTF-8"));
+        RelationWriter relationWriterMock = mock(RelationWriter.class);
+
+        new ChangePlanApplier(relationWriterMock, new RelationMutationExecutor(1), 1, null).apply(plan);
+
+        verify(relationWriterMock).updateRelations(EDITION_ID2, Collections.singleton(TITLE_ID1),
+                Collections.<String>emptySet());
+        verifyNoMoreInteractions(relationWriterMock);
+        assertFalse(ChangePlanApplier.getCheckpointFile(plan).exists());
+    }
+
+    /**
+     * Test that a last line cut short while the plan was written is ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testApplyIgnoresTornLastLine() throws Exception {
+        File plan = writePlan(new RelationChange(1L, RelationChange.Operation.ADD, EDITION_ID1, TITLE_ID1));
+        Files.write(plan.toPath(), "2\tADD\tuuid:".getBytes("UTF-8"), StandardOpenOption.APPEND);
+        RelationWriter relationWriterMock = mock(RelationWriter.class);
+
+        long failed = new ChangePlanApplier(relationWriterMock, new RelationMutationExecutor(1), 10, null).apply(plan);
+
+        assertEquals(failed, 0);
+        verify(relationWriterMock).updateRelations(EDITION_ID1, Collections.singleton(TITLE_ID1),
+                Collections.<String>emptySet());
+        verifyNoMoreInteractions(relationWriterMock);
+    }
+
+    private static File writePlan(RelationChange... changes) throws IOException {
+        File plan = File.createTempFile("plan", ".tsv");
+        plan.delete();
+        plan.deleteOnExit();
+        ChangePlanApplier.getCheckpointFile(plan).deleteOnExit();
+        new File(plan.getPath() + ".failed").deleteOnExit();
+        new ChangePlanWriter(plan).append(Arrays.asList(changes));
+        return plan;
+    }
+}
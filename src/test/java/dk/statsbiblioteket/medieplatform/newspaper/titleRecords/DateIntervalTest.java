@@ -0,0 +1,41 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+
+public class DateIntervalTest {
+
+    /**
+     * Test the parts of a date range that are left when a moved, widened, narrowed or disjoint range is subtracted.
+     */
+    @Test
+    public void testDifference() {
+        DateInterval range = DateInterval.closed("1970-01-01", "1980-01-01");
+
+        assertEquals(DateInterval.difference(DateInterval.closed("1970-01-01", "1981-01-01"), range),
+                Arrays.asList(new DateInterval("1980-01-01", false, "1981-01-01", true)));
+        assertEquals(DateInterval.difference(range, DateInterval.closed("1975-01-01", "1976-01-01")),
+                Arrays.asList(new DateInterval("1970-01-01", true, "1975-01-01", false),
+                        new DateInterval("1976-01-01", false, "1980-01-01", true)));
+        assertEquals(DateInterval.difference(range, DateInterval.closed("", "")),
+                Collections.<DateInterval>emptyList());
+        assertEquals(DateInterval.difference(DateInterval.closed("", ""), range),
+                Arrays.asList(new DateInterval(null, true, "1970-01-01", false),
+                        new DateInterval("1980-01-01", false, null, true)));
+        assertEquals(DateInterval.difference(range, DateInterval.closed("1990-01-01", "")), Arrays.asList(range));
+    }
+
+    /**
+     * Test that open, inclusive and exclusive ends are written as a Solr range query.
+     */
+    @Test
+    public void testToQuery() {
+        assertEquals(DateInterval.closed("", "1980-01-01").toQuery(), "[* TO 1980-01-01]");
+        assertEquals(new DateInterval("1970-01-01", false, "1980-01-01", false).toQuery(),
+                "{1970-01-01 TO 1980-01-01}");
+    }
+}
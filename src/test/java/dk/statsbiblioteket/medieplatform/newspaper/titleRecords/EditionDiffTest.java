@@ -0,0 +1,67 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class EditionDiffTest {
+
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String EDITION_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+    private static final String EDITION_ID4 = "uuid:d2f4c3b9-5e1a-4f0b-9a6e-1c2b3d4e5f60";
+
+    /**
+     * Test that the hash based diff finds the editions to add and to remove.
+     */
+    @Test
+    public void testCompute() {
+        EditionDiff diff = EditionDiff.compute(Arrays.asList(EDITION_ID1, EDITION_ID2, EDITION_ID3).iterator(),
+                Arrays.asList(EDITION_ID4, EDITION_ID2));
+
+        assertEquals(diff.getEditionsToAdd(), Arrays.asList(EDITION_ID1, EDITION_ID3));
+        assertEquals(diff.getEditionsToRemove(), Arrays.asList(EDITION_ID4));
+    }
+
+    /**
+     * Test that the sorted merge gives the same result as the hash based diff.
+     */
+    @Test
+    public void testComputeSorted() {
+        List<String> wanted = Arrays.asList(EDITION_ID1, EDITION_ID2, EDITION_ID3);
+        List<String> existing = Arrays.asList(EDITION_ID2, EDITION_ID4);
+
+        EditionDiff sorted = EditionDiff.computeSorted(wanted.iterator(), existing.iterator());
+        EditionDiff hashed = EditionDiff.compute(wanted.iterator(), existing);
+
+        assertEquals(sorted.getEditionsToAdd(), hashed.getEditionsToAdd());
+        assertEquals(sorted.getEditionsToRemove(), hashed.getEditionsToRemove());
+    }
+
+    /**
+     * Test that nothing changes when the wanted and existing editions are the same.
+     */
+    @Test
+    public void testComputeNoChanges() {
+        List<String> editions = Arrays.asList(EDITION_ID1, EDITION_ID2);
+
+        EditionDiff diff = EditionDiff.compute(editions.iterator(), editions);
+
+        assertTrue(diff.getEditionsToAdd().isEmpty());
+        assertTrue(diff.getEditionsToRemove().isEmpty());
+    }
+
+    /**
+     * Test that unsorted input to the sorted merge is rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testComputeSortedRejectsUnsortedInput() {
+        EditionDiff.computeSorted(Arrays.asList(EDITION_ID2, EDITION_ID1).iterator(),
+                Collections.<String>emptyList().iterator());
+    }
+}
@@ -0,0 +1,59 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EditionIdSetTest {
+
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+
+    /**
+     * Test that UUID PIDs, Fedora URIs and other PIDs are added, found, removed and listed in the order added.
+     */
+    @Test
+    public void testAddRemove() {
+        EditionIdSet set = new EditionIdSet(1);
+        assertTrue(set.add(EDITION_ID1));
+        assertTrue(set.add("doms:Some_Edition"));
+        assertTrue(set.addUri("info:fedora/" + EDITION_ID2));
+        assertTrue(set.add("uuid:781732B1-CA9A-46D4-94CD-AE1C0B7F1EBF"));
+        assertFalse(set.add(EDITION_ID2));
+        assertFalse(set.addUri("info:fedora/doms:Some_Edition"));
+        assertEquals(set.size(), 4);
+
+        assertTrue(set.remove(EDITION_ID2));
+        assertFalse(set.remove(EDITION_ID2));
+        assertFalse(set.contains(EDITION_ID2));
+        assertTrue(set.contains("doms:Some_Edition"));
+        assertEquals(set.toList(),
+                Arrays.asList(EDITION_ID1, "doms:Some_Edition", "uuid:781732B1-CA9A-46D4-94CD-AE1C0B7F1EBF"));
+    }
+
+    /**
+     * Test that many random UUID PIDs survive growing the set and are formatted back exactly.
+     */
+    @Test
+    public void testManyEditions() {
+        List<String> pids = new ArrayList<>();
+        EditionIdSet set = new EditionIdSet(0);
+        for (int i = 0; i < 10000; i++) {
+            String pid = "uuid:" + UUID.randomUUID();
+            pids.add(pid);
+            assertTrue(set.add(pid));
+        }
+        assertEquals(set.toList(), pids);
+        for (String pid : pids.subList(0, 5000)) {
+            assertTrue(set.remove(pid));
+        }
+        assertEquals(set.toList(), pids.subList(5000, 10000));
+    }
+}
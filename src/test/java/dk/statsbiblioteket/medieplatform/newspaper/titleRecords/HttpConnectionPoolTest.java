@@ -0,0 +1,31 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.MetricRegistry;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HttpConnectionPoolTest {
+
+    /**
+     * Test that the state of an idle pool is published as metrics.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.HTTP_MAX_CONNECTIONS, "4");
+        MetricRegistry registry = new MetricRegistry();
+        HttpConnectionPool pool = new HttpConnectionPool(properties, registry);
+        try {
+            assertEquals(registry.getGauges().get("titleRecords.http.leased").getValue(), 0);
+            assertEquals(registry.getGauges().get("titleRecords.http.pending").getValue(), 0);
+            assertEquals(registry.getGauges().get("titleRecords.http.utilization").getValue(), 0.0);
+            assertTrue(registry.getTimers().containsKey("titleRecords.http.connectionWait"));
+        } finally {
+            pool.close();
+        }
+    }
+}
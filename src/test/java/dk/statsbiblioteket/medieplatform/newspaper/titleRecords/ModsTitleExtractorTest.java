@@ -0,0 +1,59 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.testng.Assert.assertEquals;
+
+public class ModsTitleExtractorTest {
+
+    private static final String TITLE_ID = "uuid:a6b1f3e4-8c2d-4b0e-9f6a-7d5c3b2a1e0f";
+
+    /**
+     * Test that the newspaper ID and both dates are extracted, ignoring identifiers and dates of other types and
+     * elements outside the MODS namespace.
+     */
+    @Test
+    public void testExtract() throws XMLStreamException {
+        String mods = "<mods:mods xmlns:mods=\"http://www.loc.gov/mods/v3\" xmlns:x=\"http://example.com/\">\n"
+                      + "  <mods:titleInfo><mods:title>Adresseavisen</mods:title></mods:titleInfo>\n"
+                      + "  <x:identifier type=\"title_family\">wrongnamespace</x:identifier>\n"
+                      + "  <mods:identifier type=\"ninestars\">wrongtype</mods:identifier>\n"
+                      + "  <mods:identifier type=\"title_family\">adresseavisen1759</mods:identifier>\n"
+                      + "  <mods:originInfo>\n"
+                      + "    <mods:dateIssued point=\"end\">1800-12-31</mods:dateIssued>\n"
+                      + "    <mods:dateIssued>1759</mods:dateIssued>\n"
+                      + "    <mods:dateIssued point=\"start\">1759-01-01</mods:dateIssued>\n"
+                      + "  </mods:originInfo>\n"
+                      + "</mods:mods>";
+
+        TitleRange range = new ModsTitleExtractor().extract(TITLE_ID, mods);
+
+        assertEquals(range, new TitleRange(TITLE_ID, "adresseavisen1759", "1759-01-01", "1800-12-31"));
+    }
+
+    /**
+     * Test that missing fields and fields at the wrong place in the document are given as the empty string.
+     */
+    @Test
+    public void testExtractMissing() throws XMLStreamException {
+        String mods = "<mods xmlns=\"http://www.loc.gov/mods/v3\">\n"
+                      + "  <relatedItem><identifier type=\"title_family\">nested</identifier></relatedItem>\n"
+                      + "  <dateIssued point=\"end\">1800-12-31</dateIssued>\n"
+                      + "  <originInfo><dateIssued point=\"start\">1759-01-01</dateIssued></originInfo>\n"
+                      + "</mods>";
+
+        TitleRange range = new ModsTitleExtractor().extract(TITLE_ID, mods);
+
+        assertEquals(range, new TitleRange(TITLE_ID, "", "1759-01-01", ""));
+    }
+
+    /**
+     * Test that malformed MODS is rejected.
+     */
+    @Test(expectedExceptions = XMLStreamException.class)
+    public void testExtractMalformed() throws XMLStreamException {
+        new ModsTitleExtractor().extract(TITLE_ID, "<mods xmlns=\"http://www.loc.gov/mods/v3\"><originInfo></mods>");
+    }
+}
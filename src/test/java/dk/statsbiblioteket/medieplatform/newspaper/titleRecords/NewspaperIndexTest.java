@@ -0,0 +1,102 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class NewspaperIndexTest {
+
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String EDITION_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+
+    /**
+     * Test that editions are fetched page by page using cursor marks, until Solr returns the same cursor mark.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetEditionIDsPagesWithCursor() throws Exception {
+        HttpSolrServer solrMock = mock(HttpSolrServer.class);
+        QueryResponse page1 = getResponseMock("AoE1", EDITION_ID1, EDITION_ID2);
+        QueryResponse page2 = getResponseMock("AoE2", EDITION_ID3);
+        QueryResponse page3 = getResponseMock("AoE2");
+        when(solrMock.query(any(SolrParams.class))).thenReturn(page1, page2, page3);
+
+        NewspaperIndex newspaperIndex = new NewspaperIndex(solrMock, new DomsItemFactory(), 2);
+        Iterator<String> editionIDs = newspaperIndex.getEditionIDs("avis", "1970-01-01", "");
+
+        List<String> result = new ArrayList<>();
+        while (editionIDs.hasNext()) {
+            result.add(editionIDs.next());
+        }
+        assertEquals(result, Arrays.asList(EDITION_ID1, EDITION_ID2, EDITION_ID3));
+
+        ArgumentCaptor<SolrParams> queries = ArgumentCaptor.forClass(SolrParams.class);
+        verify(solrMock, times(3)).query(queries.capture());
+        SolrQuery query = (SolrQuery) queries.getValue();
+        assertEquals(query.getRows(), Integer.valueOf(2));
+        assertEquals(query.get(CursorMarkParams.CURSOR_MARK_PARAM), "AoE2");
+    }
+
+    /**
+     * Test that nothing is returned, and only one query is made, when no editions match.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetEditionsEmpty() throws Exception {
+        HttpSolrServer solrMock = mock(HttpSolrServer.class);
+        QueryResponse page1 = getResponseMock(CursorMarkParams.CURSOR_MARK_START);
+        when(solrMock.query(any(SolrParams.class))).thenReturn(page1);
+
+        NewspaperIndex newspaperIndex = new NewspaperIndex(solrMock, new DomsItemFactory());
+        List<Item> editions = newspaperIndex.getEditions("avis", "", "");
+
+        assertFalse(editions.iterator().hasNext());
+        verify(solrMock, times(1)).query(any(SolrParams.class));
+    }
+
+    /**
+     * Mock a Solr response page.
+     *
+     * @param nextCursorMark The cursor mark returned with the page.
+     * @param uuids The uuids in the page.
+     * @return Mock response.
+     */
+    private QueryResponse getResponseMock(String nextCursorMark, String... uuids) {
+        SolrDocumentList documents = new SolrDocumentList();
+        for (String uuid : uuids) {
+            SolrDocument document = new SolrDocument();
+            document.addField(SBOIEventIndex.UUID, uuid);
+            documents.add(document);
+        }
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(documents);
+        when(response.getNextCursorMark()).thenReturn(nextCursorMark);
+        return response;
+    }
+}
@@ -0,0 +1,43 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+public class RelationMutationExecutorTest {
+
+    /**
+     * Test that mutations run in the calling thread stop at the first target after the thread is interrupted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExecuteInlineStopsWhenInterrupted() throws Exception {
+        final List<String> applied = new ArrayList<>();
+        RelationMutationExecutor executor = new RelationMutationExecutor(1);
+        try {
+            executor.execute(Arrays.asList("a", "b", "c"), new RelationMutationExecutor.Mutation<String>() {
+                @Override
+                public void apply(String target) throws Exception {
+                    applied.add(target);
+                    if (target.equals("a")) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            fail("The executor should have been interrupted");
+        } catch (InterruptedException expected) {
+            // The remaining targets are not mutated
+        } finally {
+            executor.close();
+        }
+        assertEquals(applied, Arrays.asList("a"));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,127 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class RelsExtRelationWriterTest {
+
+    private static final String EDITION_ID = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String OLD_NEWSPAPER_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String NEW_NEWSPAPER_ID = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String RELS_EXT = "RELS-EXT";
+    private static final String RELS_EXT_XML = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n"
+            + "    <rdf:Description rdf:about=\"info:fedora/" + EDITION_ID + "\">\n"
+            + "        <hasModel xmlns=\"info:fedora/fedora-system:def/model#\" "
+            + "rdf:resource=\"info:fedora/doms:ContentModel_Edition\"/>\n"
+            + "        <isPartOfNewspaper xmlns=\"http://doms.statsbiblioteket.dk/relations/default/0/1/#\" "
+            + "rdf:resource=\"info:fedora/" + OLD_NEWSPAPER_ID + "\"/>\n"
+            + "    </rdf:Description>\n"
+            + "</rdf:RDF>";
+
+    /**
+     * Test that removing one relation and adding another is written in one datastream modification.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelationsOneWrite() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(EDITION_ID, RELS_EXT)).thenReturn(RELS_EXT_XML);
+
+        new RelsExtRelationWriter(enhancedFedoraMock).updateRelations(EDITION_ID,
+                Arrays.asList(NEW_NEWSPAPER_ID), Arrays.asList(OLD_NEWSPAPER_ID));
+
+        ArgumentCaptor<String> contents = ArgumentCaptor.forClass(String.class);
+        verify(enhancedFedoraMock, times(1)).modifyDatastreamByValue(eq(EDITION_ID), eq(RELS_EXT), contents.capture(),
+                (List<String>) isNull(), anyString());
+        assertTrue(contents.getValue().contains("info:fedora/" + NEW_NEWSPAPER_ID));
+        assertFalse(contents.getValue().contains("info:fedora/" + OLD_NEWSPAPER_ID));
+        assertTrue(contents.getValue().contains("info:fedora/doms:ContentModel_Edition"));
+    }
+
+    /**
+     * Test that nothing is written when the edition already has the wanted relations.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelationsNoChange() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(EDITION_ID, RELS_EXT)).thenReturn(RELS_EXT_XML);
+
+        new RelsExtRelationWriter(enhancedFedoraMock).updateRelations(EDITION_ID,
+                Arrays.asList(OLD_NEWSPAPER_ID), Collections.<String>emptyList());
+
+        verify(enhancedFedoraMock, never()).modifyDatastreamByValue(anyString(), anyString(), anyString(),
+                (List<String>) isNull(), anyString());
+    }
+
+    /**
+     * Test that a published edition is unpublished, written and republished.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelationsPublished() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(EDITION_ID, RELS_EXT)).thenReturn(RELS_EXT_XML);
+        doThrow(new BackendInvalidCredsException("Published")).doNothing().when(enhancedFedoraMock)
+                .modifyDatastreamByValue(eq(EDITION_ID), eq(RELS_EXT), anyString(), (List<String>) isNull(),
+                        anyString());
+
+        new RelsExtRelationWriter(enhancedFedoraMock).updateRelations(EDITION_ID,
+                Collections.<String>emptyList(), Arrays.asList(OLD_NEWSPAPER_ID));
+
+        InOrder inOrder = inOrder(enhancedFedoraMock);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(EDITION_ID, "I",
+                RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).modifyDatastreamByValue(eq(EDITION_ID), eq(RELS_EXT), anyString(),
+                (List<String>) isNull(), anyString());
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(EDITION_ID, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+    }
+
+    /**
+     * Test that the relsExt writer is refused unless exclusive access to RELS-EXT is confirmed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCreateRelationWriterNeedsExclusiveAccess() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_WRITER, "relsExt");
+        try {
+            RunnableTitleRecordRelationsMaintainer.createRelationWriter(properties, mock(EnhancedFedora.class));
+            throw new AssertionError("Expected the relsExt writer to be refused");
+        } catch (IllegalArgumentException expected) {
+            // The writer could overwrite changes made by others
+        }
+
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_WRITER_EXCLUSIVE, "true");
+        assertEquals(RunnableTitleRecordRelationsMaintainer.createRelationWriter(properties,
+                mock(EnhancedFedora.class)).getClass(), RelsExtRelationWriter.class);
+    }
+}
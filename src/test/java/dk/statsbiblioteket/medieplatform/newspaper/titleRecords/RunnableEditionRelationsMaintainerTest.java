@@ -0,0 +1,99 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.MetricRegistry;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RunnableEditionRelationsMaintainerTest {
+
+    private static final String URI_PREFIX = "info:fedora/";
+    private static final String PREDICATE = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    private static final String DOMS_EDITION_ID = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_NEWSPAPER_TITLE_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_OLD_NEWSPAPER_TITLE_ID = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String NEWSPAPERID = "avis";
+    private static final String DATE_ISSUED = "1975-06-01";
+
+    /**
+     * Test that an edition gets a relation to the newspaper object whose date range contains it, and loses its relation
+     * to a newspaper object that no longer does, looking up only the relations of the edition itself.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemUpdatesRelationsOfEdition() throws Exception {
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getEdition(DOMS_EDITION_ID))
+                .thenReturn(new EditionRecord(DOMS_EDITION_ID, NEWSPAPERID, DATE_ISSUED));
+        TitleRangeCache titleRangeCacheMock = mock(TitleRangeCache.class);
+        when(titleRangeCacheMock.findTitles(NEWSPAPERID, DATE_ISSUED)).thenReturn(Arrays.asList(
+                new TitleRange(DOMS_NEWSPAPER_TITLE_ID, NEWSPAPERID, "1970-01-01", "1980-01-01")));
+        when(titleRangeCacheMock.contains(DOMS_OLD_NEWSPAPER_TITLE_ID)).thenReturn(true);
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getNamedRelations(DOMS_EDITION_ID, PREDICATE, null)).thenReturn(Arrays.asList(
+                new FedoraRelation(URI_PREFIX + DOMS_EDITION_ID, PREDICATE, URI_PREFIX + DOMS_OLD_NEWSPAPER_TITLE_ID)));
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, RelationCheck.NEVER.name());
+        Item item = mock(Item.class);
+        when(item.getDomsID()).thenReturn(DOMS_EDITION_ID);
+        when(item.getFullID()).thenReturn(DOMS_EDITION_ID);
+
+        TitleFingerprintStore fingerprintStoreMock = mock(TitleFingerprintStore.class);
+
+        new RunnableEditionRelationsMaintainer(properties, enhancedFedoraMock, newspaperIndexMock,
+                titleRangeCacheMock, new ReconciliationMetrics(new MetricRegistry()), fingerprintStoreMock)
+                .doWorkOnItem(item, mock(ResultCollector.class));
+
+        verify(enhancedFedoraMock).addRelation(eq(DOMS_EDITION_ID), eq(URI_PREFIX + DOMS_EDITION_ID), eq(PREDICATE),
+                eq(URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID), eq(false), anyString());
+        verify(enhancedFedoraMock).deleteRelation(eq(DOMS_EDITION_ID), eq(URI_PREFIX + DOMS_EDITION_ID),
+                eq(PREDICATE), eq(URI_PREFIX + DOMS_OLD_NEWSPAPER_TITLE_ID), eq(false), anyString());
+        verify(newspaperIndexMock, never()).getEditionIDs(anyString(), anyString(), anyString());
+        verify(fingerprintStoreMock).removeAll(
+                new HashSet<>(Arrays.asList(DOMS_NEWSPAPER_TITLE_ID, DOMS_OLD_NEWSPAPER_TITLE_ID)));
+    }
+
+    /**
+     * Test that a relation to a newspaper object that is not in the cache is kept, as the cache cannot tell whether the
+     * edition is outside it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemKeepsRelationToUnknownTitle() throws Exception {
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getEdition(DOMS_EDITION_ID))
+                .thenReturn(new EditionRecord(DOMS_EDITION_ID, NEWSPAPERID, DATE_ISSUED));
+        TitleRangeCache titleRangeCacheMock = mock(TitleRangeCache.class);
+        when(titleRangeCacheMock.findTitles(NEWSPAPERID, DATE_ISSUED)).thenReturn(Collections.<TitleRange>emptyList());
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getNamedRelations(DOMS_EDITION_ID, PREDICATE, null)).thenReturn(Arrays.asList(
+                new FedoraRelation(URI_PREFIX + DOMS_EDITION_ID, PREDICATE, URI_PREFIX + DOMS_OLD_NEWSPAPER_TITLE_ID)));
+        Item item = mock(Item.class);
+        when(item.getDomsID()).thenReturn(DOMS_EDITION_ID);
+        when(item.getFullID()).thenReturn(DOMS_EDITION_ID);
+
+        new RunnableEditionRelationsMaintainer(new Properties(), enhancedFedoraMock, newspaperIndexMock,
+                titleRangeCacheMock, new ReconciliationMetrics(new MetricRegistry()), null)
+                .doWorkOnItem(item, mock(ResultCollector.class));
+
+        verify(enhancedFedoraMock, never()).deleteRelation(anyString(), anyString(), anyString(), anyString(),
+                anyBoolean(), anyString());
+    }
+}
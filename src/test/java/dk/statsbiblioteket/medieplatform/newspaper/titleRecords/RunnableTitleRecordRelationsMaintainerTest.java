@@ -1,22 +1,40 @@
 package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
 
+import com.codahale.metrics.MetricRegistry;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
 import org.testng.annotations.Test;
 
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
 import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
 import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.ObjectProfile;
 import dk.statsbiblioteket.medieplatform.autonomous.Item;
 import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class RunnableTitleRecordRelationsMaintainerTest {
 
@@ -237,6 +255,563 @@ public class RunnableTitleRecordRelationsMaintainerTest {
         verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
     }
 
+    /**
+     * Test where relations are added and removed while trusting the inverse relations.
+     *
+     * Index query returns one item. DOMS returns two different items known.
+     *
+     * The result should be that relations are added and removed without looking up the relations of each edition.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemTrustInverseRelations() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1);
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        //Call the component with the mocks
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, itemFactoryMock, newspaperIndexMock)
+            .doWorkOnItem(itemMock, resultCollectorMock);
+
+        //One relation should be added, one deleted, with no checks
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).deleteRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE,
+                                                  URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, DELETE_MESSAGE);
+
+        //Verify normal calls
+        verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
+    }
+
+    /**
+     * Test where adding a relation fails, because the relation was added since the inverse relations were read.
+     *
+     * Index query returns two items. DOMS returns one known, but the other has the relation when looked up.
+     *
+     * The result should be that the failure is ignored after checking the relations of the edition.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemVerifyOnConflict() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        doThrow(new BackendMethodFailedException("Conflict")).when(enhancedFedoraMock).addRelation(DOMS_EDITION_ID2,
+                URI_PREFIX + DOMS_EDITION_ID2, PREDICATE, URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        when(enhancedFedoraMock.getNamedRelations(DOMS_EDITION_ID2, PREDICATE, null)).thenReturn(Arrays.asList(
+                new FedoraRelation(URI_PREFIX + DOMS_EDITION_ID2, PREDICATE, URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID)));
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "onConflict");
+
+        //Call the component with the mocks
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, itemFactoryMock, newspaperIndexMock)
+            .doWorkOnItem(itemMock, resultCollectorMock);
+
+        //The relation should be added, and checked only because adding failed
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).getNamedRelations(DOMS_EDITION_ID2, PREDICATE, null);
+
+        //Verify normal calls
+        verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
+    }
+
+    /**
+     * Test where relations are added in parallel, and adding one of them fails.
+     *
+     * Index query returns three items. DOMS returns none known. Adding the relation from one of them fails.
+     *
+     * The result should be that the other relations are still added, and the failure is reported.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemParallelWithFailure() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock();
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3);
+        doThrow(new BackendInvalidResourceException("Gone")).when(enhancedFedoraMock).addRelation(DOMS_EDITION_ID2,
+                URI_PREFIX + DOMS_EDITION_ID2, PREDICATE, URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+        properties.setProperty(TitleRecordsConfigConstants.MUTATION_PARALLELISM, "3");
+
+        //Call the component with the mocks
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, itemFactoryMock, newspaperIndexMock)
+            .doWorkOnItem(itemMock, resultCollectorMock);
+
+        //All three relations should be attempted
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        //The one failure should be reported
+        verify(resultCollectorMock).addFailure(eq(itemMock), eq("exception"), anyString(),
+                eq("Failed to add relation for 1 of 3 editions"), Matchers.<String>anyVararg());
+
+        //Verify normal calls
+        verify(newspaperIndexMock).getEditionIDs(NEWSPAPERID, START_DATE, END_DATE);
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
+        verify(enhancedFedoraMock).getInverseRelations(DOMS_NEWSPAPER_TITLE_ID, PREDICATE);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+    }
+
+    /**
+     * Test where relations are changed on published editions with batched state changes.
+     *
+     * Index query returns one item. DOMS returns one different item known. Both editions are published.
+     *
+     * The result should be that both editions are unpublished, then changed, then published again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemBatchStateChanges() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1);
+        ObjectProfile publishedProfile = mock(ObjectProfile.class);
+        when(publishedProfile.getState()).thenReturn("A");
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID1, null)).thenReturn(publishedProfile);
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID2, null)).thenReturn(publishedProfile);
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+        properties.setProperty(TitleRecordsConfigConstants.BATCH_STATE_CHANGES, "true");
+        properties.setProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, createJournalDirectory().getPath());
+
+        //Call the component with the mocks
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, itemFactoryMock, newspaperIndexMock)
+            .doWorkOnItem(itemMock, resultCollectorMock);
+
+        //Both editions should be unpublished before any relation is changed, and published after
+        InOrder inOrder = inOrder(enhancedFedoraMock);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID1, "I",
+                RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        inOrder.verify(enhancedFedoraMock).deleteRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, DELETE_MESSAGE);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID1, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+        verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID2, "I",
+                RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT);
+        verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID2, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+        verify(enhancedFedoraMock).getObjectProfile(DOMS_EDITION_ID1, null);
+        verify(enhancedFedoraMock).getObjectProfile(DOMS_EDITION_ID2, null);
+
+        //Verify normal calls
+        verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
+    }
+
+    /**
+     * Test where published editions are unpublished one chunk at a time.
+     *
+     * Index query returns one item. DOMS returns another. Both editions are published, and chunks hold one edition.
+     *
+     * The result should be that each edition is unpublished, changed and published again before the next is
+     * unpublished.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemBatchStateChangesInChunks() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1);
+        ObjectProfile publishedProfile = mock(ObjectProfile.class);
+        when(publishedProfile.getState()).thenReturn("A");
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID1, null)).thenReturn(publishedProfile);
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID2, null)).thenReturn(publishedProfile);
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+        properties.setProperty(TitleRecordsConfigConstants.BATCH_STATE_CHANGES, "true");
+        properties.setProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, createJournalDirectory().getPath());
+        properties.setProperty(TitleRecordsConfigConstants.BATCH_STATE_CHANGES_CHUNK_SIZE, "1");
+
+        //Call the component with the mocks
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, itemFactoryMock, newspaperIndexMock)
+            .doWorkOnItem(itemMock, resultCollectorMock);
+
+        //The first edition should be published again before the second is unpublished
+        InOrder inOrder = inOrder(enhancedFedoraMock);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID1, "I",
+                RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID1, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID2, "I",
+                RunnableTitleRecordRelationsMaintainer.SET_INACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).deleteRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, DELETE_MESSAGE);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID2, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+    }
+
+    /**
+     * Test where the newspaper object is unchanged since its relations were last reconciled.
+     *
+     * Index query returns three items. DOMS returns the same three known. Then the newspaper object is received again,
+     * with the same MODS and the same number of editions in the index.
+     *
+     * The result should be that the second time, neither the edition nor the existing relations are fetched.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemSkipsUnchangedTitle() throws Exception {
+        File fingerprints = File.createTempFile("fingerprints", ".tsv");
+        fingerprints.delete();
+        fingerprints.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.FINGERPRINT_STORE_FILE, fingerprints.getPath());
+
+        //First run reconciles the title and stores its fingerprint
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        when(resultCollectorMock.isSuccess()).thenReturn(true);
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+        verify(enhancedFedoraMock).getInverseRelations(DOMS_NEWSPAPER_TITLE_ID, PREDICATE);
+
+        //Second run only counts the editions
+        resultCollectorMock = getResultCollectorMock();
+        enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3);
+        newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3);
+        when(newspaperIndexMock.countEditions(NEWSPAPERID, START_DATE, END_DATE)).thenReturn(3L);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
+        verify(newspaperIndexMock).countEditions(NEWSPAPERID, START_DATE, END_DATE);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+    }
+
+    /**
+     * Test where the newspaper object is unchanged and has the same number of editions in the index, but one of them
+     * has been replaced by another, with edition hashes verified.
+     *
+     * The result should be that the second time, the hash of the editions differs from the fingerprint, so the editions
+     * are diffed in full and the relations of the replaced and the new edition are changed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemVerifiesEditionHash() throws Exception {
+        File fingerprints = File.createTempFile("fingerprints", ".tsv");
+        fingerprints.delete();
+        fingerprints.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.FINGERPRINT_STORE_FILE, fingerprints.getPath());
+        properties.setProperty(TitleRecordsConfigConstants.VERIFY_EDITION_HASH, "true");
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        //First run reconciles the title and stores its fingerprint
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        when(resultCollectorMock.isSuccess()).thenReturn(true);
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        //Second run counts the same number of editions, but their hash differs
+        resultCollectorMock = getResultCollectorMock();
+        enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        newspaperIndexMock = getNewspaperIndexMock();
+        when(newspaperIndexMock.getEditionIDs(NEWSPAPERID, START_DATE, END_DATE)).thenReturn(
+                Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID3).iterator(),
+                Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID3).iterator());
+        when(newspaperIndexMock.countEditions(NEWSPAPERID, START_DATE, END_DATE)).thenReturn(2L);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        verify(enhancedFedoraMock).getInverseRelations(DOMS_NEWSPAPER_TITLE_ID, PREDICATE);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).deleteRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, DELETE_MESSAGE);
+    }
+
+    /**
+     * Test where a newspaper object is reconciled, and then reconciled again after its end date has moved a year on.
+     *
+     * The result should be that the second time, only the edition in the added year is fetched from the index and
+     * given a relation, without reading the existing relations.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemQueriesOnlyRangeDelta() throws Exception {
+        File fingerprints = File.createTempFile("fingerprints", ".tsv");
+        fingerprints.delete();
+        fingerprints.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.FINGERPRINT_STORE_FILE, fingerprints.getPath());
+        properties.setProperty(TitleRecordsConfigConstants.RANGE_DELTA_QUERIES, "true");
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        //First run reconciles the title and stores its fingerprint
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        when(resultCollectorMock.isSuccess()).thenReturn(true);
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1, DOMS_EDITION_ID2);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        //Second run only fetches the editions of the added year
+        String newEndDate = "1981-01-01T01:00:00.000+01:00";
+        DateInterval addedYear = new DateInterval(END_DATE, false, newEndDate, true);
+        resultCollectorMock = getResultCollectorMock();
+        enhancedFedoraMock = getEnhancedFedoraMock();
+        when(enhancedFedoraMock.getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME))
+                .thenReturn(MODS_XML.replace(END_DATE, newEndDate));
+        newspaperIndexMock = getNewspaperIndexMock();
+        when(newspaperIndexMock.getEditionIDs(NEWSPAPERID, addedYear))
+                .thenReturn(Arrays.asList(DOMS_EDITION_ID3).iterator());
+        when(newspaperIndexMock.countEditions(NEWSPAPERID, START_DATE, newEndDate)).thenReturn(3L);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(newspaperIndexMock).getEditionIDs(NEWSPAPERID, addedYear);
+        verify(newspaperIndexMock).countEditions(NEWSPAPERID, START_DATE, newEndDate);
+        verify(resultCollectorMock).isSuccess();
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+    }
+
+    /**
+     * Test where a change plan file is configured (dry run).
+     *
+     * Index query returns one item. DOMS returns another item.
+     *
+     * The result should be that adding the first relation and removing the second are written to the plan, and no
+     * relations are changed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemDryRun() throws Exception {
+        File plan = File.createTempFile("plan", ".tsv");
+        plan.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.PLAN_FILE, plan.getPath());
+
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        List<String> lines = Files.readAllLines(plan.toPath(), Charset.forName("UTF-8"));
+        assertEquals(lines.size(), 2);
+        RelationChange add = RelationChange.parse(lines.get(0));
+        assertEquals(add.getOperation(), RelationChange.Operation.ADD);
+        assertEquals(add.getEditionDomsID(), DOMS_EDITION_ID1);
+        assertEquals(add.getTitleDomsID(), DOMS_NEWSPAPER_TITLE_ID);
+        RelationChange remove = RelationChange.parse(lines.get(1));
+        assertEquals(remove.getOperation(), RelationChange.Operation.REMOVE);
+        assertEquals(remove.getEditionDomsID(), DOMS_EDITION_ID2);
+        verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
+    }
+
+    /**
+     * Test where a change plan file is configured (dry run), and interrupted work left a journal with a relation still
+     * to add and an edition set inactive.
+     *
+     * The result should be that the changes are planned from the index and DOMS as usual, that neither the journaled
+     * relation is added nor the edition set active, and that the journal is left for a later run.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemDryRunIgnoresJournal() throws Exception {
+        File journalDirectory = createJournalDirectory();
+        File journalFile = TitleJournal.getFile(journalDirectory, DOMS_NEWSPAPER_TITLE_ID);
+        TitleJournal journal = TitleJournal.create(journalFile,
+                new TitleRange(DOMS_NEWSPAPER_TITLE_ID, NEWSPAPERID, START_DATE, END_DATE),
+                Arrays.asList(DOMS_EDITION_ID2, DOMS_EDITION_ID3), new ArrayList<String>());
+        journal.markDeactivated(Arrays.asList(DOMS_EDITION_ID2));
+        journal.close();
+        File plan = File.createTempFile("plan", ".tsv");
+        plan.delete();
+        plan.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, journalDirectory.getPath());
+        properties.setProperty(TitleRecordsConfigConstants.PLAN_FILE, plan.getPath());
+
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_EDITION_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_EDITION_ID1);
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        assertEquals(Files.readAllLines(plan.toPath(), Charset.forName("UTF-8")).size(), 2);
+        verify(enhancedFedoraMock, never()).addRelation(anyString(), anyString(), anyString(), anyString(),
+                anyBoolean(), anyString());
+        verify(enhancedFedoraMock, never()).deleteRelation(anyString(), anyString(), anyString(), anyString(),
+                anyBoolean(), anyString());
+        verify(enhancedFedoraMock, never()).modifyObjectState(anyString(), anyString(), anyString());
+        assertTrue(journalFile.exists());
+        journalFile.delete();
+        journalDirectory.delete();
+    }
+
+    /**
+     * Test where the component is stopping before the newspaper object is started.
+     *
+     * The result should be that the newspaper object is reported as failed, so it is worked on again, without reading
+     * or changing anything.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemDeclinedWhenStopping() throws Exception {
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock();
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock();
+        RunnableTitleRecordRelationsMaintainer maintainer = new RunnableTitleRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, getItemItemFactoryMock(), newspaperIndexMock);
+        maintainer.stop();
+        maintainer.doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        verify(resultCollectorMock).addFailure(Matchers.any(Item.class), eq("stopped"), anyString(), anyString());
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+    }
+
+    /**
+     * Test where earlier work on the newspaper object was interrupted, after adding the first of two relations.
+     *
+     * The result should be that only the second relation is added, without searching the index or reading the
+     * existing relations, and that the journal is deleted afterwards.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemResumesFromJournal() throws Exception {
+        File journalDirectory = createJournalDirectory();
+        File journalFile = TitleJournal.getFile(journalDirectory, DOMS_NEWSPAPER_TITLE_ID);
+        TitleJournal journal = TitleJournal.create(journalFile,
+                new TitleRange(DOMS_NEWSPAPER_TITLE_ID, NEWSPAPERID, START_DATE, END_DATE),
+                Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID3), new ArrayList<String>());
+        journal.markDone(RelationChange.Operation.ADD, DOMS_EDITION_ID1);
+        journal.close();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, journalDirectory.getPath());
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock();
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock();
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE, URI_PREFIX
+                + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+        assertFalse(journalFile.exists());
+        journalDirectory.delete();
+    }
+
+    /**
+     * Test where interrupted work left editions inactive.
+     *
+     * The journal records two editions as set inactive, and one of them as set active again. The other is still
+     * inactive.
+     *
+     * The result should be that the inactive edition is set active before the remaining change is made.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemReactivatesEditionsLeftInactive() throws Exception {
+        File journalDirectory = createJournalDirectory();
+        File journalFile = TitleJournal.getFile(journalDirectory, DOMS_NEWSPAPER_TITLE_ID);
+        TitleJournal journal = TitleJournal.create(journalFile,
+                new TitleRange(DOMS_NEWSPAPER_TITLE_ID, NEWSPAPERID, START_DATE, END_DATE),
+                Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3), new ArrayList<String>());
+        journal.markDeactivated(Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID2));
+        journal.markDone(RelationChange.Operation.ADD, DOMS_EDITION_ID1);
+        journal.markDone(RelationChange.Operation.ADD, DOMS_EDITION_ID2);
+        journal.markReactivated(Arrays.asList(DOMS_EDITION_ID1));
+        journal.close();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.JOURNAL_DIRECTORY, journalDirectory.getPath());
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock();
+        ObjectProfile inactiveProfile = mock(ObjectProfile.class);
+        when(inactiveProfile.getState()).thenReturn("I");
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID2, null)).thenReturn(inactiveProfile);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock();
+        new RunnableTitleRecordRelationsMaintainer(properties, enhancedFedoraMock, getItemItemFactoryMock(),
+                newspaperIndexMock).doWorkOnItem(getItemMock(), resultCollectorMock);
+
+        InOrder inOrder = inOrder(enhancedFedoraMock);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID2, "A",
+                RunnableTitleRecordRelationsMaintainer.SETS_ACTIVE_COMMENT);
+        inOrder.verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE,
+                URI_PREFIX + DOMS_NEWSPAPER_TITLE_ID, false, MESSAGE);
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
+        verify(enhancedFedoraMock).getObjectProfile(DOMS_EDITION_ID2, null);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+        assertFalse(journalFile.exists());
+        journalDirectory.delete();
+    }
+
+    /**
+     * Test that the phases and changes of a run are recorded in the metrics.
+     *
+     * Index query returns one item. DOMS returns another item.
+     *
+     * The result should be one title timed, one relation added and one removed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemRecordsMetrics() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        Properties properties = new Properties();
+        properties.setProperty(TitleRecordsConfigConstants.RELATION_CHECK, "never");
+
+        new RunnableTitleRecordRelationsMaintainer(properties, getEnhancedFedoraMock(DOMS_EDITION_ID2),
+                getItemItemFactoryMock(), getNewspaperIndexMock(DOMS_EDITION_ID1),
+                new ReconciliationMetrics(registry)).doWorkOnItem(getItemMock(), getResultCollectorMock());
+
+        assertEquals(registry.timer("titleRecords.phase.title").getCount(), 1);
+        assertEquals(registry.timer("titleRecords.phase.editionDiff").getCount(), 1);
+        assertEquals(registry.timer("titleRecords.phase.relationAdd").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.event.relationAdded").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.event.relationRemoved").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.event.relationFailed").getCount(), 0);
+    }
+
     /**
      * Verify that the expected normal calls are made, and none other.
      * @param resultCollectorMock Verify no calls are made to this.
@@ -248,7 +823,7 @@ public class RunnableTitleRecordRelationsMaintainerTest {
     private void verifyNormalCalls(ResultCollector resultCollectorMock, EnhancedFedora enhancedFedoraMock,
                                    NewspaperIndex newspaperIndexMock) throws Exception {
         //Verify expected DOMS and index calls
-        verify(newspaperIndexMock).getEditions(NEWSPAPERID, START_DATE, END_DATE);
+        verify(newspaperIndexMock).getEditionIDs(NEWSPAPERID, START_DATE, END_DATE);
         verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_NEWSPAPER_TITLE_ID, MODS_DATASTREAM_NAME);
         verify(enhancedFedoraMock).getInverseRelations(DOMS_NEWSPAPER_TITLE_ID, PREDICATE);
 
@@ -318,11 +893,19 @@ public class RunnableTitleRecordRelationsMaintainerTest {
      */
     private NewspaperIndex getNewspaperIndexMock(String... uuids) {
         NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
-        List<Item> items = new ArrayList<>();
-        for (String uuid : uuids) {
-            items.add(new Item(uuid));
-        }
-        when(newspaperIndexMock.getEditions(NEWSPAPERID, START_DATE, END_DATE)).thenReturn(items);
+        when(newspaperIndexMock.getEditionIDs(NEWSPAPERID, START_DATE, END_DATE)).thenReturn(
+                Arrays.asList(uuids).iterator());
         return newspaperIndexMock;
     }
-}
\ No newline at end of file
+
+    /**
+     * Temporary journal directory, not yet created.
+     * @return The directory.
+     */
+    private static File createJournalDirectory() throws Exception {
+        File journalDirectory = File.createTempFile("journals", "");
+        journalDirectory.delete();
+        journalDirectory.deleteOnExit();
+        return journalDirectory;
+    }
+}
@@ -0,0 +1,145 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import org.testng.annotations.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ThrottledFedoraTest {
+
+    private static final String EDITION_ID = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+
+    /**
+     * Test that calls are passed to the decorated client, and that its exceptions are rethrown unwrapped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDelegates() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(EDITION_ID, "MODS")).thenReturn("<mods/>");
+        BackendInvalidCredsException published = new BackendInvalidCredsException("published");
+        doThrow(published).when(enhancedFedoraMock).modifyObjectState(EDITION_ID, "I", "comment");
+        EnhancedFedora throttled = ThrottledFedora.create(enhancedFedoraMock, new TokenBucket(1000, 10),
+                new AdaptiveConcurrencyLimiter(1, 4, 1000));
+
+        assertEquals(throttled.getXMLDatastreamContents(EDITION_ID, "MODS"), "<mods/>");
+        try {
+            throttled.modifyObjectState(EDITION_ID, "I", "comment");
+            fail("Expected exception");
+        } catch (BackendInvalidCredsException e) {
+            assertSame(e, published);
+        }
+        verify(enhancedFedoraMock).modifyObjectState(EDITION_ID, "I", "comment");
+    }
+
+    /**
+     * Test that the decorator is left out when no limits are configured.
+     */
+    @Test
+    public void testNotConfigured() {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        assertSame(ThrottledFedora.create(enhancedFedoraMock, new Properties()), enhancedFedoraMock);
+    }
+
+    /**
+     * Test that writes are spread out by the rate limit, while reads are not.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        EnhancedFedora throttled = ThrottledFedora.create(mock(EnhancedFedora.class), new TokenBucket(100, 1), null);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            throttled.getXMLDatastreamContents(EDITION_ID, "MODS");
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+
+        start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            throttled.modifyObjectState(EDITION_ID, "A", "comment");
+        }
+        // The first write uses the initial token, the other ten wait 10 ms each
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    /**
+     * Test that the concurrency limit is halved on overload, and grows back while calls succeed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAdaptiveConcurrency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, 1000);
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        doThrow(new BackendMethodFailedException("timeout", new SocketTimeoutException("Read timed out")))
+                .when(enhancedFedoraMock).modifyObjectState(EDITION_ID, "I", "comment");
+        EnhancedFedora throttled = ThrottledFedora.create(enhancedFedoraMock, null, limiter);
+
+        try {
+            throttled.modifyObjectState(EDITION_ID, "I", "comment");
+            fail("Expected exception");
+        } catch (BackendMethodFailedException e) {
+            // expected
+        }
+        assertEquals(limiter.getLimit(), 4);
+
+        for (int i = 0; i < 50; i++) {
+            throttled.modifyObjectState(EDITION_ID, "A", "comment");
+        }
+        assertEquals(limiter.getLimit(), 8);
+    }
+
+    /**
+     * Test that only timeouts and server errors are taken as overload, not other failures such as conflicts.
+     */
+    @Test
+    public void testIsOverload() {
+        assertTrue(ThrottledFedora.isOverload(new BackendMethodFailedException("failed",
+                new RuntimeException(new SocketTimeoutException("Read timed out")))));
+        assertTrue(ThrottledFedora.isOverload(new BackendMethodFailedException("failed", new RuntimeException(
+                "PUT http://fedora/objects/uuid:1 returned a response status of 503 Service Unavailable"))));
+        assertFalse(ThrottledFedora.isOverload(new BackendMethodFailedException("failed", new RuntimeException(
+                "PUT http://fedora/objects/uuid:1 returned a response status of 409 Conflict"))));
+        assertFalse(ThrottledFedora.isOverload(new BackendMethodFailedException("failed")));
+    }
+
+    /**
+     * Test that an interrupt while waiting for the rate limit is thrown as a declared exception, with the interrupt
+     * flag kept.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        EnhancedFedora throttled = ThrottledFedora.create(enhancedFedoraMock, new TokenBucket(0.001, 1), null);
+        throttled.modifyObjectState(EDITION_ID, "A", "comment");
+
+        Thread.currentThread().interrupt();
+        try {
+            throttled.modifyObjectState(EDITION_ID, "I", "comment");
+            fail("Expected exception");
+        } catch (BackendMethodFailedException e) {
+            assertTrue(Thread.interrupted());
+        }
+        verify(enhancedFedoraMock, never()).modifyObjectState(EDITION_ID, "I", "comment");
+    }
+}
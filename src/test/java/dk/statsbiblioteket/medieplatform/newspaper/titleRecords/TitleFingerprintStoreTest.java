@@ -0,0 +1,149 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class TitleFingerprintStoreTest {
+
+    /**
+     * Test that fingerprints are persisted and read back by a new store.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPersistence() throws Exception {
+        File file = File.createTempFile("fingerprints", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+
+        TitleFingerprintStore store = new TitleFingerprintStore(file, 10);
+        store.put("uuid:1", new TitleFingerprint("avis", "1970-01-01", "", 42L, 3L, -7L));
+
+        TitleFingerprint fingerprint = new TitleFingerprintStore(file, 10).get("uuid:1");
+        assertNotNull(fingerprint);
+        assertEquals(fingerprint.getAvisID(), "avis");
+        assertEquals(fingerprint.getStartDate(), "1970-01-01");
+        assertEquals(fingerprint.getEndDate(), "");
+        assertEquals(fingerprint.getModsHash(), 42L);
+        assertEquals(fingerprint.getEditionCount(), 3L);
+        assertEquals(fingerprint.getEditionHash(), -7L);
+    }
+
+    /**
+     * Test that the least recently used fingerprint is evicted when the store is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        File file = File.createTempFile("fingerprints", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+
+        TitleFingerprintStore store = new TitleFingerprintStore(file, 2);
+        store.put("uuid:1", new TitleFingerprint("avis", "", "", 1L, 1L, 1L));
+        store.put("uuid:2", new TitleFingerprint("avis", "", "", 2L, 2L, 2L));
+        store.get("uuid:1");
+        store.put("uuid:3", new TitleFingerprint("avis", "", "", 3L, 3L, 3L));
+
+        assertNotNull(store.get("uuid:1"));
+        assertNull(store.get("uuid:2"));
+        assertNotNull(store.get("uuid:3"));
+    }
+
+    /**
+     * Test that fingerprints removed by another store, as another process would, are not returned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemovedByOtherStore() throws Exception {
+        File file = File.createTempFile("fingerprints", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+
+        TitleFingerprintStore store = new TitleFingerprintStore(file, 10);
+        store.put("uuid:1", new TitleFingerprint("avis", "", "", 1L, 1L, 1L));
+        store.put("uuid:2", new TitleFingerprint("avis", "", "", 2L, 2L, 2L));
+        new TitleFingerprintStore(file, 10).removeAll(Arrays.asList("uuid:1", "uuid:3"));
+
+        assertNull(store.get("uuid:1"));
+        assertNotNull(store.get("uuid:2"));
+    }
+
+    /**
+     * Test that a fingerprint rewritten by another store with one of the same length, within the same second, is seen.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRewrittenByOtherStore() throws Exception {
+        File file = File.createTempFile("fingerprints", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+
+        TitleFingerprintStore store = new TitleFingerprintStore(file, 10);
+        store.put("uuid:1", new TitleFingerprint("avis", "", "", 1L, 1L, 1L));
+        new TitleFingerprintStore(file, 10).put("uuid:1", new TitleFingerprint("avis", "", "", 2L, 1L, 1L));
+
+        assertEquals(store.get("uuid:1").getModsHash(), 2L);
+    }
+
+    /**
+     * Test that stores changing the same file at the same time, as several processes would, keep each other's changes
+     * and leave no temporary files behind.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentStores() throws Exception {
+        final File directory = File.createTempFile("fingerprints", "");
+        directory.delete();
+        final File file = new File(directory, "fingerprints.tsv");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int storeNumber = i;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    TitleFingerprintStore store = new TitleFingerprintStore(file, 1000);
+                    for (int j = 0; j < 25; j++) {
+                        store.put("uuid:" + storeNumber + "-" + j, new TitleFingerprint("avis", "", "", j, j, j));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        TitleFingerprintStore store = new TitleFingerprintStore(file, 1000);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 25; j++) {
+                assertNotNull(store.get("uuid:" + i + "-" + j));
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList(directory.list())),
+                new HashSet<>(Arrays.asList("fingerprints.tsv", "fingerprints.tsv.lock")));
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+}
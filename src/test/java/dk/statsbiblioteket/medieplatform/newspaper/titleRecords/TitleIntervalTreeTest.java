@@ -0,0 +1,75 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TitleIntervalTreeTest {
+
+    private static final String NEWSPAPERID = "adresseavisen1759";
+
+    /**
+     * Test that adjacent, overlapping and open ranges are matched at their boundaries.
+     */
+    @Test
+    public void testFindTitles() {
+        TitleRange first = new TitleRange("uuid:1", NEWSPAPERID, "", "1800-12-31");
+        TitleRange second = new TitleRange("uuid:2", NEWSPAPERID, "1801-01-01", "1850-06-30");
+        TitleRange overlapping = new TitleRange("uuid:3", NEWSPAPERID, "1850-01-01", "");
+        TitleIntervalTree tree = new TitleIntervalTree(Arrays.asList(overlapping, second, first));
+
+        assertEquals(tree.findTitles("1700-01-01"), Arrays.asList(first));
+        assertEquals(tree.findTitles("1800-12-31"), Arrays.asList(first));
+        assertEquals(tree.findTitles("1801-01-01"), Arrays.asList(second));
+        assertEquals(tree.findTitles("1850-03-01"), Arrays.asList(second, overlapping));
+        assertEquals(tree.findTitles("1999-01-01"), Arrays.asList(overlapping));
+        assertTrue(tree.findTitles("").isEmpty());
+    }
+
+    /**
+     * Test that the tree finds the same ranges as checking every range, for random ranges and dates.
+     */
+    @Test
+    public void testFindTitlesMatchesLinearScan() {
+        Random random = new Random(42);
+        List<TitleRange> titles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(300);
+            int end = start + random.nextInt(30);
+            titles.add(new TitleRange("uuid:" + i, NEWSPAPERID, random.nextInt(20) == 0 ? "" : date(start),
+                    random.nextInt(20) == 0 ? "" : date(end)));
+        }
+        TitleIntervalTree tree = new TitleIntervalTree(titles);
+
+        for (int year = 0; year < 340; year++) {
+            String date = date(year);
+            List<TitleRange> expected = new ArrayList<>();
+            for (TitleRange title : titles) {
+                if (title.contains(date)) {
+                    expected.add(title);
+                }
+            }
+            assertEquals(new HashSet<>(tree.findTitles(date)), new HashSet<>(expected), date);
+        }
+    }
+
+    /**
+     * Test that an empty tree finds nothing.
+     */
+    @Test
+    public void testFindTitlesEmpty() {
+        assertTrue(new TitleIntervalTree(Collections.<TitleRange>emptyList()).findTitles("1800-01-01").isEmpty());
+    }
+
+    private static String date(int offset) {
+        return (1700 + offset) + "-01-01";
+    }
+}
@@ -0,0 +1,73 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class TitleJournalTest {
+
+    private static final String TITLE_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String EDITION_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String EDITION_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String EDITION_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+    private static final TitleRange FIELDS = new TitleRange(TITLE_ID, "adresseavisen1759", "1759-01-01", "");
+
+    /**
+     * Test that a loaded journal holds the planned changes that were not marked done, even when the last line was
+     * cut short.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLoadRemaining() throws Exception {
+        File file = createJournalFile();
+        TitleJournal journal = TitleJournal.create(file, FIELDS, Arrays.asList(EDITION_ID1, EDITION_ID2),
+                Arrays.asList(EDITION_ID3));
+        journal.markDone(RelationChange.Operation.ADD, EDITION_ID2);
+        journal.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("DONE\tREM".getBytes("UTF-8"));
+        }
+
+        TitleJournal loaded = TitleJournal.load(file, FIELDS);
+        assertEquals(loaded.getRemainingAdds(), Arrays.asList(EDITION_ID1));
+        assertEquals(loaded.getRemainingRemoves(), Arrays.asList(EDITION_ID3));
+        loaded.markDone(RelationChange.Operation.REMOVE, EDITION_ID3);
+        loaded.close();
+
+        TitleJournal reloaded = TitleJournal.load(file, FIELDS);
+        assertEquals(reloaded.getRemainingAdds(), Arrays.asList(EDITION_ID1));
+        assertEquals(reloaded.getRemainingRemoves(), Collections.<String>emptyList());
+        reloaded.delete();
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Test that a journal planned from other fields of the newspaper object is discarded.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLoadOutOfDate() throws Exception {
+        File file = createJournalFile();
+        TitleJournal.create(file, FIELDS, Arrays.asList(EDITION_ID1), Collections.<String>emptyList()).close();
+
+        assertNull(TitleJournal.load(file,
+                new TitleRange(TITLE_ID, FIELDS.getAvisID(), FIELDS.getStartDate(), "1800-12-31")));
+        assertFalse(file.exists());
+    }
+
+    private static File createJournalFile() throws IOException {
+        File file = File.createTempFile("title", ".journal");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,168 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import com.codahale.metrics.MetricRegistry;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TitleRangeCacheTest {
+
+    private static final String TITLE_ID1 = "uuid:00000000-0000-0000-0000-000000000001";
+    private static final String TITLE_ID2 = "uuid:00000000-0000-0000-0000-000000000002";
+    private static final long ONE_HOUR = 3600000L;
+
+    /**
+     * Test that newspaper objects are read once, answered from the cache afterwards, persisted and read back by a new
+     * cache without asking SBOI or DOMS, and updated when a newspaper object changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLoadPersistAndUpdate() throws Exception {
+        File file = File.createTempFile("titleRanges", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID1, "MODS"))
+                .thenReturn(mods("avis", "1970-01-01", "1979-12-31"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID2, "MODS"))
+                .thenReturn(mods("avis", "1980-01-01", ""));
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getAllTitleIDs()).thenReturn(Arrays.asList(TITLE_ID1, TITLE_ID2).iterator());
+        MetricRegistry registry = new MetricRegistry();
+
+        TitleRangeCache cache = new TitleRangeCache(enhancedFedoraMock, newspaperIndexMock, file, 10, ONE_HOUR,
+                registry);
+        assertEquals(cache.findTitles("avis", "1975-01-01").get(0).getTitleDomsID(), TITLE_ID1);
+        assertEquals(cache.findTitles("avis", "1985-01-01").get(0).getTitleDomsID(), TITLE_ID2);
+        verify(newspaperIndexMock, times(1)).getAllTitleIDs();
+        assertEquals(registry.meter("titleRecords.titleRangeCache.misses").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.titleRangeCache.hits").getCount(), 1);
+
+        cache.put(new TitleRange(TITLE_ID1, "avis", "1970-01-01", "1989-12-31"));
+
+        EnhancedFedora unusedFedoraMock = mock(EnhancedFedora.class);
+        NewspaperIndex unusedIndexMock = mock(NewspaperIndex.class);
+        TitleRangeCache reloaded = new TitleRangeCache(unusedFedoraMock, unusedIndexMock, file, 10, ONE_HOUR,
+                new MetricRegistry());
+        assertEquals(reloaded.findTitles("avis", "1985-01-01").size(), 2);
+        assertTrue(reloaded.findTitles("other", "1985-01-01").isEmpty());
+        verifyZeroInteractions(unusedFedoraMock, unusedIndexMock);
+    }
+
+    /**
+     * Test that caches sharing a file, as a process reconciling newspaper objects and one polling for editions would,
+     * keep each other's changes: a newspaper object put by one while the other reads all newspaper objects is kept, and
+     * what the other read is used by the first without reading all newspaper objects again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSharedFileKeepsChangesOfOtherCache() throws Exception {
+        File file = File.createTempFile("titleRanges", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+        EnhancedFedora unusedFedoraMock = mock(EnhancedFedora.class);
+        NewspaperIndex unusedIndexMock = mock(NewspaperIndex.class);
+        final TitleRangeCache titleCache = new TitleRangeCache(unusedFedoraMock, unusedIndexMock, file, 10, ONE_HOUR,
+                new MetricRegistry());
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID1, "MODS")).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                // The other process reconciles a newspaper object while this one reads all of them
+                titleCache.put(new TitleRange(TITLE_ID2, "avis", "1980-01-01", ""));
+                return mods("avis", "1970-01-01", "1979-12-31");
+            }
+        });
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getAllTitleIDs()).thenReturn(Arrays.asList(TITLE_ID1).iterator());
+        TitleRangeCache editionCache = new TitleRangeCache(enhancedFedoraMock, newspaperIndexMock, file, 10, ONE_HOUR,
+                new MetricRegistry());
+
+        assertEquals(editionCache.findTitles("avis", "1985-01-01").get(0).getTitleDomsID(), TITLE_ID2);
+        assertEquals(titleCache.findTitles("avis", "1975-01-01").get(0).getTitleDomsID(), TITLE_ID1);
+        verifyZeroInteractions(unusedFedoraMock, unusedIndexMock);
+    }
+
+    /**
+     * Test that a newspaper object whose MODS cannot be read is skipped, and that a failed read of all newspaper
+     * objects keeps those read before.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLoadSkipsFailedTitleAndKeepsCacheOnFailure() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID1, "MODS"))
+                .thenReturn(mods("avis", "1970-01-01", "1979-12-31"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(TITLE_ID2, "MODS")).thenReturn("<mods");
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getAllTitleIDs()).thenReturn(Arrays.asList(TITLE_ID1, TITLE_ID2).iterator())
+                .thenThrow(new RuntimeException("SBOI is down"));
+        MetricRegistry registry = new MetricRegistry();
+        TitleRangeCache cache = new TitleRangeCache(enhancedFedoraMock, newspaperIndexMock, null, 10, ONE_HOUR,
+                registry);
+        assertEquals(cache.findTitles("avis", "1975-01-01").get(0).getTitleDomsID(), TITLE_ID1);
+        assertEquals(registry.getGauges().get("titleRecords.titleRangeCache.size").getValue(), 1);
+
+        cache.invalidate();
+        try {
+            cache.findTitles("avis", "1975-01-01");
+            fail("Reading all newspaper objects should have failed");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+        assertEquals(registry.getGauges().get("titleRecords.titleRangeCache.size").getValue(), 1);
+    }
+
+    /**
+     * Test that looking up the newspaper ID of an evicted newspaper object reads all newspaper objects again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvictionReadsAgain() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getAllTitleIDs()).thenReturn(Collections.<String>emptyIterator());
+        MetricRegistry registry = new MetricRegistry();
+        TitleRangeCache cache = new TitleRangeCache(enhancedFedoraMock, newspaperIndexMock, null, 1, ONE_HOUR,
+                registry);
+        cache.findTitles("avis", "1975-01-01");
+
+        cache.put(new TitleRange(TITLE_ID1, "avis", "1970-01-01", "1979-12-31"));
+        cache.put(new TitleRange(TITLE_ID2, "other", "1970-01-01", "1979-12-31"));
+        cache.findTitles("other", "1975-01-01");
+        cache.findTitles("avis", "1975-01-01");
+
+        assertEquals(registry.meter("titleRecords.titleRangeCache.evictions").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.titleRangeCache.hits").getCount(), 1);
+        assertEquals(registry.meter("titleRecords.titleRangeCache.misses").getCount(), 2);
+        verify(newspaperIndexMock, times(2)).getAllTitleIDs();
+    }
+
+    private static String mods(String avisID, String startDate, String endDate) {
+        return "<mods xmlns=\"http://www.loc.gov/mods/v3\">\n"
+                + "    <identifier type=\"title_family\">" + avisID + "</identifier>\n"
+                + "    <originInfo>\n"
+                + "        <dateIssued point=\"start\">" + startDate + "</dateIssued>\n"
+                + "        <dateIssued point=\"end\">" + endDate + "</dateIssued>\n"
+                + "    </originInfo>\n"
+                + "</mods>";
+    }
+}
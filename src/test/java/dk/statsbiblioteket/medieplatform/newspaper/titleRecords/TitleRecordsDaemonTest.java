@@ -0,0 +1,84 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import org.testng.annotations.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TitleRecordsDaemonTest {
+
+    /**
+     * Test that the daemon polls until stopped, finishes the running poll when stopped, and keeps polling after a
+     * poll has thrown an exception.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunPollsUntilStopped() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final TitleRecordsDaemon[] daemon = new TitleRecordsDaemon[1];
+        daemon[0] = new TitleRecordsDaemon(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int call = calls.incrementAndGet();
+                if (call == 1) {
+                    throw new RuntimeException("SBOI is down");
+                }
+                if (call == 3) {
+                    // Stopping during a poll lets the poll finish but starts no more
+                    daemon[0].stop();
+                }
+                return 0;
+            }
+        }, 0);
+
+        daemon[0].run();
+
+        assertEquals(calls.get(), 3);
+        assertEquals(daemon[0].getState(), TitleRecordsDaemon.State.STOPPED);
+        assertTrue(daemon[0].awaitTermination(0));
+        assertTrue(daemon[0].getStatus().contains("polls=3\n"));
+        assertTrue(daemon[0].getStatus().contains("failedPolls=1\n"));
+        assertFalse(daemon[0].isHealthy());
+    }
+
+    /**
+     * Test that the status server reports a daemon that is waiting to poll as healthy.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStatusServerReportsHealth() throws Exception {
+        final TitleRecordsDaemon daemon = new TitleRecordsDaemon(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 0;
+            }
+        }, 60000);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.run();
+            }
+        });
+        thread.start();
+        DaemonStatusServer statusServer = new DaemonStatusServer(daemon, 0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + statusServer.getPort() + "/health").openConnection();
+            assertEquals(connection.getResponseCode(), 200);
+            connection.disconnect();
+        } finally {
+            statusServer.close();
+            daemon.stop();
+            thread.join();
+        }
+        assertFalse(daemon.isHealthy());
+    }
+}
@@ -0,0 +1,98 @@
+package dk.statsbiblioteket.medieplatform.newspaper.titleRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
+import org.mockito.InOrder;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.medieplatform.newspaper.titleRecords.TitleWorkScheduler.TitleWork;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TitleWorkSchedulerTest {
+
+    private static final String SMALL_TITLE_ID = "uuid:00000000-0000-0000-0000-000000000001";
+    private static final String LARGE_TITLE_ID = "uuid:00000000-0000-0000-0000-000000000002";
+    private static final String MEDIUM_TITLE_ID = "uuid:00000000-0000-0000-0000-000000000003";
+    private static final String START_DATE = "1970-01-01";
+    private static final String END_DATE = "1980-01-01";
+
+    /**
+     * Test that newspaper objects are reconciled in order of their number of editions in the index, largest first.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunReconcilesLargestFirst() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(SMALL_TITLE_ID, "MODS")).thenReturn(mods("small"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(LARGE_TITLE_ID, "MODS")).thenReturn(mods("large"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(MEDIUM_TITLE_ID, "MODS")).thenReturn(mods("medium"));
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.countEditions(eq("small"), anyString(), anyString())).thenReturn(10L);
+        when(newspaperIndexMock.countEditions(eq("large"), anyString(), anyString())).thenReturn(100000L);
+        when(newspaperIndexMock.countEditions(eq("medium"), anyString(), anyString())).thenReturn(1000L);
+        @SuppressWarnings("unchecked")
+        ItemFactory<Item> itemFactoryMock = mock(ItemFactory.class);
+        when(itemFactoryMock.create(anyString())).thenReturn(mock(Item.class));
+        RunnableTitleRecordRelationsMaintainer maintainerMock = mock(RunnableTitleRecordRelationsMaintainer.class);
+
+        int failed = new TitleWorkScheduler(enhancedFedoraMock, newspaperIndexMock, maintainerMock, itemFactoryMock, 1)
+                .run(Arrays.asList(SMALL_TITLE_ID, LARGE_TITLE_ID, MEDIUM_TITLE_ID));
+
+        assertEquals(failed, 0);
+        InOrder inOrder = inOrder(itemFactoryMock);
+        inOrder.verify(itemFactoryMock).create(LARGE_TITLE_ID);
+        inOrder.verify(itemFactoryMock).create(MEDIUM_TITLE_ID);
+        inOrder.verify(itemFactoryMock).create(SMALL_TITLE_ID);
+        verify(maintainerMock, times(3)).doWorkOnItem(any(Item.class), any(ResultCollector.class),
+                any(TitleRange.class), anyLong());
+        // The MODS read for the estimate is not read again
+        verify(enhancedFedoraMock, times(1)).getXMLDatastreamContents(LARGE_TITLE_ID, "MODS");
+    }
+
+    /**
+     * Test that newspaper objects with the same newspaper ID are grouped, and the groups ordered by their total size.
+     */
+    @Test
+    public void testGroupByAvisID() {
+        TitleWork sharedSmall = work(SMALL_TITLE_ID, "shared", 10);
+        TitleWork sharedMedium = work(MEDIUM_TITLE_ID, "shared", 50);
+        TitleWork other = work(LARGE_TITLE_ID, "other", 40);
+
+        List<List<TitleWork>> queue = TitleWorkScheduler.groupByAvisID(Arrays.asList(sharedSmall, other,
+                sharedMedium));
+
+        assertEquals(queue.size(), 2);
+        assertEquals(queue.get(0), Arrays.asList(sharedMedium, sharedSmall));
+        assertEquals(queue.get(1), Arrays.asList(other));
+    }
+
+    private static TitleWork work(String titleID, String avisID, long editions) {
+        return new TitleWork(titleID, new TitleRange(titleID, avisID, START_DATE, END_DATE), 0, editions);
+    }
+
+    private static String mods(String avisID) {
+        return "<mods xmlns=\"http://www.loc.gov/mods/v3\">\n"
+                + "    <identifier type=\"title_family\">" + avisID + "</identifier>\n"
+                + "    <originInfo>\n"
+                + "        <dateIssued point=\"start\">" + START_DATE + "</dateIssued>\n"
+                + "        <dateIssued point=\"end\">" + END_DATE + "</dateIssued>\n"
+                + "    </originInfo>\n"
+                + "</mods>";
+    }
+}